@@ -0,0 +1,60 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monotonic clock for the timing of an animation. Times are millis on a timeline derived from System.nanoTime, so that steps are not
+ * shifted by changes of the wall clock, and deadlines are absolute, so that the jitter of single steps does not accumulate. Absolute
+ * dates are converted to this timeline with an offset captured once, so that the start times of one animation keep their exact
+ * distances. The offset is renewed only if the wall clock deviates by more than a tolerance, e.g. after suspension of the device.
+ */
+public class AnimationClock {
+	/**
+	 * The maximum deviation in millis between wall clock and monotonic clock before the offset is renewed.
+	 */
+	private static final long MAX_DEVIATION = 2000;
+	/**
+	 * The offset between wall clock and monotonic clock.
+	 */
+	private long mOffset;
+
+	/**
+	 * Create a clock.
+	 */
+	public AnimationClock() {
+		mOffset = getCurrentOffset();
+	}
+
+	/**
+	 * Get the current time on the monotonic timeline.
+	 *
+	 * @return The current time in millis.
+	 */
+	public long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * Convert an absolute date to the monotonic timeline.
+	 *
+	 * @param date The date.
+	 * @return The time of the date in millis on the monotonic timeline.
+	 */
+	public synchronized long toClockTime(final Date date) {
+		long offset = getCurrentOffset();
+		if (Math.abs(offset - mOffset) > MAX_DEVIATION) {
+			mOffset = offset;
+		}
+		return date.getTime() - mOffset;
+	}
+
+	/**
+	 * Get the current offset between wall clock and monotonic clock.
+	 *
+	 * @return The offset in millis.
+	 */
+	private long getCurrentOffset() {
+		return System.currentTimeMillis() - now();
+	}
+}
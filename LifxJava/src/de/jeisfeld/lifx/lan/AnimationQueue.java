@@ -0,0 +1,187 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import de.jeisfeld.lifx.lan.Light.BaseAnimationThread;
+
+/**
+ * Queue of the animations of one light. When an animation ends, the next animation of the queue is started on the completion of the
+ * previous one, without joining threads. If a crossfade duration is given, the previous animation hands over its last frame: it ends
+ * without applying its end state, and the next animation transitions from this frame to its first frame within the crossfade duration.
+ * A crossfade duration of 0 gives a gapless transition.
+ */
+public class AnimationQueue {
+	/**
+	 * Crossfade duration indicating that the previous animation does not hand over, but applies its end state.
+	 */
+	public static final int NO_HANDOVER = -1;
+	/**
+	 * The light.
+	 */
+	private final Light mLight;
+	/**
+	 * The queued animations.
+	 */
+	private final Deque<Entry> mEntries = new ArrayDeque<>();
+	/**
+	 * The running animation observed by the queue. Null if there is no running animation.
+	 */
+	private BaseAnimationThread mCurrent = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param light The light.
+	 */
+	AnimationQueue(final Light light) {
+		mLight = light;
+	}
+
+	/**
+	 * Play an animation now. The running animation is interrupted, and the queued animations are discarded.
+	 *
+	 * @param animation         The animation.
+	 * @param crossfadeDuration The duration of the crossfade from the running animation, or NO_HANDOVER.
+	 */
+	public void play(final BaseAnimationThread animation, final int crossfadeDuration) {
+		BaseAnimationThread current;
+		synchronized (this) {
+			mEntries.clear();
+			mEntries.add(new Entry(animation, crossfadeDuration));
+			current = observeCurrent();
+			if (current != null) {
+				current.setHandedOver(crossfadeDuration >= 0);
+			}
+		}
+		if (current == null) {
+			startNext(null);
+		}
+		else {
+			current.interrupt();
+		}
+	}
+
+	/**
+	 * Add an animation to the queue. It is started when the previous animation ends.
+	 *
+	 * @param animation         The animation.
+	 * @param crossfadeDuration The duration of the crossfade from the previous animation, or NO_HANDOVER.
+	 */
+	public void enqueue(final BaseAnimationThread animation, final int crossfadeDuration) {
+		BaseAnimationThread current;
+		synchronized (this) {
+			mEntries.add(new Entry(animation, crossfadeDuration));
+			current = observeCurrent();
+			if (current != null && mEntries.size() == 1) {
+				current.setHandedOver(crossfadeDuration >= 0);
+			}
+		}
+		if (current == null) {
+			startNext(null);
+		}
+	}
+
+	/**
+	 * Discard the queued animations. The running animation is not interrupted, and applies its end state.
+	 */
+	public void clear() {
+		synchronized (this) {
+			mEntries.clear();
+			if (mCurrent != null) {
+				mCurrent.setHandedOver(false);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of queued animations, not including the running animation.
+	 *
+	 * @return The number of queued animations.
+	 */
+	public synchronized int size() {
+		return mEntries.size();
+	}
+
+	/**
+	 * Get the running animation of the light and observe its end, also if it was not started by the queue.
+	 *
+	 * @return The running animation. Null if there is no running animation.
+	 */
+	private synchronized BaseAnimationThread observeCurrent() {
+		final BaseAnimationThread current = mLight.getRunningAnimation();
+		if (current == null) {
+			// An animation started by the queue may not yet be registered on the light.
+			return mCurrent;
+		}
+		if (current != mCurrent) {
+			mCurrent = current;
+			current.addCompletionListener(() -> onAnimationEnd(current));
+		}
+		return current;
+	}
+
+	/**
+	 * Handle the end of an animation by starting the next queued animation.
+	 *
+	 * @param animation The animation which ended.
+	 */
+	private void onAnimationEnd(final BaseAnimationThread animation) {
+		synchronized (this) {
+			if (animation != mCurrent) {
+				return;
+			}
+			mCurrent = null;
+		}
+		startNext(animation);
+	}
+
+	/**
+	 * Start the next queued animation.
+	 *
+	 * @param previous The previous animation. Null if there is none.
+	 */
+	private void startNext(final BaseAnimationThread previous) {
+		final Entry entry;
+		synchronized (this) {
+			if (mCurrent != null || mEntries.isEmpty()) {
+				return;
+			}
+			entry = mEntries.poll();
+			mCurrent = entry.mAnimation;
+			if (!mEntries.isEmpty()) {
+				entry.mAnimation.setHandedOver(mEntries.peek().mCrossfadeDuration >= 0);
+			}
+		}
+		entry.mAnimation.addCompletionListener(() -> onAnimationEnd(entry.mAnimation));
+		if (previous != null && previous.isHandedOver() && entry.mCrossfadeDuration >= 0) {
+			entry.mAnimation.takeOver(previous, entry.mCrossfadeDuration);
+		}
+		entry.mAnimation.start();
+	}
+
+	/**
+	 * An entry of the queue.
+	 */
+	private static final class Entry {
+		/**
+		 * The animation.
+		 */
+		private final BaseAnimationThread mAnimation;
+		/**
+		 * The duration of the crossfade from the previous animation.
+		 */
+		private final int mCrossfadeDuration;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param animation         The animation.
+		 * @param crossfadeDuration The duration of the crossfade from the previous animation.
+		 */
+		private Entry(final BaseAnimationThread animation, final int crossfadeDuration) {
+			mAnimation = animation;
+			mCrossfadeDuration = crossfadeDuration;
+		}
+	}
+}
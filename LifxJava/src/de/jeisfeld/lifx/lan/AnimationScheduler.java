@@ -0,0 +1,90 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Central scheduler driving all running animations frame by frame. Animations do not own a thread, but schedule their next frame
+ * here. The scheduler only keeps the time on a single timer thread, and the frames run on a bounded pool of frame threads, so that a
+ * frame waiting for an unreachable light does not delay the frames of other lights. If all frame threads are busy, further frames
+ * wait for a free thread, and the animations merge the steps missed meanwhile into their next frame. With virtual threads enabled
+ * in the LifxExecutor, each frame runs on its own virtual thread.
+ */
+public final class AnimationScheduler {
+	/**
+	 * The singleton instance.
+	 */
+	private static final AnimationScheduler INSTANCE = new AnimationScheduler();
+	/**
+	 * The maximum number of platform threads running frames.
+	 */
+	private static final int MAX_FRAME_THREADS = 16;
+	/**
+	 * The time in seconds after which idle frame threads are ended.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 30;
+	/**
+	 * The thread counter for frame threads.
+	 */
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	/**
+	 * The executor.
+	 */
+	private final ScheduledThreadPoolExecutor mExecutor;
+	/**
+	 * The executor running the frames on platform threads.
+	 */
+	private final ThreadPoolExecutor mFrameExecutor;
+
+	/**
+	 * Get the AnimationScheduler as singleton.
+	 *
+	 * @return The AnimationScheduler as singleton.
+	 */
+	public static AnimationScheduler getInstance() {
+		return AnimationScheduler.INSTANCE;
+	}
+
+	/**
+	 * Hide default constructor.
+	 */
+	private AnimationScheduler() {
+		mExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "LifxAnimationTimer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		mExecutor.setRemoveOnCancelPolicy(true);
+		mFrameExecutor = new ThreadPoolExecutor(MAX_FRAME_THREADS, MAX_FRAME_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "LifxAnimationFrame-" + THREAD_COUNTER.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		mFrameExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Schedule a task. At the given time, the task is handed to a frame thread, so it may block without delaying other tasks. Tasks
+	 * should not wait for other scheduled tasks, as these may wait for a free frame thread. Cancelling the returned future prevents
+	 * the task only if it was not yet handed over.
+	 *
+	 * @param task  The task.
+	 * @param delay The delay in millis.
+	 * @return The future of the scheduled task.
+	 */
+	public ScheduledFuture<?> schedule(final Runnable task, final long delay) {
+		return mExecutor.schedule(() -> {
+			if (LifxExecutor.isUsingVirtualThreads()) {
+				LifxExecutor.execute(task);
+			}
+			else {
+				mFrameExecutor.execute(task);
+			}
+		}, Math.max(0, delay), TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,191 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+import de.jeisfeld.lifx.lan.Light.ColorFilter;
+import de.jeisfeld.lifx.lan.type.Color;
+
+/**
+ * Cache of the color of a light, fed by state responses and by acknowledged color changes. Conditions on the color are evaluated
+ * against this cache, so that waiting for a color does not block threads. The light is polled only if the cache has no recent
+ * information.
+ */
+final class ColorStateCache {
+	/**
+	 * The minimum interval between polls of the light in millis.
+	 */
+	private static final long POLL_INTERVAL = 200;
+	/**
+	 * The time in millis for which a cached color is trusted without polling.
+	 */
+	private static final long CACHE_VALIDITY = 1000;
+	/**
+	 * The light.
+	 */
+	private final Light mLight;
+	/**
+	 * The cached color. Null if unknown.
+	 */
+	private Color mColor = null;
+	/**
+	 * The time from which the cached color is reached.
+	 */
+	private long mValidFrom = 0;
+	/**
+	 * The time of the last update of the cache.
+	 */
+	private long mUpdateTime = 0;
+	/**
+	 * The time of the last poll of the light.
+	 */
+	private long mPollTime = 0;
+	/**
+	 * The waiters for colors.
+	 */
+	private final List<Waiter> mWaiters = new ArrayList<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param light The light.
+	 */
+	ColorStateCache(final Light light) {
+		mLight = light;
+	}
+
+	/**
+	 * Update the cached color.
+	 *
+	 * @param color     The color. Null if the color is unknown.
+	 * @param validFrom The time from which the color is reached.
+	 */
+	void update(final Color color, final long validFrom) {
+		List<Waiter> waiters;
+		synchronized (this) {
+			mColor = color;
+			mValidFrom = validFrom;
+			mUpdateTime = System.currentTimeMillis();
+			waiters = new ArrayList<>(mWaiters);
+		}
+		for (Waiter waiter : waiters) {
+			check(waiter);
+		}
+	}
+
+	/**
+	 * Mark the cached color as unknown, e.g. after a change whose target color is not known.
+	 */
+	void invalidate() {
+		update(null, 0);
+	}
+
+	/**
+	 * Wait until the color matches a filter.
+	 *
+	 * @param filter  The filtering condition.
+	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
+	 * @return A future completed with true if the color matches, or with false on timeout.
+	 */
+	CompletableFuture<Boolean> waitForColor(final ColorFilter filter, final long timeout) {
+		Waiter waiter = new Waiter(filter);
+		synchronized (this) {
+			mWaiters.add(waiter);
+		}
+		waiter.mFuture.whenComplete((result, e) -> {
+			synchronized (this) {
+				mWaiters.remove(waiter);
+				if (waiter.mNextCheck != null) {
+					waiter.mNextCheck.cancel(false);
+				}
+			}
+		});
+		if (timeout >= 0) {
+			AnimationScheduler.getInstance().schedule(() -> waiter.mFuture.complete(false), timeout);
+		}
+		check(waiter);
+		return waiter.mFuture;
+	}
+
+	/**
+	 * Evaluate the condition of a waiter against the cache, and schedule the next check or poll if not matching.
+	 *
+	 * @param waiter The waiter.
+	 */
+	private void check(final Waiter waiter) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (waiter.mFuture.isDone()) {
+				return;
+			}
+			boolean isTrusted = mColor != null && Math.max(mUpdateTime, mValidFrom) + CACHE_VALIDITY >= now;
+			if (waiter.mNextCheck != null) {
+				waiter.mNextCheck.cancel(false);
+			}
+			if (isTrusted && waiter.mFilter.matches(mColor) && mValidFrom > now) {
+				// The target color of a running transition matches - check again when it is reached.
+				waiter.mNextCheck = AnimationScheduler.getInstance().schedule(() -> check(waiter), mValidFrom - now);
+				return;
+			}
+			else if (!isTrusted || !waiter.mFilter.matches(mColor)) {
+				long pollDelay = Math.max(mUpdateTime, mPollTime) + POLL_INTERVAL - now;
+				waiter.mNextCheck = AnimationScheduler.getInstance().schedule(() -> poll(waiter), pollDelay);
+				return;
+			}
+		}
+		waiter.mFuture.complete(true);
+	}
+
+	/**
+	 * Poll the light if there was no recent update, and check the waiter again on the response. The request is sent asynchronously,
+	 * so that no scheduler thread waits for the light.
+	 *
+	 * @param waiter The waiter.
+	 */
+	private void poll(final Waiter waiter) {
+		boolean isPollRequired;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			isPollRequired = !waiter.mFuture.isDone() && now - Math.max(mUpdateTime, mPollTime) >= POLL_INTERVAL;
+			if (isPollRequired) {
+				mPollTime = now;
+			}
+		}
+		if (isPollRequired) {
+			// A successful response updates the cache.
+			mLight.getStateAsync().thenRun(() -> check(waiter));
+		}
+		else {
+			check(waiter);
+		}
+	}
+
+	/**
+	 * A waiter for a color.
+	 */
+	private static final class Waiter {
+		/**
+		 * The filtering condition.
+		 */
+		private final ColorFilter mFilter;
+		/**
+		 * The future completed when the color matches or on timeout.
+		 */
+		private final CompletableFuture<Boolean> mFuture = new CompletableFuture<>();
+		/**
+		 * The next scheduled check or poll.
+		 */
+		private ScheduledFuture<?> mNextCheck = null;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param filter The filtering condition.
+		 */
+		private Waiter(final ColorFilter filter) {
+			mFilter = filter;
+		}
+	}
+}
@@ -6,10 +6,17 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
 import de.jeisfeld.lifx.lan.message.EchoRequest;
@@ -23,6 +30,8 @@ import de.jeisfeld.lifx.lan.message.GetPower;
 import de.jeisfeld.lifx.lan.message.GetVersion;
 import de.jeisfeld.lifx.lan.message.GetWifiFirmware;
 import de.jeisfeld.lifx.lan.message.GetWifiInfo;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
 import de.jeisfeld.lifx.lan.message.SetGroup;
 import de.jeisfeld.lifx.lan.message.SetLabel;
 import de.jeisfeld.lifx.lan.message.SetLocation;
@@ -52,6 +61,10 @@ public class Device implements Serializable {
 	 * The default serializable version id.
 	 */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The time in millis during which lazy attributes are not retrieved again after a failed prefetch.
+	 */
+	private static final long PREFETCH_FAILURE_BACKOFF = 30000;
 
 	/**
 	 * Source ID. 32 bits. Unique ID sent by client. If zero, broadcast reply requested. If non-zero, unicast reply requested.
@@ -105,6 +118,10 @@ public class Device implements Serializable {
 	 * The firmware build time.
 	 */
 	private Date mFirmwareBuildTime = null;
+	/**
+	 * The timestamps of failed prefetches of lazy attributes.
+	 */
+	private final Map<LazyAttribute, Long> mPrefetchFailureTimes = new EnumMap<>(LazyAttribute.class);
 
 	/**
 	 * Additional parameters which may be stored in the device.
@@ -265,6 +282,132 @@ public class Device implements Serializable {
 		mWifiFirmwareVersion = stateWifiFirmware.getMajorVersion() + "." + stateWifiFirmware.getMinorVersion();
 	}
 
+	/**
+	 * Prefetch lazy attributes of this device in one burst.
+	 *
+	 * @param attributes The attributes to be fetched. Attributes which are already available are not fetched again.
+	 */
+	public final void prefetch(final Set<LazyAttribute> attributes) {
+		Device.prefetch(Collections.singletonList(this), attributes);
+	}
+
+	/**
+	 * Prefetch lazy attributes of several devices in one burst. All requests are sent at once, so that the total time is bounded by the
+	 * timeout of one retry cycle. Failures are recorded, so that the lazy getters of unreachable devices do not retry each attribute
+	 * separately.
+	 *
+	 * @param devices    The devices.
+	 * @param attributes The attributes to be fetched. Attributes which are already available are not fetched again.
+	 */
+	public static void prefetch(final Collection<? extends Device> devices, final Set<LazyAttribute> attributes) {
+		if (devices.isEmpty() || attributes.isEmpty()) {
+			return;
+		}
+		LifxLanBurstConnection connection = new LifxLanBurstConnection(devices.iterator().next().getSourceId());
+		Map<Device, Map<LazyAttribute, RequestMessage>> requestMap = new LinkedHashMap<>();
+		for (Device device : devices) {
+			Map<LazyAttribute, RequestMessage> deviceRequests = new EnumMap<>(LazyAttribute.class);
+			for (LazyAttribute attribute : attributes) {
+				if (!device.hasAttribute(attribute)) {
+					deviceRequests.put(attribute, connection.addRequest(device, attribute.createRequest()));
+				}
+			}
+			requestMap.put(device, deviceRequests);
+		}
+
+		Map<RequestMessage, ResponseMessage> responses;
+		try {
+			responses = connection.sendWithResponses(new RetryPolicy() {
+			});
+		}
+		catch (SocketException e) {
+			Logger.error(e);
+			responses = new HashMap<>();
+		}
+
+		long now = System.currentTimeMillis();
+		for (Entry<Device, Map<LazyAttribute, RequestMessage>> entry : requestMap.entrySet()) {
+			Device device = entry.getKey();
+			synchronized (device) {
+				for (Entry<LazyAttribute, RequestMessage> requestEntry : entry.getValue().entrySet()) {
+					ResponseMessage response = responses.get(requestEntry.getValue());
+					if (response == null) {
+						device.mPrefetchFailureTimes.put(requestEntry.getKey(), now);
+					}
+					else {
+						device.applyResponse(requestEntry.getKey(), response);
+						device.mPrefetchFailureTimes.remove(requestEntry.getKey());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if a lazy attribute is available.
+	 *
+	 * @param attribute The attribute.
+	 * @return true if available.
+	 */
+	private boolean hasAttribute(final LazyAttribute attribute) {
+		switch (attribute) {
+		case LABEL:
+			return mLabel != null;
+		case LOCATION:
+			return mLocation != null;
+		case GROUP:
+			return mGroup != null;
+		case HOST_FIRMWARE:
+			return mHostFirmwareVersion != null && mFirmwareBuildTime != null;
+		case WIFI_FIRMWARE:
+			return mWifiFirmwareVersion != null;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Store the value of a lazy attribute from a response.
+	 *
+	 * @param attribute The attribute.
+	 * @param response  The response.
+	 */
+	private void applyResponse(final LazyAttribute attribute, final ResponseMessage response) {
+		switch (attribute) {
+		case LABEL:
+			mLabel = ((StateLabel) response).getLabel();
+			break;
+		case LOCATION:
+			mLocation = ((StateLocation) response).getLocation();
+			break;
+		case GROUP:
+			mGroup = ((StateGroup) response).getGroup();
+			break;
+		case HOST_FIRMWARE:
+			StateHostFirmware stateHostFirmware = (StateHostFirmware) response;
+			mHostFirmwareVersion = stateHostFirmware.getMajorVersion() + "." + stateHostFirmware.getMinorVersion();
+			mFirmwareBuildTime = stateHostFirmware.getBuildTime();
+			break;
+		case WIFI_FIRMWARE:
+			StateWifiFirmware stateWifiFirmware = (StateWifiFirmware) response;
+			mWifiFirmwareVersion = stateWifiFirmware.getMajorVersion() + "." + stateWifiFirmware.getMinorVersion();
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Check if a prefetch of a lazy attribute failed recently.
+	 *
+	 * @param attribute The attribute.
+	 * @return true if a prefetch of this attribute failed recently.
+	 */
+	private synchronized boolean hasRecentPrefetchFailure(final LazyAttribute attribute) {
+		Long failureTime = mPrefetchFailureTimes.get(attribute);
+		return failureTime != null && System.currentTimeMillis() - failureTime < PREFETCH_FAILURE_BACKOFF;
+	}
+
 	// OVERRIDABLE
 	@Override
 	public String toString() {
@@ -280,6 +423,7 @@ public class Device implements Serializable {
 	 * @return The device information as String.
 	 */
 	public String getFullInformation(final String indent, final boolean includeVolatileInfo) {
+		prefetch(EnumSet.allOf(LazyAttribute.class));
 		StringBuilder result = new StringBuilder(indent).append("Type: ").append(getClass().getSimpleName()).append("\n");
 		result.append(indent).append("MAC: ").append(mTargetAddress).append("\n");
 		result.append(indent).append("IP Address: ").append(mInetAddress.getHostAddress()).append("\n");
@@ -386,7 +530,7 @@ public class Device implements Serializable {
 	 * @return the label
 	 */
 	public final String getLabel() {
-		if (mLabel == null) {
+		if (mLabel == null && !hasRecentPrefetchFailure(LazyAttribute.LABEL)) {
 			try {
 				retrieveLabel();
 			}
@@ -403,7 +547,7 @@ public class Device implements Serializable {
 	 * @return the location
 	 */
 	public final Location getLocation() {
-		if (mLocation == null) {
+		if (mLocation == null && !hasRecentPrefetchFailure(LazyAttribute.LOCATION)) {
 			try {
 				retrieveLocation();
 			}
@@ -420,7 +564,7 @@ public class Device implements Serializable {
 	 * @return the group
 	 */
 	public final Group getGroup() {
-		if (mGroup == null) {
+		if (mGroup == null && !hasRecentPrefetchFailure(LazyAttribute.GROUP)) {
 			try {
 				retrieveGroup();
 			}
@@ -437,7 +581,7 @@ public class Device implements Serializable {
 	 * @return the host firmware version
 	 */
 	public final String getHostFirmwareVersion() {
-		if (mHostFirmwareVersion == null) {
+		if (mHostFirmwareVersion == null && !hasRecentPrefetchFailure(LazyAttribute.HOST_FIRMWARE)) {
 			try {
 				retrieveHostFirmware();
 			}
@@ -454,7 +598,7 @@ public class Device implements Serializable {
 	 * @return the host firmware build time.
 	 */
 	public final Date getFirmwareBuildTime() {
-		if (mFirmwareBuildTime == null) {
+		if (mFirmwareBuildTime == null && !hasRecentPrefetchFailure(LazyAttribute.HOST_FIRMWARE)) {
 			try {
 				retrieveHostFirmware();
 			}
@@ -480,7 +624,7 @@ public class Device implements Serializable {
 	 * @return the wifi firmware version
 	 */
 	public final String getWifiFirmwareVersion() {
-		if (mWifiFirmwareVersion == null) {
+		if (mWifiFirmwareVersion == null && !hasRecentPrefetchFailure(LazyAttribute.WIFI_FIRMWARE)) {
 			try {
 				retrieveWifiFirmware();
 			}
@@ -616,6 +760,13 @@ public class Device implements Serializable {
 		mGroup = null;
 	}
 
+	/**
+	 * Reset the stored group, so that it is retrieved again on next access.
+	 */
+	final void resetGroup() {
+		mGroup = null;
+	}
+
 	/**
 	 * Set the location.
 	 *
@@ -655,4 +806,51 @@ public class Device implements Serializable {
 	public void storeLabel(final String label) {
 		mLabel = label;
 	}
+
+	/**
+	 * The attributes of a device which are retrieved lazily.
+	 */
+	public enum LazyAttribute {
+		/**
+		 * The label.
+		 */
+		LABEL,
+		/**
+		 * The location.
+		 */
+		LOCATION,
+		/**
+		 * The group.
+		 */
+		GROUP,
+		/**
+		 * The host firmware version and build time.
+		 */
+		HOST_FIRMWARE,
+		/**
+		 * The wifi firmware version.
+		 */
+		WIFI_FIRMWARE;
+
+		/**
+		 * Create the request retrieving this attribute.
+		 *
+		 * @return The request.
+		 */
+		private RequestMessage createRequest() {
+			switch (this) {
+			case LABEL:
+				return new GetLabel();
+			case LOCATION:
+				return new GetLocation();
+			case GROUP:
+				return new GetGroup();
+			case HOST_FIRMWARE:
+				return new GetHostFirmware();
+			case WIFI_FIRMWARE:
+			default:
+				return new GetWifiFirmware();
+			}
+		}
+	}
 }
@@ -0,0 +1,177 @@
+package de.jeisfeld.lifx.lan;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+
+/**
+ * A cache mapping device MAC addresses to their last known internet address and port, similar to an ARP cache. It is filled from
+ * all incoming responses and used by the connections to send unicast instead of broadcast.
+ */
+public final class DeviceAddressCache {
+	/**
+	 * The maximum age of an entry in millis. Older entries are ignored.
+	 */
+	private static final long MAX_AGE = 24 * 60 * 60 * 1000; // MAGIC_NUMBER
+	/**
+	 * The singleton instance.
+	 */
+	private static final DeviceAddressCache INSTANCE = new DeviceAddressCache();
+	/**
+	 * The cached addresses by MAC.
+	 */
+	private final Map<String, CachedAddress> mAddresses = new ConcurrentHashMap<>();
+	/**
+	 * A listener informed about changed addresses.
+	 */
+	private AddressChangeListener mAddressChangeListener = null;
+
+	/**
+	 * Get the DeviceAddressCache as singleton.
+	 *
+	 * @return The DeviceAddressCache as singleton.
+	 */
+	public static DeviceAddressCache getInstance() {
+		return DeviceAddressCache.INSTANCE;
+	}
+
+	/**
+	 * Hide default constructor.
+	 */
+	private DeviceAddressCache() {
+	}
+
+	/**
+	 * Get the cached address of a device.
+	 *
+	 * @param mac The MAC of the device.
+	 * @return The cached address. Null if there is no valid entry.
+	 */
+	public CachedAddress get(final String mac) {
+		if (mac == null || RequestMessage.BROADCAST_MAC.equals(mac)) {
+			return null;
+		}
+		CachedAddress cachedAddress = mAddresses.get(mac.toUpperCase());
+		if (cachedAddress == null || System.currentTimeMillis() - cachedAddress.getLastSeen() > MAX_AGE) {
+			return null;
+		}
+		return cachedAddress;
+	}
+
+	/**
+	 * Store the address from which a device sent a message.
+	 *
+	 * @param mac         The MAC of the device.
+	 * @param inetAddress The internet address.
+	 * @param port        The port.
+	 */
+	public void update(final String mac, final InetAddress inetAddress, final int port) {
+		if (mac == null || inetAddress == null || port <= 0 || RequestMessage.BROADCAST_MAC.equals(mac)) {
+			return;
+		}
+		CachedAddress oldAddress = mAddresses.put(mac.toUpperCase(), new CachedAddress(inetAddress, port, System.currentTimeMillis()));
+		AddressChangeListener listener = mAddressChangeListener;
+		if (listener != null && (oldAddress == null || !inetAddress.equals(oldAddress.getInetAddress()) || port != oldAddress.getPort())) {
+			listener.onAddressChanged(mac, inetAddress, port);
+		}
+	}
+
+	/**
+	 * Remove the cached address of a device.
+	 *
+	 * @param mac The MAC of the device.
+	 */
+	public void remove(final String mac) {
+		if (mac != null) {
+			mAddresses.remove(mac.toUpperCase());
+		}
+	}
+
+	/**
+	 * Set a listener that is informed when a device is seen at a new address, e.g. in order to persist it.
+	 *
+	 * @param listener The listener.
+	 */
+	public void setAddressChangeListener(final AddressChangeListener listener) {
+		mAddressChangeListener = listener;
+	}
+
+	/**
+	 * A cached address.
+	 */
+	public static final class CachedAddress {
+		/**
+		 * The internet address.
+		 */
+		private final InetAddress mInetAddress;
+		/**
+		 * The port.
+		 */
+		private final int mPort;
+		/**
+		 * The timestamp when the device was last seen at this address.
+		 */
+		private final long mLastSeen;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param inetAddress The internet address.
+		 * @param port        The port.
+		 * @param lastSeen    The timestamp when the device was last seen at this address.
+		 */
+		private CachedAddress(final InetAddress inetAddress, final int port, final long lastSeen) {
+			mInetAddress = inetAddress;
+			mPort = port;
+			mLastSeen = lastSeen;
+		}
+
+		/**
+		 * Get the internet address.
+		 *
+		 * @return the internet address.
+		 */
+		public InetAddress getInetAddress() {
+			return mInetAddress;
+		}
+
+		/**
+		 * Get the port.
+		 *
+		 * @return the port.
+		 */
+		public int getPort() {
+			return mPort;
+		}
+
+		/**
+		 * Get the timestamp when the device was last seen at this address.
+		 *
+		 * @return the timestamp.
+		 */
+		public long getLastSeen() {
+			return mLastSeen;
+		}
+
+		@Override
+		public String toString() {
+			return mInetAddress.getHostAddress() + ":" + mPort + " (" + mLastSeen + ")";
+		}
+	}
+
+	/**
+	 * Listener for changed device addresses.
+	 */
+	public interface AddressChangeListener {
+		/**
+		 * Callback method called if a device is seen at a new address.
+		 *
+		 * @param mac         The MAC of the device.
+		 * @param inetAddress The new internet address.
+		 * @param port        The new port.
+		 */
+		void onAddressChanged(String mac, InetAddress inetAddress, int port);
+	}
+}
@@ -0,0 +1,154 @@
+package de.jeisfeld.lifx.lan;
+
+/**
+ * Statistics and pacing for the frames of an animation on one device. It measures the latency of acknowledgements, the loss rate and
+ * the achieved frame rate, and limits the frame rate to the capabilities of the device.
+ */
+public class FramePacer {
+	/**
+	 * The weight of a new measurement in the exponential moving averages.
+	 */
+	private static final double SMOOTHING_FACTOR = 0.2;
+	/**
+	 * The latency from which a frame is considered as lost on first attempt.
+	 */
+	private static final long LOSS_LATENCY = 1000;
+	/**
+	 * The minimum interval between frames in millis.
+	 */
+	private final int mMinFrameInterval;
+	/**
+	 * The average latency in millis.
+	 */
+	private double mAverageLatency = 0;
+	/**
+	 * The average interval between frames in millis.
+	 */
+	private double mAverageFrameInterval = 0;
+	/**
+	 * The average loss rate.
+	 */
+	private double mLossRate = 0;
+	/**
+	 * The start time of the last frame.
+	 */
+	private long mLastFrameTime = 0;
+	/**
+	 * The number of sent frames.
+	 */
+	private int mSentFrames = 0;
+	/**
+	 * The number of dropped frames.
+	 */
+	private int mDroppedFrames = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param minFrameInterval The minimum interval between frames in millis.
+	 */
+	public FramePacer(final int minFrameInterval) {
+		mMinFrameInterval = minFrameInterval;
+	}
+
+	/**
+	 * Record a frame which has been sent.
+	 *
+	 * @param startTime The time when sending started.
+	 * @param endTime   The time when the acknowledgement was received.
+	 */
+	public synchronized void onFrameSent(final long startTime, final long endTime) {
+		long latency = endTime - startTime;
+		mAverageLatency = mSentFrames == 0 ? latency : mAverageLatency + SMOOTHING_FACTOR * (latency - mAverageLatency);
+		mLossRate += SMOOTHING_FACTOR * ((latency >= LOSS_LATENCY ? 1 : 0) - mLossRate);
+		if (mSentFrames > 0) {
+			long interval = startTime - mLastFrameTime;
+			mAverageFrameInterval = mSentFrames == 1 ? interval : mAverageFrameInterval + SMOOTHING_FACTOR * (interval - mAverageFrameInterval);
+		}
+		mLastFrameTime = startTime;
+		mSentFrames++;
+	}
+
+	/**
+	 * Record a frame which failed to be sent.
+	 */
+	public synchronized void onFrameFailed() {
+		mLossRate += SMOOTHING_FACTOR * (1 - mLossRate);
+	}
+
+	/**
+	 * Record a frame which has been dropped or merged into a later frame.
+	 */
+	public synchronized void onFrameDropped() {
+		mDroppedFrames++;
+	}
+
+	/**
+	 * Get the earliest time when the next frame may be sent.
+	 *
+	 * @return The earliest time for the next frame.
+	 */
+	public synchronized long getEarliestNextFrameTime() {
+		return mLastFrameTime + mMinFrameInterval;
+	}
+
+	/**
+	 * Get the minimum interval between frames.
+	 *
+	 * @return The minimum interval between frames in millis.
+	 */
+	public int getMinFrameInterval() {
+		return mMinFrameInterval;
+	}
+
+	/**
+	 * Get the average latency of acknowledgements.
+	 *
+	 * @return The average latency in millis.
+	 */
+	public synchronized double getAverageLatency() {
+		return mAverageLatency;
+	}
+
+	/**
+	 * Get the loss rate, i.e. the share of frames which were not acknowledged on first attempt.
+	 *
+	 * @return The loss rate between 0 and 1.
+	 */
+	public synchronized double getLossRate() {
+		return mLossRate;
+	}
+
+	/**
+	 * Get the achieved frame rate.
+	 *
+	 * @return The achieved frames per second.
+	 */
+	public synchronized double getFrameRate() {
+		return mAverageFrameInterval <= 0 ? 0 : 1000 / mAverageFrameInterval; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Get the number of sent frames.
+	 *
+	 * @return The number of sent frames.
+	 */
+	public synchronized int getSentFrames() {
+		return mSentFrames;
+	}
+
+	/**
+	 * Get the number of dropped frames.
+	 *
+	 * @return The number of dropped frames.
+	 */
+	public synchronized int getDroppedFrames() {
+		return mDroppedFrames;
+	}
+
+	@Override
+	public final synchronized String toString() {
+		return String.format("[fps:%.1f, latency:%.0fms, loss:%.2f, sent:%d, dropped:%d]", getFrameRate(), mAverageLatency, mLossRate,
+				mSentFrames, mDroppedFrames);
+	}
+}
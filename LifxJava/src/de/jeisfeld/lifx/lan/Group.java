@@ -2,12 +2,27 @@ package de.jeisfeld.lifx.lan;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
+import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
+import de.jeisfeld.lifx.lan.message.LightSetColor;
+import de.jeisfeld.lifx.lan.message.LightSetPower;
+import de.jeisfeld.lifx.lan.message.LightSetWaveform;
+import de.jeisfeld.lifx.lan.message.LightSetWaveformOptional;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
+import de.jeisfeld.lifx.lan.message.SetGroup;
+import de.jeisfeld.lifx.lan.message.SetPower;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Waveform;
 import de.jeisfeld.lifx.lan.util.TypeUtil;
 
 /**
@@ -18,6 +33,19 @@ public class Group implements Serializable {
 	 * The default serializable version id.
 	 */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The retry policy for commands which should reach all devices, using the default attempts and timeouts.
+	 */
+	public static final RetryPolicy RELIABLE_RETRY_POLICY = new ReliableRetryPolicy();
+	/**
+	 * The retry policy for interactive commands, e.g. from sliders. A single short attempt is made, so that unreachable devices do not
+	 * delay the next command.
+	 */
+	public static final RetryPolicy INTERACTIVE_RETRY_POLICY = new InteractiveRetryPolicy();
+	/**
+	 * The timeout of interactive commands in millis.
+	 */
+	private static final int INTERACTIVE_TIMEOUT = 500;
 
 	/**
 	 * The group GUID.
@@ -94,9 +122,213 @@ public class Group implements Serializable {
 	 */
 	public void updateLabel(final String newGroupLabel) throws IOException {
 		Group updatedGroup = new Group(getGroupId(), newGroupLabel);
-		for (Device device : getDevices()) {
-			device.setGroup(updatedGroup);
+		List<Device> devices = getDevices();
+		CommandResult result = sendBurst(devices, device -> new SetGroup(updatedGroup), RELIABLE_RETRY_POLICY);
+		for (Device device : devices) {
+			device.resetGroup();
 		}
+		if (!result.getFailedDevices().isEmpty()) {
+			throw new IOException("Did not get response from " + result.getFailedDevices());
+		}
+	}
+
+	/**
+	 * Set the power of all devices of the group in one burst.
+	 *
+	 * @param status   true for switching on, false for switching off
+	 * @param duration the duration of power change in millis. Only relevant for lights.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public CommandResult setPower(final boolean status, final int duration) throws IOException {
+		return setPower(getDevices(), status, duration);
+	}
+
+	/**
+	 * Set the power of the given devices in one burst.
+	 *
+	 * @param devices  The devices.
+	 * @param status   true for switching on, false for switching off
+	 * @param duration the duration of power change in millis. Only relevant for lights.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setPower(final List<? extends Device> devices, final boolean status, final int duration) throws IOException {
+		return setPower(devices, status, duration, RELIABLE_RETRY_POLICY);
+	}
+
+	/**
+	 * Set the power of the given devices in one burst.
+	 *
+	 * @param devices     The devices.
+	 * @param status      true for switching on, false for switching off
+	 * @param duration    the duration of power change in millis. Only relevant for lights.
+	 * @param retryPolicy The retry policy.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setPower(final List<? extends Device> devices, final boolean status, final int duration,
+			final RetryPolicy retryPolicy) throws IOException {
+		return sendBurst(devices, device -> device instanceof Light ? new LightSetPower(status, duration) : new SetPower(status),
+				retryPolicy);
+	}
+
+	/**
+	 * Set the color of all lights of the group in one burst.
+	 *
+	 * @param color    the target color.
+	 * @param duration the duration of color change in millis.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public CommandResult setColor(final Color color, final int duration) throws IOException {
+		return setColor(getDevices(), color, duration);
+	}
+
+	/**
+	 * Set the color of the given lights in one burst. Devices which are not lights are ignored.
+	 *
+	 * @param devices  The devices.
+	 * @param color    the target color.
+	 * @param duration the duration of color change in millis.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setColor(final List<? extends Device> devices, final Color color, final int duration) throws IOException {
+		return setColor(devices, color, duration, RELIABLE_RETRY_POLICY);
+	}
+
+	/**
+	 * Set the color of the given lights in one burst. Devices which are not lights are ignored.
+	 *
+	 * @param devices     The devices.
+	 * @param color       the target color.
+	 * @param duration    the duration of color change in millis.
+	 * @param retryPolicy The retry policy.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setColor(final List<? extends Device> devices, final Color color, final int duration,
+			final RetryPolicy retryPolicy) throws IOException {
+		return sendBurst(getLights(devices), device -> new LightSetColor(color, duration), retryPolicy);
+	}
+
+	/**
+	 * Set the brightness of the given lights in one burst, keeping their other color parameters. Devices which are not lights are
+	 * ignored.
+	 *
+	 * @param devices    The devices.
+	 * @param brightness the brightness from 0 to 1.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setBrightness(final List<? extends Device> devices, final double brightness) throws IOException {
+		return setBrightness(devices, brightness, RELIABLE_RETRY_POLICY);
+	}
+
+	/**
+	 * Set the brightness of the given lights in one burst, keeping their other color parameters. Devices which are not lights are
+	 * ignored.
+	 *
+	 * @param devices     The devices.
+	 * @param brightness  the brightness from 0 to 1.
+	 * @param retryPolicy The retry policy.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setBrightness(final List<? extends Device> devices, final double brightness,
+			final RetryPolicy retryPolicy) throws IOException {
+		Color color = new Color(0, 0, brightness, Color.WHITE_TEMPERATURE);
+		return sendBurst(getLights(devices), device -> new LightSetWaveformOptional(false, color, 0, 1, Short.MIN_VALUE, Waveform.PULSE,
+				false, false, true, false), retryPolicy);
+	}
+
+	/**
+	 * Set a waveform on all lights of the group in one burst.
+	 *
+	 * @param isTransient the transient flag indicating if the color should finally return to prior value.
+	 * @param color       The target color.
+	 * @param period      the cycle period.
+	 * @param cycles      the number of cycles.
+	 * @param waveform    the waveform.
+	 * @param skewRatio   the skew ratio between 0 and 1.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public CommandResult setWaveform(final boolean isTransient, final Color color, final int period, final double cycles,
+			final Waveform waveform, final double skewRatio) throws IOException {
+		return setWaveform(getDevices(), isTransient, color, period, cycles, waveform, skewRatio);
+	}
+
+	/**
+	 * Set a waveform on the given lights in one burst. Devices which are not lights are ignored.
+	 *
+	 * @param devices     The devices.
+	 * @param isTransient the transient flag indicating if the color should finally return to prior value.
+	 * @param color       The target color.
+	 * @param period      the cycle period.
+	 * @param cycles      the number of cycles.
+	 * @param waveform    the waveform.
+	 * @param skewRatio   the skew ratio between 0 and 1.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	public static CommandResult setWaveform(final List<? extends Device> devices, final boolean isTransient, final Color color, // SUPPRESS_CHECKSTYLE
+			final int period, final double cycles, final Waveform waveform, final double skewRatio) throws IOException {
+		float floatCycles = (float) Math.max(0, Math.min(Float.MAX_VALUE, cycles));
+		short skew = (short) (TypeUtil.toShort(skewRatio) + Short.MIN_VALUE);
+		return sendBurst(getLights(devices), device -> new LightSetWaveform(isTransient, color, period, floatCycles, skew, waveform),
+				RELIABLE_RETRY_POLICY);
+	}
+
+	/**
+	 * Filter the lights from a list of devices.
+	 *
+	 * @param devices The devices.
+	 * @return the lights.
+	 */
+	private static List<Device> getLights(final List<? extends Device> devices) {
+		List<Device> lights = new ArrayList<>();
+		for (Device device : devices) {
+			if (device instanceof Light) {
+				lights.add(device);
+			}
+		}
+		return lights;
+	}
+
+	/**
+	 * Send a request to all given devices in one burst via a shared socket, so that all devices change at the same time.
+	 *
+	 * @param devices        The devices.
+	 * @param requestFactory The factory creating the request per device.
+	 * @param retryPolicy    The retry policy.
+	 * @return The result of the command.
+	 * @throws IOException Connection issues
+	 */
+	private static CommandResult sendBurst(final List<? extends Device> devices, final RequestFactory requestFactory,
+			final RetryPolicy retryPolicy) throws IOException {
+		if (devices.isEmpty()) {
+			return new CommandResult(new ArrayList<>(), new ArrayList<>());
+		}
+		LifxLanBurstConnection connection = new LifxLanBurstConnection(devices.get(0).getSourceId());
+		Map<Device, RequestMessage> requests = new LinkedHashMap<>();
+		for (Device device : devices) {
+			requests.put(device, connection.addRequest(device, requestFactory.createRequest(device)));
+		}
+		Map<RequestMessage, ResponseMessage> responses = connection.sendWithResponses(retryPolicy);
+
+		List<Device> succeededDevices = new ArrayList<>();
+		List<Device> failedDevices = new ArrayList<>();
+		for (Entry<Device, RequestMessage> entry : requests.entrySet()) {
+			if (responses.containsKey(entry.getValue())) {
+				succeededDevices.add(entry.getKey());
+			}
+			else {
+				failedDevices.add(entry.getKey());
+			}
+		}
+		return new CommandResult(succeededDevices, failedDevices);
 	}
 
 	@Override
@@ -161,6 +393,97 @@ public class Group implements Serializable {
 		return mParameters.get(key);
 	}
 
+	/**
+	 * A factory for requests sent to the devices of a group.
+	 */
+	private interface RequestFactory {
+		/**
+		 * Create the request for a device.
+		 *
+		 * @param device The device.
+		 * @return The request.
+		 */
+		RequestMessage createRequest(Device device);
+	}
+
+	/**
+	 * The retry policy with default attempts and timeouts.
+	 */
+	private static final class ReliableRetryPolicy implements RetryPolicy {
+	}
+
+	/**
+	 * The retry policy with a single short attempt.
+	 */
+	private static final class InteractiveRetryPolicy implements RetryPolicy {
+		@Override
+		public int getAttempts() {
+			return 1;
+		}
+
+		@Override
+		public int getTimeout(final int attempt) {
+			return INTERACTIVE_TIMEOUT;
+		}
+	}
+
+	/**
+	 * The aggregate result of a command sent to all devices of a group.
+	 */
+	public static final class CommandResult {
+		/**
+		 * The devices which acknowledged the command.
+		 */
+		private final List<Device> mSucceededDevices;
+		/**
+		 * The devices which did not acknowledge the command.
+		 */
+		private final List<Device> mFailedDevices;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param succeededDevices The devices which acknowledged the command.
+		 * @param failedDevices    The devices which did not acknowledge the command.
+		 */
+		private CommandResult(final List<Device> succeededDevices, final List<Device> failedDevices) {
+			mSucceededDevices = Collections.unmodifiableList(succeededDevices);
+			mFailedDevices = Collections.unmodifiableList(failedDevices);
+		}
+
+		/**
+		 * Get the devices which acknowledged the command.
+		 *
+		 * @return The devices which acknowledged the command.
+		 */
+		public List<Device> getSucceededDevices() {
+			return mSucceededDevices;
+		}
+
+		/**
+		 * Get the devices which did not acknowledge the command.
+		 *
+		 * @return The devices which did not acknowledge the command.
+		 */
+		public List<Device> getFailedDevices() {
+			return mFailedDevices;
+		}
+
+		/**
+		 * Check if all devices acknowledged the command.
+		 *
+		 * @return true if all devices acknowledged the command.
+		 */
+		public boolean isSuccess() {
+			return mFailedDevices.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "[succeeded:" + mSucceededDevices.size() + ", failed:" + mFailedDevices + "]";
+		}
+	}
+
 	/**
 	 * An exception for invalid groupIds.
 	 */
@@ -1,19 +1,51 @@
 package de.jeisfeld.lifx.lan;
 
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
+import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.List;
 
+import de.jeisfeld.lifx.lan.message.GetService;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
 import de.jeisfeld.lifx.os.Logger;
+import de.jeisfeld.lifx.os.OsTools;
 
 /**
  * Utility class to find addresses in the LAN.
  */
 public class LanCheck {
+	/**
+	 * The UDP port of LIFX devices.
+	 */
+	private static final int UDP_PORT = 56700;
+	/**
+	 * The buffer size.
+	 */
+	private static final int BUFFER_SIZE = 1024;
+	/**
+	 * The default timeout of the sweep.
+	 */
+	private static final int DEFAULT_SWEEP_TIMEOUT = 2000;
+	/**
+	 * The minimum prefix length of swept subnets, limiting a sweep to 4094 hosts per subnet.
+	 */
+	private static final int MIN_PREFIX_LENGTH = 20;
 	/**
 	 * The list of found addresses.
 	 */
@@ -46,62 +78,155 @@ public class LanCheck {
 	}
 
 	/**
-	 * Find hosts in local lan.
+	 * Find LIFX devices in the local LAN by sending a unicast GetService message to every host of every local IPv4 subnet. This finds
+	 * devices also in networks where broadcast is filtered. All messages are sent and received non-blocking from a single thread.
 	 *
-	 * @return The list of round hosts.
+	 * @return The list of found hosts.
 	 */
 	public List<InetAddress> getHostsInLan() {
-		mAddresses = new ArrayList<InetAddress>();
-		List<CheckerThread> threads = new ArrayList<>();
+		return getHostsInLan(DEFAULT_SWEEP_TIMEOUT);
+	}
+
+	/**
+	 * Find LIFX devices in the local LAN by sending a unicast GetService message to every host of every local IPv4 subnet.
+	 *
+	 * @param timeout The overall timeout in millis.
+	 * @return The list of found hosts.
+	 */
+	public List<InetAddress> getHostsInLan(final int timeout) {
+		mAddresses = new ArrayList<>();
+		Deque<InetAddress> targets;
 		try {
-			InetAddress local = InetAddress.getLocalHost();
-			byte[] ipAddress = local.getAddress();
+			targets = getSubnetHosts();
+		}
+		catch (SocketException e) {
+			Logger.error(e);
+			return mAddresses;
+		}
 
-			for (int i = 1; i <= 255; i++) { // MAGIC_NUMBER
-				ipAddress[3] = (byte) i; // MAGIC_NUMBER
-				InetAddress address = InetAddress.getByAddress(ipAddress);
-				CheckerThread thread = new CheckerThread(address);
-				threads.add(thread);
-				thread.start();
-				Thread.sleep(5); // MAGIC_NUMBER
-			}
-			for (CheckerThread thread : threads) {
-				thread.join();
+		GetService request = new GetService();
+		request.setSourceId(OsTools.getPid());
+		request.setSequenceNumber((byte) 0);
+		request.setTargetAddress(RequestMessage.BROADCAST_MAC);
+		byte[] message = request.getPackedMessage();
+		Logger.traceRequest(request);
+
+		try (DatagramChannel channel = DatagramChannel.open(); Selector selector = Selector.open()) {
+			channel.configureBlocking(false);
+			channel.bind(null);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			ByteBuffer sendBuffer = ByteBuffer.wrap(message);
+			ByteBuffer receiveBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+			long endTime = System.currentTimeMillis() + timeout;
+			long remainingTime = timeout;
+
+			while (remainingTime > 0) {
+				selector.select(remainingTime);
+				if (key.isWritable()) {
+					boolean isBlocked = false;
+					while (!targets.isEmpty() && !isBlocked) {
+						sendBuffer.rewind();
+						isBlocked = channel.send(sendBuffer, new InetSocketAddress(targets.peek(), UDP_PORT)) == 0;
+						if (!isBlocked) {
+							targets.poll();
+						}
+					}
+					if (targets.isEmpty()) {
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				}
+				if (key.isReadable()) {
+					SocketAddress sender;
+					receiveBuffer.clear();
+					while ((sender = channel.receive(receiveBuffer)) != null) {
+						evaluateResponse(request, receiveBuffer, (InetSocketAddress) sender);
+						receiveBuffer.clear();
+					}
+				}
+				selector.selectedKeys().clear();
+				remainingTime = endTime - System.currentTimeMillis();
 			}
 		}
-		catch (Exception e) {
+		catch (IOException e) {
 			Logger.error(e);
 		}
 		return mAddresses;
 	}
 
 	/**
-	 * Utility thread to check reachability of a single host.
+	 * Evaluate a received response of the sweep.
+	 *
+	 * @param request       The sent request.
+	 * @param receiveBuffer The buffer containing the response.
+	 * @param sender        The sender of the response.
 	 */
-	private final class CheckerThread extends Thread {
-		/**
-		 * The address to be checked.
-		 */
-		private final InetAddress mAddress;
-
-		/**
-		 * Constructor of a checker thread.
-		 *
-		 * @param address The address to be checked.
-		 */
-		private CheckerThread(final InetAddress address) {
-			mAddress = address;
+	private void evaluateResponse(final RequestMessage request, final ByteBuffer receiveBuffer, final InetSocketAddress sender) {
+		if (receiveBuffer.position() < 36) { // MAGIC_NUMBER
+			return;
 		}
+		DatagramPacket packet = new DatagramPacket(receiveBuffer.array(), receiveBuffer.position(), sender.getAddress(), sender.getPort());
+		ResponseMessage responseMessage = ResponseMessage.createResponseMessage(packet);
+		if (responseMessage == null) {
+			return;
+		}
+		LifxLanConnection.learnAddress(responseMessage, packet);
+		if (request.matches(responseMessage)) {
+			Logger.traceResponse(responseMessage, false);
+			if (!mAddresses.contains(sender.getAddress())) {
+				mAddresses.add(sender.getAddress());
+			}
+		}
+		else {
+			Logger.traceResponse(responseMessage, true);
+		}
+	}
 
-		@Override
-		public void run() {
-			try {
-				if (mAddress.isReachable(3000)) { // MAGIC_NUMBER
-					mAddresses.add(mAddress);
+	/**
+	 * Get all host addresses of the local IPv4 subnets. For large subnets, only the hosts within the surrounding /20 network of the
+	 * local address are considered.
+	 *
+	 * @return The host addresses.
+	 * @throws SocketException Exception with socket.
+	 */
+	private static Deque<InetAddress> getSubnetHosts() throws SocketException {
+		Deque<InetAddress> result = new ArrayDeque<>();
+		Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
+		if (networkInterfaces == null) {
+			throw new SocketException("Did not find any network interfaces");
+		}
+		while (networkInterfaces.hasMoreElements()) {
+			NetworkInterface networkInterface = networkInterfaces.nextElement();
+			if (networkInterface != null && !networkInterface.isLoopback() && networkInterface.isUp()) {
+				for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+					if (interfaceAddress.getAddress() instanceof Inet4Address) {
+						addSubnetHosts(result, interfaceAddress);
+					}
 				}
 			}
-			catch (Exception e) {
-				Logger.error(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Add all host addresses of the subnet of an interface address.
+	 *
+	 * @param hosts            The list where to add the hosts.
+	 * @param interfaceAddress The interface address.
+	 */
+	private static void addSubnetHosts(final Deque<InetAddress> hosts, final InterfaceAddress interfaceAddress) {
+		int prefixLength = Math.max(interfaceAddress.getNetworkPrefixLength(), MIN_PREFIX_LENGTH);
+		int localAddress = ByteBuffer.wrap(interfaceAddress.getAddress().getAddress()).getInt();
+		int hostMask = prefixLength >= 31 ? 0 : (1 << (32 - prefixLength)) - 1; // MAGIC_NUMBER
+		int networkAddress = localAddress & ~hostMask;
+		for (int host = 1; host < hostMask; host++) {
+			int address = networkAddress | host;
+			if (address != localAddress) {
+				try {
+					hosts.add(InetAddress.getByAddress(ByteBuffer.allocate(4).putInt(address).array())); // MAGIC_NUMBER
+				}
+				catch (UnknownHostException e) {
+					// ignore
+				}
 			}
 		}
 	}
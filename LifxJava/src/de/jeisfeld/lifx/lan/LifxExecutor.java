@@ -0,0 +1,172 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Executor for blocking tasks such as requests waiting for responses. By default, platform threads are used. On runtimes supporting
+ * virtual threads (Java 21+), virtual threads may be enabled via {@link #setUseVirtualThreads(boolean)} or via the system property
+ * "lifx.virtualThreads". On other runtimes (e.g. Android), the executor falls back to platform threads.
+ */
+public final class LifxExecutor {
+	/**
+	 * The system property for enabling virtual threads.
+	 */
+	private static final String PROPERTY_VIRTUAL_THREADS = "lifx.virtualThreads";
+	/**
+	 * The thread counter for platform threads.
+	 */
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+	/**
+	 * The maximum number of platform threads used by invokeAll.
+	 */
+	private static final int MAX_PARALLEL_TASKS = 16;
+	/**
+	 * The executor creating one virtual thread per task. Null if virtual threads are not supported.
+	 */
+	private static final ExecutorService VIRTUAL_THREAD_EXECUTOR = createVirtualThreadExecutor();
+	/**
+	 * The executor using platform threads.
+	 */
+	private static final ExecutorService PLATFORM_THREAD_EXECUTOR = Executors.newCachedThreadPool(LifxExecutor::createPlatformThread);
+	/**
+	 * Flag indicating if virtual threads should be used.
+	 */
+	private static final AtomicBoolean USE_VIRTUAL_THREADS = new AtomicBoolean(Boolean.getBoolean(PROPERTY_VIRTUAL_THREADS));
+
+	/**
+	 * Hide default constructor.
+	 */
+	private LifxExecutor() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Create a platform thread.
+	 *
+	 * @param runnable The runnable of the thread.
+	 * @return The thread.
+	 */
+	private static Thread createPlatformThread(final Runnable runnable) {
+		Thread thread = new Thread(runnable, "LifxWorker-" + THREAD_COUNTER.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Create the executor for virtual threads via reflection, so that the library still runs on runtimes without virtual threads.
+	 *
+	 * @return The executor, or null if virtual threads are not supported.
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (Exception | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Check if virtual threads are supported by the runtime.
+	 *
+	 * @return true if virtual threads are supported.
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/**
+	 * Enable or disable the usage of virtual threads. If not supported by the runtime, platform threads are used anyway.
+	 *
+	 * @param useVirtualThreads true to use virtual threads.
+	 */
+	public static void setUseVirtualThreads(final boolean useVirtualThreads) {
+		if (useVirtualThreads && !isVirtualThreadsSupported()) {
+			Logger.info("Virtual threads are not supported - using platform threads.");
+		}
+		USE_VIRTUAL_THREADS.set(useVirtualThreads);
+	}
+
+	/**
+	 * Check if virtual threads are used.
+	 *
+	 * @return true if virtual threads are used.
+	 */
+	public static boolean isUsingVirtualThreads() {
+		return USE_VIRTUAL_THREADS.get() && isVirtualThreadsSupported();
+	}
+
+	/**
+	 * Get the executor for blocking tasks.
+	 *
+	 * @return The executor.
+	 */
+	public static ExecutorService getExecutor() {
+		return isUsingVirtualThreads() ? VIRTUAL_THREAD_EXECUTOR : PLATFORM_THREAD_EXECUTOR;
+	}
+
+	/**
+	 * Execute a blocking task.
+	 *
+	 * @param task The task.
+	 */
+	public static void execute(final Runnable task) {
+		getExecutor().execute(task);
+	}
+
+	/**
+	 * Run blocking tasks in parallel and wait for all results. Without virtual threads, at most MAX_PARALLEL_TASKS platform threads
+	 * are used, so that e.g. a discovery of many devices does not start one thread per device.
+	 *
+	 * @param tasks The tasks.
+	 * @param <T>   The result type.
+	 * @return The results in the order of the tasks. Failed tasks give null.
+	 */
+	public static <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) {
+		List<T> results = new ArrayList<>();
+		if (tasks.size() == 1) {
+			try {
+				results.add(tasks.get(0).call());
+			}
+			catch (Exception e) {
+				Logger.error(e);
+				results.add(null);
+			}
+			return results;
+		}
+		ExecutorService executor = isUsingVirtualThreads() ? VIRTUAL_THREAD_EXECUTOR
+				: Executors.newFixedThreadPool(Math.max(1, Math.min(tasks.size(), MAX_PARALLEL_TASKS)), LifxExecutor::createPlatformThread);
+		List<Future<T>> futures;
+		try {
+			futures = executor.invokeAll(tasks);
+		}
+		catch (InterruptedException e) {
+			return results;
+		}
+		finally {
+			if (executor != VIRTUAL_THREAD_EXECUTOR) {
+				executor.shutdown();
+			}
+		}
+		for (Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			}
+			catch (InterruptedException | ExecutionException e) {
+				Logger.error(e);
+				results.add(null);
+			}
+		}
+		return results;
+	}
+}
@@ -1,14 +1,41 @@
 package de.jeisfeld.lifx.lan;
 
 import java.io.IOException;
+import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import de.jeisfeld.lifx.lan.LifxLanConnection.DeviceFilter;
 import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
+import de.jeisfeld.lifx.lan.message.GetPower;
 import de.jeisfeld.lifx.lan.message.GetService;
+import de.jeisfeld.lifx.lan.message.LightGet;
+import de.jeisfeld.lifx.lan.message.LightState;
+import de.jeisfeld.lifx.lan.message.MultizoneGetColorZones;
+import de.jeisfeld.lifx.lan.message.MultizoneGetExtendedColorZones;
+import de.jeisfeld.lifx.lan.message.MultizoneStateExtendedColorZones;
+import de.jeisfeld.lifx.lan.message.MultizoneStateZone;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
 import de.jeisfeld.lifx.lan.message.ResponseMessage;
+import de.jeisfeld.lifx.lan.message.StatePower;
 import de.jeisfeld.lifx.lan.message.StateService;
+import de.jeisfeld.lifx.lan.message.TileGetTileState64;
+import de.jeisfeld.lifx.lan.message.TileStateTileState64;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.DeviceState;
+import de.jeisfeld.lifx.lan.type.MultizoneColors;
+import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.type.TileColors;
+import de.jeisfeld.lifx.lan.type.TileInfo;
+import de.jeisfeld.lifx.lan.util.TypeUtil;
 import de.jeisfeld.lifx.os.DeviceRegistryInterface;
 import de.jeisfeld.lifx.os.Logger;
 import de.jeisfeld.lifx.os.OsTools;
@@ -17,6 +44,10 @@ import de.jeisfeld.lifx.os.OsTools;
  * Handler for managing LIFX via LAN API.
  */
 public final class LifxLan implements DeviceRegistryInterface {
+	/**
+	 * The default timeout for state snapshots.
+	 */
+	private static final int SNAPSHOT_TIMEOUT = 1000;
 	/**
 	 * The singleton instance.
 	 */
@@ -227,15 +258,214 @@ public final class LifxLan implements DeviceRegistryInterface {
 			mDevices.removeIf(filter::matches);
 			mLights.removeIf(filter::matches);
 		}
-		List<Device> foundDevices = new ArrayList<>();
+		// Retrieve the version information of all devices in parallel.
+		List<Callable<Device>> versionRequests = new ArrayList<>();
 		for (ResponseMessage response : responses) {
-			Device device = ((StateService) response).getDevice().getDeviceProduct();
-			foundDevices.add(device);
-			mDevices.add(device);
-			if (device instanceof Light) {
-				mLights.add((Light) device);
+			versionRequests.add(() -> ((StateService) response).getDevice().getDeviceProduct());
+		}
+		List<Device> foundDevices = new ArrayList<>();
+		for (Device device : LifxExecutor.invokeAll(versionRequests)) {
+			if (device != null) {
+				foundDevices.add(device);
+				mDevices.add(device);
+				if (device instanceof Light) {
+					mLights.add((Light) device);
+				}
 			}
 		}
 		return foundDevices;
 	}
+
+	/**
+	 * Get a snapshot of the state of several devices. All requests are sent in one burst, so that the total time is bounded by one
+	 * timeout rather than by one round trip per device and request.
+	 *
+	 * @param devices The devices.
+	 * @param kinds The kinds of state to be retrieved.
+	 * @return An immutable map from device MAC to device state.
+	 */
+	public Map<String, DeviceState> getStateSnapshot(final Collection<? extends Device> devices, final Set<DeviceState.Kind> kinds) {
+		return getStateSnapshot(devices, kinds, new RetryPolicy() {
+			@Override
+			public int getAttempts() {
+				return 1;
+			}
+
+			@Override
+			public int getTimeout(final int attempt) {
+				return LifxLan.SNAPSHOT_TIMEOUT;
+			}
+		});
+	}
+
+	/**
+	 * Get a snapshot of the state of several devices. All requests are sent in one burst, so that the total time is bounded by one
+	 * timeout per attempt rather than by one round trip per device and request.
+	 *
+	 * @param devices The devices.
+	 * @param kinds The kinds of state to be retrieved.
+	 * @param retryPolicy The retry policy.
+	 * @return An immutable map from device MAC to device state.
+	 */
+	public Map<String, DeviceState> getStateSnapshot(final Collection<? extends Device> devices, final Set<DeviceState.Kind> kinds,
+			final RetryPolicy retryPolicy) {
+		LifxLanBurstConnection connection = new LifxLanBurstConnection(mSourceId);
+		Map<Device, SnapshotRequests> requestMap = new LinkedHashMap<>();
+		for (Device device : devices) {
+			requestMap.put(device, new SnapshotRequests(connection, device, kinds));
+		}
+
+		Map<RequestMessage, ResponseMessage> responses;
+		try {
+			responses = connection.sendWithResponses(retryPolicy);
+		}
+		catch (SocketException e) {
+			Logger.error(e);
+			responses = new HashMap<>();
+		}
+
+		Map<String, DeviceState> result = new LinkedHashMap<>();
+		for (Map.Entry<Device, SnapshotRequests> entry : requestMap.entrySet()) {
+			result.put(entry.getKey().getTargetAddress(), entry.getValue().getDeviceState(responses));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * The requests sent for the snapshot of one device.
+	 */
+	private static final class SnapshotRequests {
+		/**
+		 * The device.
+		 */
+		private final Device mDevice;
+		/**
+		 * The power request.
+		 */
+		private RequestMessage mPowerRequest = null;
+		/**
+		 * The color request.
+		 */
+		private RequestMessage mColorRequest = null;
+		/**
+		 * The multizone requests (one for extended API, otherwise one per block of 8 zones).
+		 */
+		private final List<RequestMessage> mMultizoneRequests = new ArrayList<>();
+		/**
+		 * The tile requests (one per tile).
+		 */
+		private final List<RequestMessage> mTileRequests = new ArrayList<>();
+		/**
+		 * All requests of this device.
+		 */
+		private final List<RequestMessage> mAllRequests = new ArrayList<>();
+
+		/**
+		 * Create the requests for one device and add them to the burst.
+		 *
+		 * @param connection The burst connection.
+		 * @param device The device.
+		 * @param kinds The kinds of state to be retrieved.
+		 */
+		private SnapshotRequests(final LifxLanBurstConnection connection, final Device device, final Set<DeviceState.Kind> kinds) {
+			mDevice = device;
+			if (kinds.contains(DeviceState.Kind.POWER)) {
+				mPowerRequest = connection.addRequest(device, new GetPower());
+			}
+			if (kinds.contains(DeviceState.Kind.COLOR) && device instanceof Light) {
+				mColorRequest = connection.addRequest(device, new LightGet());
+			}
+			if (kinds.contains(DeviceState.Kind.MULTIZONE_COLORS) && device instanceof MultiZoneLight) {
+				MultiZoneLight multiZoneLight = (MultiZoneLight) device;
+				if (multiZoneLight.hasExtendedApi()) {
+					mMultizoneRequests.add(connection.addRequest(device, new MultizoneGetExtendedColorZones()));
+				}
+				else {
+					int zoneCount = TypeUtil.toUnsignedInt(multiZoneLight.getZoneCount());
+					for (int start = 0; start < zoneCount; start += 8) { // MAGIC_NUMBER
+						mMultizoneRequests.add(connection.addRequest(device,
+								new MultizoneGetColorZones((byte) start, (byte) Math.min(zoneCount - 1, start + 7)))); // MAGIC_NUMBER
+					}
+				}
+			}
+			if (kinds.contains(DeviceState.Kind.TILE_CHAIN_COLORS) && device instanceof TileChain) {
+				TileChain tileChain = (TileChain) device;
+				if (tileChain.getTileInfo() != null) {
+					for (byte tileIndex = 0; tileIndex < tileChain.getTileCount(); tileIndex++) {
+						mTileRequests.add(connection.addRequest(device, new TileGetTileState64((byte) (tileChain.getStartIndex() + tileIndex),
+								(byte) 1, (byte) 0, (byte) 0, tileChain.getTileInfo().get(tileIndex).getWidth())));
+					}
+				}
+			}
+			if (mPowerRequest != null) {
+				mAllRequests.add(mPowerRequest);
+			}
+			if (mColorRequest != null) {
+				mAllRequests.add(mColorRequest);
+			}
+			mAllRequests.addAll(mMultizoneRequests);
+			mAllRequests.addAll(mTileRequests);
+		}
+
+		/**
+		 * Evaluate the responses into a device state.
+		 *
+		 * @param responses The responses of the burst.
+		 * @return The device state.
+		 */
+		private DeviceState getDeviceState(final Map<RequestMessage, ResponseMessage> responses) {
+			Power power = null;
+			if (mPowerRequest != null && responses.get(mPowerRequest) != null) {
+				power = new Power(((StatePower) responses.get(mPowerRequest)).getLevel());
+			}
+			Color color = null;
+			if (mColorRequest != null && responses.get(mColorRequest) != null) {
+				color = ((LightState) responses.get(mColorRequest)).getColor();
+			}
+
+			MultizoneColors multizoneColors = null;
+			List<Color> zoneColors = new ArrayList<>();
+			for (RequestMessage request : mMultizoneRequests) {
+				ResponseMessage response = responses.get(request);
+				if (response instanceof MultizoneStateExtendedColorZones) {
+					zoneColors.addAll(((MultizoneStateExtendedColorZones) response).getColors());
+				}
+				else if (response instanceof MultizoneStateZone) {
+					zoneColors.addAll(((MultizoneStateZone) response).getColors());
+				}
+				else {
+					zoneColors = null;
+					break;
+				}
+			}
+			if (zoneColors != null && !zoneColors.isEmpty()) {
+				multizoneColors = new MultizoneColors.Exact(zoneColors);
+			}
+
+			TileChainColors tileChainColors = null;
+			if (!mTileRequests.isEmpty()) {
+				TileChain tileChain = (TileChain) mDevice;
+				TileColors[] tileColors = new TileColors[mTileRequests.size()];
+				for (int tileIndex = 0; tileIndex < mTileRequests.size(); tileIndex++) {
+					ResponseMessage response = responses.get(mTileRequests.get(tileIndex));
+					if (response == null) {
+						tileColors = null;
+						break;
+					}
+					TileInfo tileInfo = tileChain.getTileInfo().get(tileIndex);
+					tileColors[tileIndex] =
+							new TileColors.Exact(((TileStateTileState64) response).getColors(), tileInfo.getWidth(), tileInfo.getHeight());
+				}
+				if (tileColors != null) {
+					tileChainColors = new TileChainColors.PerTile(tileChain, tileColors);
+				}
+			}
+
+			boolean isReachable = false;
+			for (RequestMessage request : mAllRequests) {
+				isReachable = isReachable || responses.containsKey(request);
+			}
+			return new DeviceState(power, color, multizoneColors, tileChainColors, isReachable);
+		}
+	}
 }
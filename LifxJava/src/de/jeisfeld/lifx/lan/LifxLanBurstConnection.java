@@ -0,0 +1,260 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import de.jeisfeld.lifx.lan.DeviceAddressCache.CachedAddress;
+import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Handler for a burst of UDP requests to several devices. All requests are sent via one socket, and responses are collected with
+ * a common timeout, so that the total time is bounded by one round trip rather than one round trip per request. Addresses are taken
+ * from the DeviceAddressCache where available.
+ */
+public class LifxLanBurstConnection {
+	/**
+	 * The buffer size.
+	 */
+	private static final int BUFFER_SIZE = 1024;
+	/**
+	 * The sourceId.
+	 */
+	private final int mSourceId;
+	/**
+	 * The requests of this burst.
+	 */
+	private final List<BurstRequest> mRequests = new ArrayList<>();
+	/**
+	 * The last used sequence number per target address.
+	 */
+	private final Map<String, Byte> mSequenceNumbers = new HashMap<>();
+
+	/**
+	 * Create a burst connection.
+	 *
+	 * @param sourceId the sourceId
+	 */
+	public LifxLanBurstConnection(final int sourceId) {
+		mSourceId = sourceId;
+	}
+
+	/**
+	 * Add a request to the burst.
+	 *
+	 * @param device  The device to which the request is sent.
+	 * @param request The request.
+	 * @return The request (prepared for sending).
+	 */
+	public RequestMessage addRequest(final Device device, final RequestMessage request) {
+		String targetAddress = device.getTargetAddress() == null ? RequestMessage.BROADCAST_MAC : device.getTargetAddress();
+		Byte lastSequenceNumber = mSequenceNumbers.get(targetAddress);
+		byte sequenceNumber = lastSequenceNumber == null ? 0 : (byte) (lastSequenceNumber + 1);
+		mSequenceNumbers.put(targetAddress, sequenceNumber);
+
+		request.setSourceId(mSourceId);
+		request.setSequenceNumber(sequenceNumber);
+		request.setTargetAddress(targetAddress);
+		mRequests.add(new BurstRequest(request, targetAddress, device.getInetAddress(), device.getPort()));
+		return request;
+	}
+
+	/**
+	 * Get the number of requests in this burst.
+	 *
+	 * @return The number of requests.
+	 */
+	public int size() {
+		return mRequests.size();
+	}
+
+	/**
+	 * Send all requests and collect the responses. Requests without response are resent according to the retry policy.
+	 *
+	 * @param retryPolicy The retry policy. Only attempts, timeout and callbacks are considered.
+	 * @return A map from the requests to their responses. Requests without response are not contained.
+	 * @throws SocketException Exception while connecting.
+	 */
+	public Map<RequestMessage, ResponseMessage> sendWithResponses(final RetryPolicy retryPolicy) throws SocketException {
+		Map<RequestMessage, ResponseMessage> responses = new IdentityHashMap<>();
+		List<BurstRequest> pendingRequests = new ArrayList<>(mRequests);
+		if (pendingRequests.isEmpty()) {
+			return responses;
+		}
+
+		DatagramSocket socket = new DatagramSocket();
+		try {
+			socket.setBroadcast(true);
+			socket.setReuseAddress(true);
+			int attempt = 0;
+			while (!pendingRequests.isEmpty() && attempt < retryPolicy.getAttempts()) {
+				for (BurstRequest burstRequest : pendingRequests) {
+					send(socket, burstRequest);
+				}
+				long endTime = System.currentTimeMillis() + retryPolicy.getTimeout(attempt);
+				long remainingTime = endTime - System.currentTimeMillis();
+				while (!pendingRequests.isEmpty() && remainingTime > 0) {
+					DatagramPacket responsePacket = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+					try {
+						socket.setSoTimeout((int) remainingTime);
+						socket.receive(responsePacket);
+						ResponseMessage responseMessage = ResponseMessage.createResponseMessage(responsePacket);
+						if (responseMessage != null) {
+							LifxLanConnection.learnAddress(responseMessage, responsePacket);
+						}
+						BurstRequest matchingRequest = responseMessage == null ? null : removeMatchingRequest(pendingRequests, responseMessage);
+						if (matchingRequest == null) {
+							if (responseMessage != null) {
+								Logger.traceResponse(responseMessage, true);
+							}
+						}
+						else {
+							Logger.traceResponse(responseMessage, false);
+							responses.put(matchingRequest.mRequest, responseMessage);
+							retryPolicy.onResponse(responseMessage);
+						}
+					}
+					catch (SocketTimeoutException e) {
+						retryPolicy.onException(attempt, e);
+					}
+					catch (IOException e) {
+						Logger.error(e);
+					}
+					remainingTime = endTime - System.currentTimeMillis();
+				}
+				attempt++;
+			}
+		}
+		finally {
+			socket.close();
+		}
+		return responses;
+	}
+
+	/**
+	 * Send all requests without waiting for responses.
+	 *
+	 * @throws SocketException Exception while connecting.
+	 */
+	public void sendWithoutResponse() throws SocketException {
+		DatagramSocket socket = new DatagramSocket();
+		try {
+			socket.setBroadcast(true);
+			socket.setReuseAddress(true);
+			for (BurstRequest burstRequest : mRequests) {
+				send(socket, burstRequest);
+			}
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Send a single request of the burst.
+	 *
+	 * @param socket       The socket.
+	 * @param burstRequest The request.
+	 */
+	private static void send(final DatagramSocket socket, final BurstRequest burstRequest) {
+		send(socket, burstRequest.mRequest, burstRequest.mTargetAddress, burstRequest.mInetAddress, burstRequest.mPort);
+	}
+
+	/**
+	 * Send a prepared request via a socket, using the cached address of the target if available.
+	 *
+	 * @param socket          The socket.
+	 * @param request         The request.
+	 * @param targetAddress   The target address.
+	 * @param fallbackAddress The internet address used if there is no cached address. Null for broadcast.
+	 * @param fallbackPort    The port used if there is no cached address.
+	 */
+	static void send(final DatagramSocket socket, final RequestMessage request, final String targetAddress,
+			final InetAddress fallbackAddress, final int fallbackPort) {
+		byte[] message = request.getPackedMessage();
+		Logger.traceRequest(request);
+		InetAddress inetAddress = fallbackAddress;
+		int port = fallbackPort;
+		CachedAddress cachedAddress = DeviceAddressCache.getInstance().get(targetAddress);
+		if (cachedAddress != null) {
+			inetAddress = cachedAddress.getInetAddress();
+			port = cachedAddress.getPort();
+		}
+		if (inetAddress == null) {
+			for (InetAddress address : LifxLanConnection.getUdpBroadcastAddresses()) {
+				LifxLanConnection.sendPacket(socket, new DatagramPacket(message, message.length, address, port));
+			}
+		}
+		else {
+			LifxLanConnection.sendPacket(socket, new DatagramPacket(message, message.length, inetAddress, port));
+		}
+	}
+
+	/**
+	 * Find and remove the pending request matching a response.
+	 *
+	 * @param pendingRequests The pending requests.
+	 * @param responseMessage The response.
+	 * @return The matching request, if existing.
+	 */
+	private static BurstRequest removeMatchingRequest(final List<BurstRequest> pendingRequests, final ResponseMessage responseMessage) {
+		Iterator<BurstRequest> iterator = pendingRequests.iterator();
+		while (iterator.hasNext()) {
+			BurstRequest burstRequest = iterator.next();
+			if (burstRequest.mRequest.matches(responseMessage)) {
+				iterator.remove();
+				return burstRequest;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A request of the burst together with its destination.
+	 */
+	private static final class BurstRequest {
+		/**
+		 * The request.
+		 */
+		private final RequestMessage mRequest;
+		/**
+		 * The target address.
+		 */
+		private final String mTargetAddress;
+		/**
+		 * The internet address. Null for broadcast.
+		 */
+		private final InetAddress mInetAddress;
+		/**
+		 * The port.
+		 */
+		private final int mPort;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param request       The request.
+		 * @param targetAddress The target address.
+		 * @param inetAddress   The internet address.
+		 * @param port          The port.
+		 */
+		private BurstRequest(final RequestMessage request, final String targetAddress, final InetAddress inetAddress, final int port) {
+			mRequest = request;
+			mTargetAddress = targetAddress;
+			mInetAddress = inetAddress;
+			mPort = port;
+		}
+	}
+}
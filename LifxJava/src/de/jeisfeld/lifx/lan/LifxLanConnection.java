@@ -8,7 +8,9 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import de.jeisfeld.lifx.lan.DeviceAddressCache.CachedAddress;
 import de.jeisfeld.lifx.lan.message.GetService;
 import de.jeisfeld.lifx.lan.message.RequestMessage;
 import de.jeisfeld.lifx.lan.message.ResponseMessage;
@@ -102,6 +104,15 @@ public class LifxLanConnection {
 		mFilter = null;
 	}
 
+	/**
+	 * Get the UDP broadcast addresses.
+	 *
+	 * @return The UDP broadcast addresses.
+	 */
+	protected static InetAddress[] getUdpBroadcastAddresses() {
+		return LifxLanConnection.UDP_BROADCAST_ADDRESSES;
+	}
+
 	/**
 	 * Determine a valid sequence number.
 	 *
@@ -140,57 +151,41 @@ public class LifxLanConnection {
 				DatagramSocket socket = new DatagramSocket();
 				socket.setBroadcast(true);
 				socket.setReuseAddress(true);
-				socket.setSoTimeout(retryPolicy.getTimeout(attempt));
-				boolean timedOut = false;
+				long remainingTime = retryPolicy.getTimeout(attempt);
 
-				while (numDevicesSeen < retryPolicy.getExpectedResponses() && !timedOut) {
+				while (numDevicesSeen < retryPolicy.getExpectedResponses() && remainingTime > 0) {
 					if (!isSent) {
-						if (mInetAddress == null) {
-							for (InetAddress address : LifxLanConnection.UDP_BROADCAST_ADDRESSES) {
-								DatagramPacket requestPacket = new DatagramPacket(message, message.length, address, mPort);
-								try {
-									socket.send(requestPacket);
-								}
-								catch (IOException e) {
-									Logger.error(e);
-								}
-							}
-						}
-						else {
-							DatagramPacket requestPacket = new DatagramPacket(message, message.length, mInetAddress, mPort);
-							try {
-								socket.send(requestPacket);
-							}
-							catch (IOException e) {
-								Logger.error(e);
-							}
-						}
+						sendMessage(socket, message, attempt, retryPolicy.getAttempts());
 						isSent = true;
 					}
 					DatagramPacket responsePacket = new DatagramPacket(new byte[LifxLanConnection.BUFFER_SIZE], LifxLanConnection.BUFFER_SIZE);
 					try {
+						// Each receive waits only for the remaining time, so that unrelated packets do not extend the attempt.
+						socket.setSoTimeout((int) remainingTime);
 						socket.receive(responsePacket);
 						ResponseMessage responseMessage = ResponseMessage.createResponseMessage(responsePacket);
-						boolean isMatch = request.matches(responseMessage);
-						if (mFilter != null && request instanceof GetService) {
-							Device device = ((StateService) responseMessage).getDevice().getDeviceProduct();
-							isMatch = isMatch && mFilter.matches(device);
-						}
+						if (responseMessage != null) {
+							learnAddress(responseMessage, responsePacket);
+							boolean isMatch = request.matches(responseMessage);
+							if (mFilter != null && request instanceof GetService) {
+								Device device = ((StateService) responseMessage).getDevice().getDeviceProduct();
+								isMatch = isMatch && mFilter.matches(device);
+							}
 
-						if (isMatch) {
-							Logger.traceResponse(responseMessage, false);
+							if (isMatch) {
+								Logger.traceResponse(responseMessage, false);
 
-							if (!targetAddresses.contains(responseMessage.getTargetAddress())) {
-								targetAddresses.add(responseMessage.getTargetAddress());
-								numDevicesSeen++;
-								responses.add(responseMessage);
-								retryPolicy.onResponse(responseMessage);
+								if (!targetAddresses.contains(responseMessage.getTargetAddress())) {
+									targetAddresses.add(responseMessage.getTargetAddress());
+									numDevicesSeen++;
+									responses.add(responseMessage);
+									retryPolicy.onResponse(responseMessage);
+								}
+							}
+							else {
+								Logger.traceResponse(responseMessage, true);
 							}
 						}
-						else {
-							Logger.traceResponse(responseMessage, true);
-						}
-
 					}
 					catch (SocketTimeoutException e) {
 						retryPolicy.onException(attempt, e);
@@ -199,7 +194,7 @@ public class LifxLanConnection {
 						Logger.error(e);
 					}
 
-					timedOut = System.currentTimeMillis() - startTime > retryPolicy.getTimeout(attempt);
+					remainingTime = startTime + retryPolicy.getTimeout(attempt) - System.currentTimeMillis();
 				}
 				socket.close();
 			}
@@ -216,6 +211,64 @@ public class LifxLanConnection {
 		return responses;
 	}
 
+	/**
+	 * Send the message of one attempt. Messages to a specific device are sent via unicast to the cached or given address, and only
+	 * the last retry after timeouts falls back to broadcast.
+	 *
+	 * @param socket   The socket.
+	 * @param message  The message.
+	 * @param attempt  The attempt number (starting with 0).
+	 * @param attempts The total number of attempts.
+	 */
+	private void sendMessage(final DatagramSocket socket, final byte[] message, final int attempt, final int attempts) {
+		InetAddress inetAddress = null;
+		int port = mPort;
+		if (!RequestMessage.BROADCAST_MAC.equals(mTargetAddress) && (attempt == 0 || attempt < attempts - 1)) {
+			CachedAddress cachedAddress = DeviceAddressCache.getInstance().get(mTargetAddress);
+			if (cachedAddress != null) {
+				inetAddress = cachedAddress.getInetAddress();
+				port = cachedAddress.getPort();
+			}
+			else {
+				inetAddress = mInetAddress;
+			}
+		}
+		if (inetAddress == null) {
+			for (InetAddress address : LifxLanConnection.UDP_BROADCAST_ADDRESSES) {
+				sendPacket(socket, new DatagramPacket(message, message.length, address, mPort));
+			}
+		}
+		else {
+			sendPacket(socket, new DatagramPacket(message, message.length, inetAddress, port));
+		}
+	}
+
+	/**
+	 * Send a packet, logging failures.
+	 *
+	 * @param socket The socket.
+	 * @param packet The packet.
+	 */
+	protected static void sendPacket(final DatagramSocket socket, final DatagramPacket packet) {
+		try {
+			socket.send(packet);
+		}
+		catch (IOException e) {
+			Logger.error(e);
+		}
+	}
+
+	/**
+	 * Store the address of the sender of a response in the address cache.
+	 *
+	 * @param responseMessage The response message.
+	 * @param responsePacket  The packet containing the response.
+	 */
+	protected static void learnAddress(final ResponseMessage responseMessage, final DatagramPacket responsePacket) {
+		int port = responseMessage instanceof StateService ? ((StateService) responseMessage).getPort() : responsePacket.getPort();
+		DeviceAddressCache.getInstance().update(responseMessage.getTargetAddress(), responsePacket.getAddress(), port);
+	}
+
 	/**
 	 * Send a request and receive single response.
 	 *
@@ -234,6 +287,26 @@ public class LifxLanConnection {
 		}
 	}
 
+	/**
+	 * Send a request and receive single response asynchronously. The request runs on the executor of LifxExecutor, i.e. on a virtual
+	 * thread if enabled.
+	 *
+	 * @param request The request to be sent.
+	 * @return A future for the response. It completes exceptionally with IOException if there is no response.
+	 */
+	public CompletableFuture<ResponseMessage> requestWithResponseAsync(final RequestMessage request) {
+		CompletableFuture<ResponseMessage> result = new CompletableFuture<>();
+		LifxExecutor.execute(() -> {
+			try {
+				result.complete(requestWithResponse(request));
+			}
+			catch (IOException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
 	/**
 	 * An interface filtering devices.
 	 */
@@ -0,0 +1,73 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.Closeable;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+
+/**
+ * Handler for a stream of UDP requests to one device which are sent without waiting for responses, e.g. the frames of a live
+ * preview. All requests are sent via one socket, which is opened on the first request and kept until the connection is closed.
+ * After closing, further requests are ignored, so that requests still queued at the end of the stream do not open a new socket.
+ */
+public class LifxLanStreamConnection implements Closeable {
+	/**
+	 * The device.
+	 */
+	private final Device mDevice;
+	/**
+	 * The socket. Null if not yet opened or already closed.
+	 */
+	private DatagramSocket mSocket = null;
+	/**
+	 * The last used sequence number.
+	 */
+	private byte mSequenceNumber = 0;
+	/**
+	 * Flag indicating if the connection is closed.
+	 */
+	private boolean mIsClosed = false;
+
+	/**
+	 * Create a stream connection.
+	 *
+	 * @param device The device to which the requests are sent.
+	 */
+	public LifxLanStreamConnection(final Device device) {
+		mDevice = device;
+	}
+
+	/**
+	 * Send a request without waiting for response.
+	 *
+	 * @param request The request.
+	 * @throws SocketException Exception while connecting.
+	 */
+	public synchronized void send(final RequestMessage request) throws SocketException {
+		if (mIsClosed) {
+			return;
+		}
+		if (mSocket == null) {
+			DatagramSocket socket = new DatagramSocket();
+			socket.setBroadcast(true);
+			socket.setReuseAddress(true);
+			mSocket = socket;
+		}
+		String targetAddress = mDevice.getTargetAddress() == null ? RequestMessage.BROADCAST_MAC : mDevice.getTargetAddress();
+		mSequenceNumber++;
+		request.setSourceId(mDevice.getSourceId());
+		request.setSequenceNumber(mSequenceNumber);
+		request.setTargetAddress(targetAddress);
+		LifxLanBurstConnection.send(mSocket, request, targetAddress, mDevice.getInetAddress(), mDevice.getPort());
+	}
+
+	@Override
+	public synchronized void close() {
+		mIsClosed = true;
+		if (mSocket != null) {
+			mSocket.close();
+			mSocket = null;
+		}
+	}
+}
@@ -3,8 +3,13 @@ package de.jeisfeld.lifx.lan;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 
 import de.jeisfeld.lifx.lan.message.LightGet;
 import de.jeisfeld.lifx.lan.message.LightGetInfrared;
@@ -17,6 +22,7 @@ import de.jeisfeld.lifx.lan.message.LightSetWaveformOptional;
 import de.jeisfeld.lifx.lan.message.LightState;
 import de.jeisfeld.lifx.lan.message.LightStateInfrared;
 import de.jeisfeld.lifx.lan.message.LightStatePower;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
 import de.jeisfeld.lifx.lan.type.Color;
 import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.type.Product;
@@ -41,10 +47,22 @@ public class Light extends Device implements Serializable {
 	 */
 	protected static final int[] WAITING_TIMES_AFTER_ERROR =
 			new int[] {1000, 2000, 5000, 10000, 15000, 30000, 60000, 120000, 180000, 300000, 600000, 900000, 1800000};
+	/**
+	 * The minimum interval between animation frames of a bulb in millis (20 frames per second).
+	 */
+	private static final int MIN_FRAME_INTERVAL = 50;
+	/**
+	 * The maximum number of animation steps merged into one frame.
+	 */
+	private static final int MAX_MERGED_FRAMES = 1000;
 	/**
 	 * A holder for the animation thread.
 	 */
 	private AnimationThreadHolder mAnimationThreadHolder = new AnimationThreadHolder();
+	/**
+	 * The cache of the color, fed by responses. Created on first use, as it is not serialized.
+	 */
+	private transient ColorStateCache mColorStateCache = null;
 
 	/**
 	 * Constructor.
@@ -109,6 +127,7 @@ public class Light extends Device implements Serializable {
 		LightState lightState;
 		try {
 			lightState = (LightState) getConnection().requestWithResponse(new LightGet());
+			getColorStateCache().update(lightState.getColor(), System.currentTimeMillis());
 			return lightState;
 		}
 		catch (IOException e) {
@@ -117,6 +136,35 @@ public class Light extends Device implements Serializable {
 		}
 	}
 
+	/**
+	 * Get the light state asynchronously, without blocking the calling thread.
+	 *
+	 * @return A future for the light state. It completes with null in case of connection issues.
+	 */
+	final CompletableFuture<LightState> getStateAsync() {
+		return getConnection().requestWithResponseAsync(new LightGet()).handle((response, e) -> {
+			if (response == null) {
+				Logger.connectionError(this, "State", e instanceof Exception ? (Exception) e : new IOException(e));
+				return null;
+			}
+			LightState lightState = (LightState) response;
+			getColorStateCache().update(lightState.getColor(), System.currentTimeMillis());
+			return lightState;
+		});
+	}
+
+	/**
+	 * Get the cache of the color, creating it if required.
+	 *
+	 * @return The cache of the color.
+	 */
+	private synchronized ColorStateCache getColorStateCache() {
+		if (mColorStateCache == null) {
+			mColorStateCache = new ColorStateCache(this);
+		}
+		return mColorStateCache;
+	}
+
 	/**
 	 * Get the infrared brightness.
 	 *
@@ -174,6 +222,7 @@ public class Light extends Device implements Serializable {
 	 */
 	public void setColor(final Color color, final int duration, final boolean wait) throws IOException {
 		getConnection().requestWithResponse(new LightSetColor(color, duration));
+		getColorStateCache().update(color, System.currentTimeMillis() + duration);
 		if (wait) {
 			try {
 				Thread.sleep(duration);
@@ -184,6 +233,26 @@ public class Light extends Device implements Serializable {
 		}
 	}
 
+	/**
+	 * Create the requests for setting the colors of a scene frame on this light, without sending them.
+	 *
+	 * @param definition The scene definition.
+	 * @param n          The frame number.
+	 * @param lightIndex The index of this light in the scene.
+	 * @param duration   The duration of the color change.
+	 * @return The requests. Empty if the light is not changed in this frame.
+	 */
+	// OVERRIDABLE
+	List<RequestMessage> createSceneRequests(final SceneAnimation.Definition definition, final int n, final int lightIndex,
+			final int duration) {
+		List<RequestMessage> requests = new ArrayList<>();
+		Color color = definition.getColor(n, lightIndex);
+		if (color != null) {
+			requests.add(new LightSetColor(color, duration));
+		}
+		return requests;
+	}
+
 	/**
 	 * Set the color.
 	 *
@@ -194,6 +263,22 @@ public class Light extends Device implements Serializable {
 		setColor(color, 0, false);
 	}
 
+	/**
+	 * Set the color without waiting for acknowledgement. This is intended for streaming frequent changes, e.g. while dragging a color
+	 * picker, where a lost packet is superseded by the next one. The final color should be set via setColor.
+	 *
+	 * @param color the target color.
+	 * @param duration the duration of color change in millis.
+	 * @param connection the stream connection to this light, reused for all changes of the stream.
+	 * @throws IOException Connection issues
+	 */
+	public void setColorWithoutResponse(final Color color, final int duration, final LifxLanStreamConnection connection)
+			throws IOException {
+		connection.send(new LightSetColor(color, duration));
+		// Delivery is not confirmed.
+		getColorStateCache().invalidate();
+	}
+
 	/**
 	 * Set a waveform.
 	 *
@@ -214,6 +299,7 @@ public class Light extends Device implements Serializable {
 				.requestWithResponse(
 						new LightSetWaveform(isTransient, color, period, floatCycles,
 								(short) (TypeUtil.toShort(skewRatio) + Short.MIN_VALUE), waveform));
+		getColorStateCache().invalidate();
 		if (wait) {
 			try {
 				Thread.sleep((long) (period * floatCycles));
@@ -281,6 +367,7 @@ public class Light extends Device implements Serializable {
 				new LightSetWaveformOptional(isTransient, new Color(hueValue, saturationValue, brightnessValue, colorTemperatureValue),
 						period, floatCycles, (short) (TypeUtil.toShort(skewRatio) + Short.MIN_VALUE), waveform,
 						hue != null, saturation != null, brightness != null, colorTemperature != null));
+		getColorStateCache().invalidate();
 		if (wait) {
 			try {
 				Thread.sleep((long) (period * floatCycles));
@@ -312,6 +399,13 @@ public class Light extends Device implements Serializable {
 		getConnection().requestWithResponse(new LightSetInfrared(brightness));
 	}
 
+	/**
+	 * Mark the cached color as unknown after a change whose target color is not tracked.
+	 */
+	final void invalidateColorState() {
+		getColorStateCache().invalidate();
+	}
+
 	/**
 	 * Wait until the color fulfils a certain condition.
 	 *
@@ -319,19 +413,7 @@ public class Light extends Device implements Serializable {
 	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
 	 */
 	public void waitForColor(final ColorFilter filter, final long timeout) {
-		long startTime = System.currentTimeMillis();
-		Color color = getColor();
-		boolean isMatching = filter.matches(color);
-		while (!isMatching && (timeout < 0 || System.currentTimeMillis() - startTime < timeout)) {
-			try {
-				Thread.sleep(200); // MAGIC_NUMBER
-			}
-			catch (InterruptedException e) {
-				// ignore
-			}
-			color = getColor();
-			isMatching = filter.matches(color);
-		}
+		waitForColorAsync(filter, timeout).join();
 	}
 
 	/**
@@ -341,11 +423,34 @@ public class Light extends Device implements Serializable {
 	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
 	 */
 	public void waitForColor(final Color color, final long timeout) {
+		waitForColorAsync(color, timeout).join();
+	}
+
+	/**
+	 * Get a future for the color fulfilling a certain condition. The condition is evaluated against the cached color, which is fed by
+	 * state responses and acknowledged color changes. The light is polled only if there is no recent information.
+	 *
+	 * @param filter The filtering condition.
+	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
+	 * @return A future completed with true if the color matches, or with false on timeout.
+	 */
+	public CompletableFuture<Boolean> waitForColorAsync(final ColorFilter filter, final long timeout) {
+		return getColorStateCache().waitForColor(filter, timeout);
+	}
+
+	/**
+	 * Get a future for the color matching a certain color.
+	 *
+	 * @param color The matching color.
+	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
+	 * @return A future completed with true if the color matches, or with false on timeout.
+	 */
+	public CompletableFuture<Boolean> waitForColorAsync(final Color color, final long timeout) {
 		if (getProduct().hasColor()) {
-			waitForColor(color::isSimilar, timeout);
+			return waitForColorAsync(color::isSimilar, timeout);
 		}
 		else {
-			waitForColor(color::isSimilarBlackWhite, timeout);
+			return waitForColorAsync(color::isSimilarBlackWhite, timeout);
 		}
 	}
 
@@ -390,11 +495,52 @@ public class Light extends Device implements Serializable {
 		}
 	}
 
+	/**
+	 * Get a future for the end of the current animation.
+	 *
+	 * @return A future completed with true if the animation was interrupted, or false if it ended naturally. Already completed if there
+	 *         is no animation.
+	 */
+	public CompletableFuture<Boolean> getAnimationEnd() {
+		synchronized (this) {
+			if (mAnimationThreadHolder.mAnimationThread != null) {
+				return mAnimationThreadHolder.mAnimationThread.getEndFuture();
+			}
+		}
+		return CompletableFuture.completedFuture(false);
+	}
+
+	/**
+	 * Get the animation queue of this light, which chains animations and hands over between them.
+	 *
+	 * @return The animation queue.
+	 */
+	public AnimationQueue getAnimationQueue() {
+		synchronized (this) {
+			if (mAnimationThreadHolder.mAnimationQueue == null) {
+				mAnimationThreadHolder.mAnimationQueue = new AnimationQueue(this);
+			}
+			return mAnimationThreadHolder.mAnimationQueue;
+		}
+	}
+
+	/**
+	 * Get the running animation.
+	 *
+	 * @return The running animation. Null if there is no running animation.
+	 */
+	BaseAnimationThread getRunningAnimation() {
+		synchronized (this) {
+			BaseAnimationThread animationThread = mAnimationThreadHolder.mAnimationThread;
+			return animationThread != null && animationThread.isAlive() ? animationThread : null;
+		}
+	}
+
 	/**
 	 * Wait for the end of the current cycle. In contrast to endCycle, this does not interrupt.
 	 */
 	public void waitForAnimationEnd() {
-		Thread currentThread = null;
+		BaseAnimationThread currentThread = null;
 		synchronized (this) {
 			currentThread = mAnimationThreadHolder.mAnimationThread;
 		}
@@ -425,7 +571,7 @@ public class Light extends Device implements Serializable {
 	}
 
 	/**
-	 * A thread animating the colors.
+	 * An animation of the colors, driven frame by frame by the AnimationScheduler.
 	 */
 	public static class AnimationThread extends BaseAnimationThread {
 		/**
@@ -453,6 +599,66 @@ public class Light extends Device implements Serializable {
 		 */
 		@SuppressWarnings("unused")
 		private DeviceRegistryInterface mDeviceRegistry;
+		/**
+		 * The clock for the timing of the steps.
+		 */
+		private final AnimationClock mClock = new AnimationClock();
+		/**
+		 * The number of the current step.
+		 */
+		private int mCount = 0;
+		/**
+		 * The start time of the current step on the timeline of the clock. Null if the step did not yet start.
+		 */
+		private Long mStepStartTime = null;
+		/**
+		 * The planned start time of the next step, i.e. the planned end time of the current step.
+		 */
+		private Long mNextStepStartTime = null;
+		/**
+		 * The frame pacer.
+		 */
+		private FramePacer mFramePacer = null;
+		/**
+		 * The renderer of the steps. Null if the steps are rendered synchronously.
+		 */
+		private LookAheadRenderer<?> mRenderer = null;
+		/**
+		 * The renderer of the colors. Null if the colors are rendered synchronously.
+		 */
+		private LookAheadRenderer<Color> mColorRenderer = null;
+		/**
+		 * The planner offloading steps to the device. Null if steps are not offloaded.
+		 */
+		private WaveformPlanner mPlanner = null;
+		/**
+		 * Flag indicating if the light was off at the start of the animation.
+		 */
+		private boolean mIsInitiallyOff = false;
+		/**
+		 * Flag indicating if the last sent frame switched the light off.
+		 */
+		private boolean mIsLastFrameOff = false;
+		/**
+		 * The power state handed over by the previous animation. Null if there was no handover.
+		 */
+		private Boolean mHandoverIsOff = null;
+		/**
+		 * The duration of the crossfade from the previous animation to the first step. Negative if there was no handover.
+		 */
+		private int mCrossfadeDuration = -1;
+		/**
+		 * The number of failed attempts of the current step.
+		 */
+		private int mErrorCount = 0;
+		/**
+		 * Flag indicating if the last step was a power change.
+		 */
+		private boolean mIsPowerChange = false;
+		/**
+		 * The exception which ended the animation, if applicable.
+		 */
+		private IOException mException = null;
 
 		/**
 		 * Create an animation thread.
@@ -509,101 +715,328 @@ public class Light extends Device implements Serializable {
 			return this;
 		}
 
-		// OVERRIDABLE
 		@Override
-		public void run() {
-			int count = 0;
-			try {
-				storeDeviceRegistry();
-				if (mDefinition.waitForPreviousAnimationEnd()) {
-					waitForPreviousAnimationEnd();
+		protected final boolean waitForPreviousAnimation() {
+			return mDefinition.waitForPreviousAnimationEnd();
+		}
+
+		@Override
+		protected final void onStart() {
+			mFramePacer = new FramePacer(getMinFrameInterval());
+			int lookAheadFrames = mDefinition.getLookAheadFrames();
+			if (lookAheadFrames > 0) {
+				mRenderer = createRenderer(lookAheadFrames);
+			}
+			else if (mDefinition.isOffloadable() && canOffload()) {
+				mPlanner = new WaveformPlanner(mDefinition, mClock);
+			}
+			storeDeviceRegistry();
+			if (mHandoverIsOff == null) {
+				Power power = getLight().getPower();
+				mIsInitiallyOff = power != null && power.isOff();
+			}
+			else {
+				mIsInitiallyOff = mHandoverIsOff;
+			}
+		}
+
+		@Override
+		protected final void takeOver(final BaseAnimationThread previous, final int crossfadeDuration) {
+			if (previous instanceof AnimationThread) {
+				mHandoverIsOff = ((AnimationThread) previous).mIsLastFrameOff;
+			}
+			mCrossfadeDuration = crossfadeDuration;
+		}
+
+		@Override
+		protected final long animateFrame() {
+			if (!hasStep(mCount)) {
+				return -1;
+			}
+			long now = mClock.now();
+			if (mStepStartTime == null) {
+				Date givenStartTime = mDefinition.getStartTime(mCount);
+				if (givenStartTime != null) {
+					mStepStartTime = mClock.toClockTime(givenStartTime);
 				}
-				boolean isInterrupted = false;
-				boolean isPowerChange = false;
-				try {
-					while (!isInterrupted() && mDefinition.getColor(count) != null) {
-						Date givenStartTime = mDefinition.getStartTime(count);
-						final long startTime = givenStartTime == null ? System.currentTimeMillis() : givenStartTime.getTime();
-						if (givenStartTime != null) {
-							long waitTime = givenStartTime.getTime() - System.currentTimeMillis();
-							if (waitTime > 0) {
-								Thread.sleep(waitTime);
-							}
-						}
+				else {
+					mStepStartTime = mNextStepStartTime == null ? now : mNextStepStartTime;
+				}
+				if (mStepStartTime > now) {
+					return mStepStartTime - now;
+				}
+			}
+			if (mFramePacer.getSentFrames() > 0 && mFramePacer.getEarliestNextFrameTime() > now) {
+				return mFramePacer.getEarliestNextFrameTime() - now;
+			}
 
-						int errorCount = 0;
-						boolean success = false;
-						int duration = Math.max(mDefinition.getDuration(count), 0);
-						Power power;
-						boolean wasOff = count == 0
-								? ((power = getLight().getPower()) != null && power.isOff()) // SUPPRESS_CHECKSTYLE
-								: mDefinition.getColor(count - 1).isOff();
-						while (!success) {
-							try { // SUPPRESS_CHECKSTYLE
-								Color color = mDefinition.getColor(count).withRelativeBrightness(mRelativeBrightness);
-								if (wasOff) {
-									getLight().setColor(color, 0, false);
-									getLight().setPower(true, duration, false);
-									isPowerChange = true;
-								}
-								else if (color.isOff()) {
-									getLight().setPower(false, duration, false);
-									isPowerChange = true;
-								}
-								else {
-									getLight().setColor(color, duration, false);
-									isPowerChange = false;
-								}
-								success = true;
-							}
-							catch (IOException e) {
-								errorCount++;
-								if (errorCount >= WAITING_TIMES_AFTER_ERROR.length) {
-									throw e;
-								}
-								Thread.sleep(WAITING_TIMES_AFTER_ERROR[errorCount]);
-							}
-						}
-						Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-						count++;
-					}
+			// If behind the timeline, merge the steps which are already over into the next frame.
+			int duration = getFrameDuration(mCount);
+			long stepEndTime = mStepStartTime + duration;
+			int mergeCount = 0;
+			// Determine the previous state before merging, as the look-ahead renderer may release steps while merging.
+			boolean wasOff = mFramePacer.getSentFrames() == 0 ? mIsInitiallyOff : isOff(mCount - 1);
+			while (stepEndTime <= now && mergeCount < MAX_MERGED_FRAMES && canMerge(mCount)) {
+				mFramePacer.onFrameDropped();
+				// Merged steps are never off.
+				wasOff = false;
+				mCount++;
+				mergeCount++;
+				duration = getFrameDuration(mCount);
+				stepEndTime += duration;
+			}
+
+			WaveformPlanner.Plan plan = null;
+			if (mPlanner != null && mergeCount == 0 && !wasOff) {
+				plan = mPlanner.plan(mCount, mStepStartTime);
+				if (plan != null) {
+					stepEndTime = mStepStartTime + plan.getDuration();
 				}
-				catch (InterruptedException e) {
-					isInterrupted = true;
+			}
+
+			long sendTime = mClock.now();
+			try {
+				if (plan == null) {
+					mIsPowerChange = applyStep(mCount, (int) Math.max(0, stepEndTime - sendTime), wasOff);
+				}
+				else {
+					applyPlan(plan, (int) Math.max(0, stepEndTime - sendTime));
+					mIsPowerChange = false;
+				}
+			}
+			catch (IOException e) {
+				mFramePacer.onFrameFailed();
+				mErrorCount++;
+				if (mErrorCount >= WAITING_TIMES_AFTER_ERROR.length) {
+					mException = e;
+					return -1;
 				}
-				if (mEndColor == null) {
-					if (isInterrupted) {
-						if (isPowerChange) {
-							try {
-								Color color = Objects.requireNonNull(getLight().getColor())
-										.withRelativeBrightness(TypeUtil.toDouble(getLight().getPower().getLevel()));
-								getLight().setColor(color, 200, false); // MAGIC_NUMBER
-								getLight().setPower(true, 200, false); // MAGIC_NUMBER
-							}
-							catch (NullPointerException e) {
-								// ignore
-							}
+				return WAITING_TIMES_AFTER_ERROR[mErrorCount];
+			}
+			long endTime = mClock.now();
+			mFramePacer.onFrameSent(sendTime, endTime);
+			mIsLastFrameOff = plan == null && isOff(mCount);
+			mCount += plan == null ? 1 : plan.getFrameCount();
+			mStepStartTime = null;
+			mNextStepStartTime = stepEndTime;
+			mErrorCount = 0;
+			return Math.max(0, stepEndTime - endTime);
+		}
+
+		/**
+		 * Get the duration of the transition to a step. After a handover, the transition to the first step is the crossfade.
+		 *
+		 * @param n counter starting with 0
+		 * @return The duration of the transition.
+		 */
+		private int getFrameDuration(final int n) {
+			return n == 0 && mCrossfadeDuration >= 0 ? mCrossfadeDuration : Math.max(getStepDuration(n), 0);
+		}
+
+		/**
+		 * Check if a step may be merged into the following step when the animation is behind its timeline.
+		 *
+		 * @param n counter starting with 0
+		 * @return true if the step may be merged.
+		 */
+		private boolean canMerge(final int n) {
+			return mFramePacer.getSentFrames() > 0 && hasStep(n + 1) && mDefinition.getStartTime(n + 1) == null
+					&& !isOff(n) && !isOff(n + 1);
+		}
+
+		/**
+		 * Check if this kind of animation may offload steps to the device as waveform or long transition.
+		 *
+		 * @return true if steps may be offloaded.
+		 */
+		// OVERRIDABLE
+		protected boolean canOffload() {
+			return true;
+		}
+
+		/**
+		 * Send the command for a plan of steps offloaded to the device.
+		 *
+		 * @param plan The plan.
+		 * @param duration The remaining duration of the plan.
+		 * @throws IOException Connection issues
+		 */
+		private void applyPlan(final WaveformPlanner.Plan plan, final int duration) throws IOException {
+			Color color = plan.getTargetColor().withRelativeBrightness(mRelativeBrightness);
+			if (plan.isWaveform()) {
+				// Transient triangle from the current color to the target color and back, once per pair of steps.
+				getLight().setWaveform(true, color, plan.getDuration() / plan.getCycles(), plan.getCycles(), Waveform.TRIANGLE,
+						0.5, false); // MAGIC_NUMBER
+			}
+			else {
+				getLight().setColor(color, duration, false);
+			}
+		}
+
+		/**
+		 * Create the renderer rendering the steps ahead, and keep a typed reference to it.
+		 *
+		 * @param lookAheadFrames The number of steps to be rendered ahead.
+		 * @return The renderer.
+		 */
+		// OVERRIDABLE
+		protected LookAheadRenderer<?> createRenderer(final int lookAheadFrames) {
+			mColorRenderer = new LookAheadRenderer<>(lookAheadFrames, mDefinition::getColor, mDefinition::getDuration);
+			return mColorRenderer;
+		}
+
+		/**
+		 * Get the duration of a step, either rendered ahead or from the definition.
+		 *
+		 * @param n counter starting with 0
+		 * @return The duration of the step.
+		 */
+		protected final int getStepDuration(final int n) {
+			return mRenderer == null ? mDefinition.getDuration(n) : mRenderer.getDuration(n);
+		}
+
+		/**
+		 * Get the color of a step, either rendered ahead or from the definition.
+		 *
+		 * @param n counter starting with 0
+		 * @return The color of the step. Null at the end of the animation.
+		 */
+		private Color getStepColor(final int n) {
+			return mColorRenderer == null ? mDefinition.getColor(n) : mColorRenderer.getColors(n);
+		}
+
+		/**
+		 * Get the minimum interval between frames for this kind of light.
+		 *
+		 * @return The minimum interval between frames in millis.
+		 */
+		// OVERRIDABLE
+		protected int getMinFrameInterval() {
+			return MIN_FRAME_INTERVAL;
+		}
+
+		/**
+		 * Get the frame pacer containing statistics of achieved frame rate, latency and loss.
+		 *
+		 * @return The frame pacer. Null if the animation has not yet started.
+		 */
+		public FramePacer getFramePacer() {
+			return mFramePacer;
+		}
+
+		/**
+		 * Check if the animation has a certain step.
+		 *
+		 * @param n counter starting with 0
+		 * @return true if the step exists.
+		 */
+		// OVERRIDABLE
+		protected boolean hasStep(final int n) {
+			return getStepColor(n) != null;
+		}
+
+		/**
+		 * Check if a certain step switches the light off.
+		 *
+		 * @param n counter starting with 0
+		 * @return true if the step switches the light off.
+		 */
+		// OVERRIDABLE
+		protected boolean isOff(final int n) {
+			return getStepColor(n).isOff();
+		}
+
+		/**
+		 * Send the commands for a step of the animation.
+		 *
+		 * @param n counter starting with 0
+		 * @param duration The duration of the step.
+		 * @param wasOff Flag indicating if the light was off before this step.
+		 * @return true if the step was a power change.
+		 * @throws IOException Connection issues
+		 */
+		// OVERRIDABLE
+		protected boolean applyStep(final int n, final int duration, final boolean wasOff) throws IOException {
+			Color color = getStepColor(n).withRelativeBrightness(mRelativeBrightness);
+			if (wasOff) {
+				getLight().setColor(color, 0, false);
+				getLight().setPower(true, duration, false);
+				return true;
+			}
+			else if (color.isOff()) {
+				getLight().setPower(false, duration, false);
+				return true;
+			}
+			else {
+				getLight().setColor(color, duration, false);
+				return false;
+			}
+		}
+
+		/**
+		 * Send the commands for ending the animation.
+		 *
+		 * @param isInterrupted true if the animation had no natural end but was interrupted.
+		 * @param isPowerChange true if the last step was a power change.
+		 * @return The transition time until the end state is reached.
+		 * @throws IOException Connection issues
+		 */
+		// OVERRIDABLE
+		protected int finishAnimation(final boolean isInterrupted, final boolean isPowerChange) throws IOException {
+			if (mEndColor == null) {
+				if (isInterrupted) {
+					if (isPowerChange) {
+						try {
+							Color color = Objects.requireNonNull(getLight().getColor())
+									.withRelativeBrightness(TypeUtil.toDouble(getLight().getPower().getLevel()));
+							getLight().setColor(color, 200, false); // MAGIC_NUMBER
+							getLight().setPower(true, 200, false); // MAGIC_NUMBER
 						}
-						else {
-							// stop the previous color transition by sending setWaveform command with no change.
-							getLight().setBrightness(null);
+						catch (NullPointerException e) {
+							// ignore
 						}
 					}
+					else {
+						// stop the previous color transition by sending setWaveform command with no change.
+						getLight().setBrightness(null);
+					}
 				}
-				else if (mEndColor.getBrightness() == 0) {
-					getLight().setPower(false, mEndTransitionTime, true);
+				return 0;
+			}
+			else if (mEndColor.getBrightness() == 0) {
+				getLight().setPower(false, mEndTransitionTime, false);
+			}
+			else {
+				getLight().setColor(mEndColor, mEndTransitionTime, false);
+			}
+			return mEndTransitionTime;
+		}
+
+		@Override
+		protected final long onEnd(final boolean isInterrupted) {
+			// On handover, the last frame remains, and the next animation continues from it.
+			if (mException == null && !isHandedOver()) {
+				try {
+					return finishAnimation(isInterrupted, mIsPowerChange);
 				}
-				else {
-					getLight().setColor(mEndColor, mEndTransitionTime, true);
+				catch (IOException e) {
+					mException = e;
 				}
+			}
+			return 0;
+		}
+
+		@Override
+		protected final void onCompleted(final boolean isInterrupted) {
+			if (mException == null) {
 				if (getAnimationCallback() != null) {
 					getAnimationCallback().onAnimationEnd(isInterrupted);
 				}
 			}
-			catch (IOException e) {
-				Logger.connectionError(getLight(), "Animation", e);
+			else {
+				Logger.connectionError(getLight(), "Animation", mException);
 				if (getAnimationCallback() != null) {
-					getAnimationCallback().onException(e);
+					getAnimationCallback().onException(mException);
 				}
 			}
 			cleanAnimationThread(this);
@@ -652,9 +1085,9 @@ public class Light extends Device implements Serializable {
 	}
 
 	/**
-	 * A base thread for animating the light.
+	 * A base class for animating the light. It does not own a thread, but is driven frame by frame by the AnimationScheduler.
 	 */
-	public static class BaseAnimationThread extends Thread {
+	public abstract static class BaseAnimationThread {
 		/**
 		 * The light.
 		 */
@@ -663,6 +1096,34 @@ public class Light extends Device implements Serializable {
 		 * The previous animation thread.
 		 */
 		private BaseAnimationThread mPreviousAnimationThread = null;
+		/**
+		 * The future of the next frame.
+		 */
+		private ScheduledFuture<?> mNextFrame = null;
+		/**
+		 * Flag indicating if the animation has been started.
+		 */
+		private boolean mIsStarted = false;
+		/**
+		 * Flag indicating if the animation has been interrupted.
+		 */
+		private volatile boolean mIsInterrupted = false;
+		/**
+		 * Flag indicating if a frame is currently running.
+		 */
+		private boolean mIsFrameRunning = false;
+		/**
+		 * Flag indicating if the animation is ending.
+		 */
+		private boolean mIsEnding = false;
+		/**
+		 * Flag indicating if the animation hands over to a following animation, so that the end state is not applied.
+		 */
+		private volatile boolean mIsHandedOver = false;
+		/**
+		 * Future completed on completion of the animation, with true if the animation was interrupted.
+		 */
+		private final CompletableFuture<Boolean> mEndFuture = new CompletableFuture<>();
 
 		/**
 		 * Constructor.
@@ -682,7 +1143,9 @@ public class Light extends Device implements Serializable {
 			return mLight;
 		}
 
-		@Override
+		/**
+		 * Start the animation.
+		 */
 		public final void start() {
 			synchronized (mLight) {
 				if (mLight.mAnimationThreadHolder.mAnimationThread != null) {
@@ -691,7 +1154,146 @@ public class Light extends Device implements Serializable {
 				}
 				mLight.mAnimationThreadHolder.mAnimationThread = this;
 			}
-			super.start();
+			synchronized (this) {
+				mIsStarted = true;
+			}
+			BaseAnimationThread previousAnimationThread = mPreviousAnimationThread;
+			if (previousAnimationThread != null && waitForPreviousAnimation()) {
+				previousAnimationThread.addCompletionListener(this::scheduleFirstFrame);
+			}
+			else {
+				scheduleFirstFrame();
+			}
+		}
+
+		/**
+		 * Schedule the first frame of the animation.
+		 */
+		private void scheduleFirstFrame() {
+			synchronized (this) {
+				mPreviousAnimationThread = null;
+				mNextFrame = AnimationScheduler.getInstance().schedule(() -> {
+					onStart();
+					runFrame();
+				}, 0);
+			}
+		}
+
+		/**
+		 * Run one frame of the animation and schedule the next one.
+		 */
+		private void runFrame() {
+			synchronized (this) {
+				if (mIsEnding || mIsFrameRunning) {
+					return;
+				}
+				mIsFrameRunning = true;
+			}
+			long delay;
+			try {
+				delay = mIsInterrupted ? -1 : animateFrame();
+			}
+			catch (RuntimeException e) {
+				Logger.error(e);
+				delay = -1;
+			}
+			boolean isEnding;
+			synchronized (this) {
+				mIsFrameRunning = false;
+				isEnding = delay < 0 || mIsInterrupted;
+				if (isEnding) {
+					mIsEnding = true;
+				}
+				else {
+					mNextFrame = AnimationScheduler.getInstance().schedule(this::runFrame, delay);
+				}
+			}
+			if (isEnding) {
+				final boolean isInterrupted = mIsInterrupted;
+				long completionDelay = onEnd(isInterrupted);
+				AnimationScheduler.getInstance().schedule(() -> complete(isInterrupted), completionDelay);
+			}
+		}
+
+		/**
+		 * Complete the animation.
+		 *
+		 * @param isInterrupted true if the animation had no natural end but was interrupted.
+		 */
+		private void complete(final boolean isInterrupted) {
+			try {
+				onCompleted(isInterrupted);
+			}
+			finally {
+				mEndFuture.complete(isInterrupted);
+			}
+		}
+
+		/**
+		 * Add an action to be done after completion of the animation. If already completed, the action is done immediately.
+		 *
+		 * @param listener The action.
+		 */
+		public void addCompletionListener(final Runnable listener) {
+			mEndFuture.thenRun(listener);
+		}
+
+		/**
+		 * Get a future for the end of the animation, e.g. for composing animation sequences.
+		 *
+		 * @return A future completed on completion of the animation, with true if the animation was interrupted.
+		 */
+		public CompletableFuture<Boolean> getEndFuture() {
+			return mEndFuture;
+		}
+
+		/**
+		 * Interrupt the animation. The animation ends with its next frame.
+		 */
+		public void interrupt() {
+			synchronized (this) {
+				mIsInterrupted = true;
+				if (!mIsFrameRunning && !mIsEnding && mNextFrame != null && mNextFrame.cancel(false)) {
+					mNextFrame = AnimationScheduler.getInstance().schedule(this::runFrame, 0);
+				}
+			}
+		}
+
+		/**
+		 * Check if the animation has been interrupted.
+		 *
+		 * @return true if interrupted.
+		 */
+		public boolean isInterrupted() {
+			return mIsInterrupted;
+		}
+
+		/**
+		 * Check if the animation is started and not yet completed.
+		 *
+		 * @return true if running.
+		 */
+		public synchronized boolean isAlive() {
+			return mIsStarted && !mEndFuture.isDone();
+		}
+
+		/**
+		 * Wait for completion of the animation.
+		 *
+		 * @throws InterruptedException if the waiting thread is interrupted.
+		 */
+		public void join() throws InterruptedException {
+			synchronized (this) {
+				if (!mIsStarted) {
+					return;
+				}
+			}
+			try {
+				mEndFuture.get();
+			}
+			catch (ExecutionException e) {
+				// not possible, as the future is never completed exceptionally
+			}
 		}
 
 		/**
@@ -712,18 +1314,79 @@ public class Light extends Device implements Serializable {
 		}
 
 		/**
-		 * Wait for the end of the previous animation thread.
+		 * Set the flag indicating if the animation hands over to a following animation.
+		 *
+		 * @param isHandedOver true if the animation hands over to a following animation.
+		 */
+		final void setHandedOver(final boolean isHandedOver) {
+			mIsHandedOver = isHandedOver;
+		}
+
+		/**
+		 * Check if the animation hands over to a following animation. In this case, the end state of the animation should not be
+		 * applied, as the following animation continues from the last frame.
+		 *
+		 * @return true if the animation hands over to a following animation.
 		 */
-		protected void waitForPreviousAnimationEnd() {
-			if (mPreviousAnimationThread != null) {
-				mPreviousAnimationThread.interrupt();
-				try {
-					mPreviousAnimationThread.join();
-				}
-				catch (InterruptedException e) {
-					// ignore
-				}
-			}
+		protected final boolean isHandedOver() {
+			return mIsHandedOver;
+		}
+
+		/**
+		 * Take over from a previous animation which handed over to this animation. This is called before start.
+		 *
+		 * @param previous          The previous animation.
+		 * @param crossfadeDuration The duration of the transition from the last frame of the previous animation to the first frame.
+		 */
+		// OVERRIDABLE
+		protected void takeOver(final BaseAnimationThread previous, final int crossfadeDuration) {
+			// do nothing
+		}
+
+		/**
+		 * Flag indicating if the first frame should wait for the completion of the previous animation.
+		 *
+		 * @return true if the animation should wait for the previous animation.
+		 */
+		// OVERRIDABLE
+		protected boolean waitForPreviousAnimation() {
+			return false;
+		}
+
+		/**
+		 * Action done before the first frame.
+		 */
+		// OVERRIDABLE
+		protected void onStart() {
+			// do nothing
+		}
+
+		/**
+		 * Run one frame of the animation. This must not block longer than needed for sending the frame.
+		 *
+		 * @return The delay in millis until the next frame. A negative value ends the animation.
+		 */
+		protected abstract long animateFrame();
+
+		/**
+		 * Action done when the animation ends, either naturally or by interruption.
+		 *
+		 * @param isInterrupted true if the animation had no natural end but was interrupted.
+		 * @return The delay in millis until the animation is completed.
+		 */
+		// OVERRIDABLE
+		protected long onEnd(final boolean isInterrupted) {
+			return 0;
+		}
+
+		/**
+		 * Action done on completion of the animation.
+		 *
+		 * @param isInterrupted true if the animation had no natural end but was interrupted.
+		 */
+		// OVERRIDABLE
+		protected void onCompleted(final boolean isInterrupted) {
+			// do nothing
 		}
 	}
 
@@ -735,6 +1398,10 @@ public class Light extends Device implements Serializable {
 		 * The animation thread.
 		 */
 		private transient BaseAnimationThread mAnimationThread = null;
+		/**
+		 * The animation queue.
+		 */
+		private transient AnimationQueue mAnimationQueue = null;
 	}
 
 	/**
@@ -767,6 +1434,27 @@ public class Light extends Device implements Serializable {
 			return null;
 		}
 
+		/**
+		 * The number of steps which may be rendered ahead on a separate worker, so that expensive definitions do not delay the packets.
+		 * If positive, the colors and durations are requested only from this worker, in ascending order of steps. Changes of the
+		 * definition, e.g. of the brightness, then become visible only after the steps already rendered.
+		 *
+		 * @return The number of steps rendered ahead. 0 renders each step synchronously.
+		 */
+		default int getLookAheadFrames() {
+			return 0;
+		}
+
+		/**
+		 * Flag indicating if the colors, durations and start times depend on the step number only, so that upcoming steps may be
+		 * evaluated ahead and offloaded to the device as one waveform or long transition. This is not used with look-ahead rendering.
+		 *
+		 * @return false by default
+		 */
+		default boolean isOffloadable() {
+			return false;
+		}
+
 		/**
 		 * Flag indicating if animation should wait until end of the previous animation.
 		 *
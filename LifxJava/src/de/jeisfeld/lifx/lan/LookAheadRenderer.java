@@ -0,0 +1,234 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Renderer of the steps of an animation ahead of time. While step n is sent, the steps n+1 to n+k are rendered on a worker of the
+ * LifxExecutor into a bounded ring buffer, so that expensive definitions do not delay the packets. Steps are rendered strictly in
+ * ascending order, so that definitions may keep state from one step to the next. The steps are requested by one animation in ascending
+ * order; the step before the latest requested step remains available.
+ *
+ * @param <T> The type of the colors of a step.
+ */
+public class LookAheadRenderer<T> {
+	/**
+	 * The renderer of the colors of a step. It returns null at the end of the animation.
+	 */
+	private final IntFunction<T> mColorRenderer;
+	/**
+	 * The renderer of the duration of a step.
+	 */
+	private final IntUnaryOperator mDurationRenderer;
+	/**
+	 * The number of steps to be rendered ahead.
+	 */
+	private final int mLookAheadFrames;
+	/**
+	 * The ring buffer of rendered colors.
+	 */
+	private final Object[] mColors;
+	/**
+	 * The ring buffer of rendered durations.
+	 */
+	private final int[] mDurations;
+	/**
+	 * The first step kept in the buffer.
+	 */
+	private int mFirstStep = 0;
+	/**
+	 * The next step to be rendered.
+	 */
+	private int mNextStep = 0;
+	/**
+	 * The latest requested step.
+	 */
+	private int mRequestedStep = 0;
+	/**
+	 * Flag indicating if a step is currently rendered.
+	 */
+	private boolean mIsRendering = false;
+	/**
+	 * Flag indicating if the end of the animation has been rendered.
+	 */
+	private boolean mIsEnded = false;
+	/**
+	 * Flag indicating if the worker is scheduled.
+	 */
+	private boolean mIsWorkerScheduled = false;
+	/**
+	 * Flag indicating if a step is awaited by the animation.
+	 */
+	private boolean mIsAwaiting = false;
+
+	/**
+	 * Create a look-ahead renderer.
+	 *
+	 * @param lookAheadFrames  The number of steps to be rendered ahead.
+	 * @param colorRenderer    The renderer of the colors of a step. It has to return null at the end of the animation.
+	 * @param durationRenderer The renderer of the duration of a step. It is called after the colors of the step.
+	 */
+	public LookAheadRenderer(final int lookAheadFrames, final IntFunction<T> colorRenderer, final IntUnaryOperator durationRenderer) {
+		mLookAheadFrames = lookAheadFrames;
+		mColorRenderer = colorRenderer;
+		mDurationRenderer = durationRenderer;
+		// Keep the previous and the current step in addition to the steps rendered ahead.
+		mColors = new Object[lookAheadFrames + 2];
+		mDurations = new int[lookAheadFrames + 2];
+	}
+
+	/**
+	 * Get the colors of a step.
+	 *
+	 * @param n counter starting with 0
+	 * @return The rendered colors. Null at the end of the animation.
+	 */
+	@SuppressWarnings("unchecked")
+	public final T getColors(final int n) {
+		awaitStep(n);
+		synchronized (this) {
+			return n >= mFirstStep && n < mNextStep ? (T) mColors[n % mColors.length] : null;
+		}
+	}
+
+	/**
+	 * Get the duration of a step.
+	 *
+	 * @param n counter starting with 0
+	 * @return The rendered duration. 0 at the end of the animation.
+	 */
+	public final int getDuration(final int n) {
+		awaitStep(n);
+		synchronized (this) {
+			return n >= mFirstStep && n < mNextStep ? mDurations[n % mDurations.length] : 0;
+		}
+	}
+
+	/**
+	 * Make a step available. If the worker is behind, the worker does not start further steps, and the missing steps are rendered
+	 * inline. So the animation waits at most for the step which the worker is rendering at that moment.
+	 *
+	 * @param n counter starting with 0
+	 */
+	private void awaitStep(final int n) {
+		synchronized (this) {
+			if (n > mRequestedStep) {
+				mRequestedStep = n;
+				releaseSteps();
+			}
+			mIsAwaiting = true;
+		}
+		try {
+			boolean isAvailable = false;
+			while (!isAvailable) {
+				synchronized (this) {
+					try {
+						while (mIsRendering && n >= mNextStep) {
+							wait();
+						}
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					isAvailable = n < mNextStep || mIsEnded;
+				}
+				if (!isAvailable) {
+					renderNextStep(false);
+				}
+			}
+		}
+		finally {
+			synchronized (this) {
+				mIsAwaiting = false;
+			}
+		}
+		scheduleWorker();
+	}
+
+	/**
+	 * Release the steps which are no longer needed.
+	 */
+	private synchronized void releaseSteps() {
+		int firstStep = Math.max(mFirstStep, Math.min(mRequestedStep - 1, mNextStep));
+		for (int step = mFirstStep; step < firstStep; step++) {
+			mColors[step % mColors.length] = null;
+		}
+		mFirstStep = firstStep;
+	}
+
+	/**
+	 * Check if further steps should be rendered ahead.
+	 *
+	 * @return true if further steps should be rendered ahead.
+	 */
+	private synchronized boolean needsLookAhead() {
+		return !mIsEnded && !mIsAwaiting && mNextStep <= mRequestedStep + mLookAheadFrames && mNextStep - mFirstStep < mColors.length;
+	}
+
+	/**
+	 * Render the next step.
+	 *
+	 * @param isLookAhead flag indicating if the step is rendered ahead.
+	 */
+	private void renderNextStep(final boolean isLookAhead) {
+		int step;
+		synchronized (this) {
+			if (mIsRendering || mIsEnded || (isLookAhead && !needsLookAhead())) {
+				return;
+			}
+			mIsRendering = true;
+			step = mNextStep;
+		}
+		T colors = null;
+		int duration = 0;
+		try {
+			colors = mColorRenderer.apply(step);
+			if (colors != null) {
+				duration = mDurationRenderer.applyAsInt(step);
+			}
+		}
+		catch (RuntimeException e) {
+			Logger.error(e);
+			colors = null;
+		}
+		synchronized (this) {
+			if (colors == null) {
+				mIsEnded = true;
+			}
+			else {
+				mColors[step % mColors.length] = colors;
+				mDurations[step % mDurations.length] = duration;
+				mNextStep++;
+				releaseSteps();
+			}
+			mIsRendering = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Schedule the worker rendering ahead, if required.
+	 */
+	private void scheduleWorker() {
+		synchronized (this) {
+			if (mIsWorkerScheduled || !needsLookAhead()) {
+				return;
+			}
+			mIsWorkerScheduled = true;
+		}
+		LifxExecutor.execute(() -> {
+			boolean isRunning = true;
+			while (isRunning) {
+				renderNextStep(true);
+				synchronized (this) {
+					isRunning = !mIsRendering && needsLookAhead();
+					if (!isRunning) {
+						mIsWorkerScheduled = false;
+					}
+				}
+			}
+		});
+	}
+}
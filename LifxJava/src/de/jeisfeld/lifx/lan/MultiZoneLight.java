@@ -3,7 +3,7 @@ package de.jeisfeld.lifx.lan;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
 
 import de.jeisfeld.lifx.lan.message.MultizoneGetColorZones;
@@ -16,10 +16,10 @@ import de.jeisfeld.lifx.lan.message.MultizoneSetMultizoneEffect;
 import de.jeisfeld.lifx.lan.message.MultizoneStateExtendedColorZones;
 import de.jeisfeld.lifx.lan.message.MultizoneStateMultizoneEffect;
 import de.jeisfeld.lifx.lan.message.MultizoneStateZone;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
 import de.jeisfeld.lifx.lan.type.Color;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
 import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
-import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.type.Product;
 import de.jeisfeld.lifx.lan.type.Vendor;
 import de.jeisfeld.lifx.lan.util.TypeUtil;
@@ -33,6 +33,14 @@ public class MultiZoneLight extends Light {
 	 * The default serializable version id.
 	 */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The minimum interval between animation frames in millis if colors are set in one message.
+	 */
+	private static final int MIN_FRAME_INTERVAL_EXTENDED = 50;
+	/**
+	 * The minimum interval between animation frames in millis if colors are set in one message per zone.
+	 */
+	private static final int MIN_FRAME_INTERVAL_ZONES = 200;
 
 	/**
 	 * The size of a bulk of colors.
@@ -197,6 +205,7 @@ public class MultiZoneLight extends Light {
 	public void setColor(final byte startIndex, final byte endIndex, final Color color, final int duration, final boolean wait, final boolean apply)
 			throws IOException {
 		getConnection().requestWithResponse(new MultizoneSetColorZones(startIndex, endIndex, color, duration, apply ? Apply.APPLY : Apply.NO_APPLY));
+		invalidateColorState();
 	}
 
 	/**
@@ -211,6 +220,7 @@ public class MultiZoneLight extends Light {
 		if (hasExtendedApi()) {
 			getConnection().requestWithResponse(
 					new MultizoneSetExtendedColorZones((byte) 0, duration, Apply.APPLY, colors.getColors(mZoneCount)));
+			invalidateColorState();
 		}
 		else {
 			for (int i = 0; i < mZoneCount; i++) {
@@ -227,6 +237,25 @@ public class MultiZoneLight extends Light {
 		}
 	}
 
+	@Override
+	final List<RequestMessage> createSceneRequests(final SceneAnimation.Definition definition, final int n, final int lightIndex,
+			final int duration) {
+		List<RequestMessage> requests = new ArrayList<>();
+		MultizoneColors colors = definition.getMultizoneColors(n, lightIndex);
+		if (colors != null) {
+			if (hasExtendedApi()) {
+				requests.add(new MultizoneSetExtendedColorZones((byte) 0, duration, Apply.APPLY, colors.getColors(mZoneCount)));
+			}
+			else {
+				for (int i = 0; i < mZoneCount; i++) {
+					requests.add(new MultizoneSetColorZones((byte) i, (byte) i, colors.getColor(i, getZoneCount()), duration,
+							i == mZoneCount - 1 ? Apply.APPLY : Apply.NO_APPLY));
+				}
+			}
+		}
+		return requests;
+	}
+
 	@Override
 	public final String getFullInformation(final String indent, final boolean includeVolatileInfo) {
 		StringBuilder result = new StringBuilder(super.getFullInformation(indent, includeVolatileInfo));
@@ -325,6 +354,10 @@ public class MultiZoneLight extends Light {
 		 * The transition time to the end color.
 		 */
 		private int mEndTransitionTime = 200; // MAGIC_NUMBER
+		/**
+		 * The renderer of the colors. Null if the colors are rendered synchronously.
+		 */
+		private LookAheadRenderer<MultizoneColors> mColorsRenderer = null;
 
 		/**
 		 * Create an animation thread.
@@ -356,98 +389,90 @@ public class MultiZoneLight extends Light {
 		}
 
 		@Override
-		public void run() {
-			int count = 0;
-			try {
-				storeDeviceRegistry();
-				if (mDefinition.waitForPreviousAnimationEnd()) {
-					waitForPreviousAnimationEnd();
-				}
-				boolean isInterrupted = false;
-				boolean isPowerChange = false;
-				try {
-					while (!isInterrupted() && mDefinition.getColors(count) != null) {
-						Date givenStartTime = mDefinition.getStartTime(count);
-						final long startTime = givenStartTime == null ? System.currentTimeMillis() : givenStartTime.getTime();
-						if (givenStartTime != null) {
-							long waitTime = givenStartTime.getTime() - System.currentTimeMillis();
-							if (waitTime > 0) {
-								Thread.sleep(waitTime);
-							}
-						}
-
-						int errorCount = 0;
-						boolean success = false;
-						int duration = Math.max(mDefinition.getDuration(count), 0);
-						Power power;
-						boolean wasOff = count == 0
-								? ((power = getLight().getPower()) != null && power.isOff()) // SUPPRESS_CHECKSTYLE
-								: mDefinition.getColors(count - 1).isOff();
-						while (!success) {
-							try { // SUPPRESS_CHECKSTYLE
-								MultizoneColors colors = mDefinition.getColors(count).withRelativeBrightness(getRelativeBrightness());
-								if (wasOff) {
-									getLight().setColors(colors, 0, false);
-									getLight().setPower(true, duration, false);
-									isPowerChange = true;
-								}
-								else if (colors.isOff()) {
-									getLight().setPower(false, duration, false);
-									isPowerChange = true;
-								}
-								else {
-									getLight().setColors(colors, duration, false);
-									isPowerChange = false;
-								}
-								success = true;
-							}
-							catch (IOException e) {
-								errorCount++;
-								if (errorCount >= WAITING_TIMES_AFTER_ERROR.length) {
-									throw e;
-								}
-								Thread.sleep(WAITING_TIMES_AFTER_ERROR[errorCount]);
-							}
-						}
-						Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-						count++;
-					}
-				}
-				catch (InterruptedException e) {
-					isInterrupted = true;
+		protected final boolean canOffload() {
+			// Waveforms apply to the whole device, so zone colors are sent by the host.
+			return false;
+		}
+
+		@Override
+		protected final int getMinFrameInterval() {
+			return getLight().hasExtendedApi() ? MIN_FRAME_INTERVAL_EXTENDED : MIN_FRAME_INTERVAL_ZONES;
+		}
+
+		@Override
+		protected final LookAheadRenderer<?> createRenderer(final int lookAheadFrames) {
+			mColorsRenderer = new LookAheadRenderer<>(lookAheadFrames, n -> {
+				MultizoneColors colors = mDefinition.getColors(n);
+				if (colors == null || colors.isOff()) {
+					return colors;
 				}
+				// Evaluate the colors of all zones on the worker, so that sending does not call back into the definition.
+				return new MultizoneColors.Exact(Arrays.asList(colors.getColors(getLight().getZoneCount())));
+			}, mDefinition::getDuration);
+			return mColorsRenderer;
+		}
 
-				if (mEndColors == null) {
-					if (isInterrupted) {
-						if (isPowerChange) {
-							// Multizone light behaves differently than other lights - colors contain already relative power.
-							MultizoneColors colors = new MultizoneColors.Exact(getLight().getColors());
-							getLight().setColors(colors, 200, false); // MAGIC_NUMBER
-							getLight().setPower(true, 200, false); // MAGIC_NUMBER
-						}
-						else {
-							// stop the previous color transition by sending setWaveform command with no change.
-							getLight().setBrightness(null);
-						}
+		/**
+		 * Get the colors of a step, either rendered ahead or from the definition.
+		 *
+		 * @param n counter starting with 0
+		 * @return The colors of the step. Null at the end of the animation.
+		 */
+		private MultizoneColors getStepColors(final int n) {
+			return mColorsRenderer == null ? mDefinition.getColors(n) : mColorsRenderer.getColors(n);
+		}
+
+		@Override
+		protected final boolean hasStep(final int n) {
+			return getStepColors(n) != null;
+		}
+
+		@Override
+		protected final boolean isOff(final int n) {
+			return getStepColors(n).isOff();
+		}
+
+		@Override
+		protected final boolean applyStep(final int n, final int duration, final boolean wasOff) throws IOException {
+			MultizoneColors colors = getStepColors(n).withRelativeBrightness(getRelativeBrightness());
+			if (wasOff) {
+				getLight().setColors(colors, 0, false);
+				getLight().setPower(true, duration, false);
+				return true;
+			}
+			else if (colors.isOff()) {
+				getLight().setPower(false, duration, false);
+				return true;
+			}
+			else {
+				getLight().setColors(colors, duration, false);
+				return false;
+			}
+		}
+
+		@Override
+		protected final int finishAnimation(final boolean isInterrupted, final boolean isPowerChange) throws IOException {
+			if (mEndColors == null) {
+				if (isInterrupted) {
+					if (isPowerChange) {
+						// Multizone light behaves differently than other lights - colors contain already relative power.
+						MultizoneColors colors = new MultizoneColors.Exact(getLight().getColors());
+						getLight().setColors(colors, 200, false); // MAGIC_NUMBER
+						getLight().setPower(true, 200, false); // MAGIC_NUMBER
+					}
+					else {
+						// stop the previous color transition by sending setWaveform command with no change.
+						getLight().setBrightness(null);
 					}
-				}
-				else if (mEndColors == MultizoneColors.OFF) {
-					getLight().setPower(false, mEndTransitionTime, true);
-				}
-				else {
-					getLight().setColors(mEndColors, mEndTransitionTime, true);
-				}
-				if (getAnimationCallback() != null) {
-					getAnimationCallback().onAnimationEnd(isInterrupted);
 				}
 			}
-			catch (IOException e) {
-				Logger.connectionError(getLight(), "Animation", e);
-				if (getAnimationCallback() != null) {
-					getAnimationCallback().onException(e);
-				}
+			else if (mEndColors == MultizoneColors.OFF) {
+				getLight().setPower(false, mEndTransitionTime, false);
+			}
+			else {
+				getLight().setColors(mEndColors, mEndTransitionTime, false);
 			}
-			cleanAnimationThread(this);
+			return mEndColors == null ? 0 : mEndTransitionTime;
 		}
 	}
 
@@ -0,0 +1,272 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import de.jeisfeld.lifx.lan.Light.AnimationCallback;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.MultizoneColors;
+import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * An animation of several lights on a common timeline. Per tick, one frame is rendered for all lights, and all packets are sent in one
+ * burst without waiting for acknowledgements. The frame times are derived from one monotonic start time, so that delays of single ticks
+ * do not accumulate. If the animation lags behind by more than one frame, frames are dropped in order to stay in phase.
+ */
+public class SceneAnimation {
+	/**
+	 * The lights of the scene.
+	 */
+	private final List<Light> mLights;
+	/**
+	 * The definition of the scene.
+	 */
+	private final Definition mDefinition;
+	/**
+	 * The callback.
+	 */
+	private AnimationCallback mAnimationCallback = null;
+	/**
+	 * The number of the next frame.
+	 */
+	private int mCount = 0;
+	/**
+	 * The target time of the next frame in nanos.
+	 */
+	private long mNextFrameTime;
+	/**
+	 * The number of dropped frames.
+	 */
+	private int mDroppedFrames = 0;
+	/**
+	 * The future of the next frame.
+	 */
+	private ScheduledFuture<?> mNextFrame = null;
+	/**
+	 * Flag indicating if the animation has been started.
+	 */
+	private boolean mIsStarted = false;
+	/**
+	 * Flag indicating if the animation has been interrupted.
+	 */
+	private volatile boolean mIsInterrupted = false;
+	/**
+	 * Flag indicating if the animation is completed.
+	 */
+	private boolean mIsCompleted = false;
+	/**
+	 * Future completed on completion of the animation, with true if the animation was interrupted.
+	 */
+	private final CompletableFuture<Boolean> mEndFuture = new CompletableFuture<>();
+
+	/**
+	 * Create a scene animation.
+	 *
+	 * @param lights     The lights of the scene. The index in this list is the light index passed to the definition.
+	 * @param definition The definition of the scene.
+	 */
+	public SceneAnimation(final List<? extends Light> lights, final Definition definition) {
+		mLights = new ArrayList<>(lights);
+		mDefinition = definition;
+	}
+
+	/**
+	 * Set the callback called at the end of the animation.
+	 *
+	 * @param callback The callback.
+	 * @return The updated animation.
+	 */
+	public SceneAnimation setAnimationCallback(final AnimationCallback callback) {
+		mAnimationCallback = callback;
+		return this;
+	}
+
+	/**
+	 * Start the animation. Running animations of the lights are ended, and the lights are switched on.
+	 */
+	public void start() {
+		synchronized (this) {
+			if (mIsStarted) {
+				return;
+			}
+			mIsStarted = true;
+		}
+		LifxExecutor.execute(() -> {
+			for (Light light : mLights) {
+				light.endAnimation(false);
+			}
+			try {
+				Group.setPower(mLights, true, 0);
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+			synchronized (this) {
+				mNextFrameTime = System.nanoTime();
+			}
+			runFrame();
+		});
+	}
+
+	/**
+	 * Render one frame for all lights, send it and schedule the next frame.
+	 */
+	private void runFrame() {
+		int duration = mIsInterrupted || mLights.isEmpty() ? -1 : mDefinition.getDuration(mCount);
+		if (duration < 0) {
+			complete();
+			return;
+		}
+
+		LifxLanBurstConnection connection = new LifxLanBurstConnection(mLights.get(0).getSourceId());
+		for (int lightIndex = 0; lightIndex < mLights.size(); lightIndex++) {
+			Light light = mLights.get(lightIndex);
+			for (RequestMessage request : light.createSceneRequests(mDefinition, mCount, lightIndex, duration)) {
+				connection.addRequest(light, request);
+			}
+		}
+		try {
+			connection.sendWithoutResponse();
+		}
+		catch (SocketException e) {
+			Logger.error(e);
+		}
+
+		synchronized (this) {
+			mNextFrameTime += TimeUnit.MILLISECONDS.toNanos(duration);
+			mCount++;
+			long now = System.nanoTime();
+			// Drop frames if lagging behind by more than one frame, so that the animation stays in phase.
+			int nextDuration = mDefinition.getDuration(mCount);
+			while (nextDuration > 0 && mNextFrameTime + TimeUnit.MILLISECONDS.toNanos(nextDuration) < now) {
+				mNextFrameTime += TimeUnit.MILLISECONDS.toNanos(nextDuration);
+				mCount++;
+				mDroppedFrames++;
+				nextDuration = mDefinition.getDuration(mCount);
+			}
+			if (!mIsInterrupted) {
+				long delay = TimeUnit.NANOSECONDS.toMillis(mNextFrameTime - now);
+				mNextFrame = AnimationScheduler.getInstance().schedule(this::runFrame, delay);
+				return;
+			}
+		}
+		complete();
+	}
+
+	/**
+	 * Complete the animation.
+	 */
+	private void complete() {
+		synchronized (this) {
+			if (mIsCompleted) {
+				return;
+			}
+			mIsCompleted = true;
+		}
+		try {
+			if (mAnimationCallback != null) {
+				mAnimationCallback.onAnimationEnd(mIsInterrupted);
+			}
+		}
+		finally {
+			mEndFuture.complete(mIsInterrupted);
+		}
+	}
+
+	/**
+	 * End the animation.
+	 *
+	 * @param waitForEnd flag indicating if the method should wait for end of the animation.
+	 */
+	public void end(final boolean waitForEnd) {
+		boolean isStarted;
+		synchronized (this) {
+			mIsInterrupted = true;
+			isStarted = mIsStarted;
+			if (mNextFrame != null && mNextFrame.cancel(false)) {
+				mNextFrame = null;
+				LifxExecutor.execute(this::complete);
+			}
+		}
+		if (waitForEnd && isStarted) {
+			try {
+				mEndFuture.get();
+			}
+			catch (InterruptedException | ExecutionException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Get a future for the end of the animation, e.g. for composing animation sequences.
+	 *
+	 * @return A future completed on completion of the animation, with true if the animation was interrupted.
+	 */
+	public CompletableFuture<Boolean> getEndFuture() {
+		return mEndFuture;
+	}
+
+	/**
+	 * Get the number of frames dropped in order to stay in phase.
+	 *
+	 * @return The number of dropped frames.
+	 */
+	public int getDroppedFrames() {
+		return mDroppedFrames;
+	}
+
+	/**
+	 * Interface for defining a scene animation.
+	 */
+	public interface Definition {
+		/**
+		 * The duration of the n-th frame, which is the transition time to the colors of this frame.
+		 *
+		 * @param n counter starting with 0
+		 * @return The duration in millis. A negative value ends the animation.
+		 */
+		int getDuration(int n);
+
+		/**
+		 * The color of a light in the n-th frame.
+		 *
+		 * @param n          counter starting with 0
+		 * @param lightIndex the index of the light in the scene.
+		 * @return The color. Null keeps the light unchanged in this frame.
+		 */
+		Color getColor(int n, int lightIndex);
+
+		/**
+		 * The colors of a multizone light in the n-th frame.
+		 *
+		 * @param n          counter starting with 0
+		 * @param lightIndex the index of the light in the scene.
+		 * @return The colors. Null keeps the light unchanged in this frame.
+		 */
+		default MultizoneColors getMultizoneColors(final int n, final int lightIndex) {
+			Color color = getColor(n, lightIndex);
+			return color == null ? null : new MultizoneColors.Fixed(color);
+		}
+
+		/**
+		 * The colors of a tile chain in the n-th frame.
+		 *
+		 * @param n          counter starting with 0
+		 * @param lightIndex the index of the light in the scene.
+		 * @return The colors. Null keeps the light unchanged in this frame.
+		 */
+		default TileChainColors getTileChainColors(final int n, final int lightIndex) {
+			Color color = getColor(n, lightIndex);
+			return color == null ? null : new TileChainColors.Fixed(color);
+		}
+	}
+}
@@ -3,10 +3,11 @@ package de.jeisfeld.lifx.lan;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import de.jeisfeld.lifx.lan.message.RequestMessage;
 import de.jeisfeld.lifx.lan.message.TileGetDeviceChain;
 import de.jeisfeld.lifx.lan.message.TileGetTileEffect;
 import de.jeisfeld.lifx.lan.message.TileGetTileState64;
@@ -17,12 +18,12 @@ import de.jeisfeld.lifx.lan.message.TileStateDeviceChain;
 import de.jeisfeld.lifx.lan.message.TileStateTileEffect;
 import de.jeisfeld.lifx.lan.message.TileStateTileState64;
 import de.jeisfeld.lifx.lan.type.Color;
-import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.type.Product;
 import de.jeisfeld.lifx.lan.type.TileChainColors;
 import de.jeisfeld.lifx.lan.type.TileColors;
 import de.jeisfeld.lifx.lan.type.TileEffectInfo;
 import de.jeisfeld.lifx.lan.type.TileInfo;
+import de.jeisfeld.lifx.lan.type.TileInfo.Rotation;
 import de.jeisfeld.lifx.lan.type.Vendor;
 import de.jeisfeld.lifx.lan.util.TypeUtil;
 import de.jeisfeld.lifx.os.Logger;
@@ -35,6 +36,10 @@ public class TileChain extends Light implements Serializable {
 	 * The default serializable version id.
 	 */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The minimum interval between animation frames in millis (one message per tile).
+	 */
+	private static final int MIN_FRAME_INTERVAL_TILES = 100;
 
 	/**
 	 * The number of tiles.
@@ -273,6 +278,7 @@ public class TileChain extends Light implements Serializable {
 	private void setColors(final byte tileIndex, final int duration, final List<Color> colors) throws IOException {
 		getConnection().requestWithResponse(
 				new TileSetTileState64(tileIndex, (byte) 1, (byte) 0, (byte) 0, mTileInfo.get(tileIndex).getWidth(), duration, colors));
+		invalidateColorState();
 	}
 
 	/**
@@ -312,6 +318,23 @@ public class TileChain extends Light implements Serializable {
 		}
 	}
 
+	@Override
+	final List<RequestMessage> createSceneRequests(final SceneAnimation.Definition definition, final int n, final int lightIndex,
+			final int duration) {
+		List<RequestMessage> requests = new ArrayList<>();
+		TileChainColors colors = definition.getTileChainColors(n, lightIndex);
+		if (colors != null) {
+			for (byte tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
+				TileInfo tileInfo = mTileInfo.get(tileIndex);
+				requests.add(new TileSetTileState64(tileIndex, (byte) 1, (byte) 0, (byte) 0, tileInfo.getWidth(), duration,
+						colors.getTileColors(tileInfo.getWidth(), tileInfo.getHeight(), tileInfo.getMinX(), tileInfo.getMinY(),
+								tileInfo.getRotation(), mTotalWidth, mTotalHeight)
+								.asList(tileInfo.getWidth(), tileInfo.getHeight())));
+			}
+		}
+		return requests;
+	}
+
 	/**
 	 * Set the colors for a subset of tiles.
 	 *
@@ -380,6 +403,10 @@ public class TileChain extends Light implements Serializable {
 		 * The transition time to the end color.
 		 */
 		private int mEndTransitionTime = 200; // MAGIC_NUMBER
+		/**
+		 * The renderer of the colors. Null if the colors are rendered synchronously.
+		 */
+		private LookAheadRenderer<TileChainColors> mColorsRenderer = null;
 
 		/**
 		 * Create an animation thread.
@@ -411,103 +438,171 @@ public class TileChain extends Light implements Serializable {
 		}
 
 		@Override
-		public void run() {
-			int count = 0;
-			try {
-				storeDeviceRegistry();
-				if (mDefinition.waitForPreviousAnimationEnd()) {
-					waitForPreviousAnimationEnd();
-				}
-				boolean isInterrupted = false;
-				boolean isPowerChange = false;
-				try {
-					while (!isInterrupted() && mDefinition.getColors(count) != null) {
-						Date givenStartTime = mDefinition.getStartTime(count);
-						final long startTime = givenStartTime == null ? System.currentTimeMillis() : givenStartTime.getTime();
-						if (givenStartTime != null) {
-							long waitTime = givenStartTime.getTime() - System.currentTimeMillis();
-							if (waitTime > 0) {
-								Thread.sleep(waitTime);
-							}
-						}
+		protected final boolean canOffload() {
+			// Waveforms apply to the whole device, so zone colors are sent by the host.
+			return false;
+		}
 
-						int errorCount = 0;
-						boolean success = false;
-						int duration = Math.max(mDefinition.getDuration(count), 0);
-						Power power;
-						boolean wasOff = count == 0
-								? ((power = getLight().getPower()) != null && power.isOff()) // SUPPRESS_CHECKSTYLE
-								: mDefinition.getColors(count - 1).isOff();
-						while (!success) {
-							try { // SUPPRESS_CHECKSTYLE
-								TileChainColors colors = mDefinition.getColors(count).withRelativeBrightness(getRelativeBrightness());
-								if (wasOff) {
-									getLight().setColors(colors, 0, false);
-									getLight().setPower(true, duration, false);
-									isPowerChange = true;
-								}
-								else if (colors.isOff()) {
-									getLight().setPower(false, duration, false);
-									isPowerChange = true;
-								}
-								else {
-									getLight().setColors(colors, duration, false);
-									isPowerChange = false;
-								}
-								success = true;
-							}
-							catch (IOException e) {
-								errorCount++;
-								if (errorCount >= WAITING_TIMES_AFTER_ERROR.length) {
-									throw e;
-								}
-								Thread.sleep(WAITING_TIMES_AFTER_ERROR[errorCount]);
-							}
-						}
-						Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-						count++;
-					}
-				}
-				catch (InterruptedException e) {
-					isInterrupted = true;
-				}
+		@Override
+		protected final int getMinFrameInterval() {
+			return MIN_FRAME_INTERVAL_TILES;
+		}
 
-				if (mEndColors == null) {
-					if (isInterrupted) {
-						if (isPowerChange) {
-							try {
-								TileChainColors colors = Objects.requireNonNull(getLight().getColors())
-										.withRelativeBrightness(TypeUtil.toDouble(getLight().getPower().getLevel()));
-								getLight().setColors(colors, 200, false); // MAGIC_NUMBER
-								getLight().setPower(true, 200, false); // MAGIC_NUMBER
-							}
-							catch (NullPointerException e) {
-								// ignore
-							}
+		@Override
+		protected final LookAheadRenderer<?> createRenderer(final int lookAheadFrames) {
+			mColorsRenderer = new LookAheadRenderer<>(lookAheadFrames, n -> {
+				TileChainColors colors = mDefinition.getColors(n);
+				return colors == null || colors.isOff() ? colors : new RenderedColors(getLight(), colors);
+			}, mDefinition::getDuration);
+			return mColorsRenderer;
+		}
+
+		/**
+		 * Get the colors of a step, either rendered ahead or from the definition.
+		 *
+		 * @param n counter starting with 0
+		 * @return The colors of the step. Null at the end of the animation.
+		 */
+		private TileChainColors getStepColors(final int n) {
+			return mColorsRenderer == null ? mDefinition.getColors(n) : mColorsRenderer.getColors(n);
+		}
+
+		@Override
+		protected final boolean hasStep(final int n) {
+			return getStepColors(n) != null;
+		}
+
+		@Override
+		protected final boolean isOff(final int n) {
+			return getStepColors(n).isOff();
+		}
+
+		@Override
+		protected final boolean applyStep(final int n, final int duration, final boolean wasOff) throws IOException {
+			TileChainColors colors = getStepColors(n).withRelativeBrightness(getRelativeBrightness());
+			if (wasOff) {
+				getLight().setColors(colors, 0, false);
+				getLight().setPower(true, duration, false);
+				return true;
+			}
+			else if (colors.isOff()) {
+				getLight().setPower(false, duration, false);
+				return true;
+			}
+			else {
+				getLight().setColors(colors, duration, false);
+				return false;
+			}
+		}
+
+		@Override
+		protected final int finishAnimation(final boolean isInterrupted, final boolean isPowerChange) throws IOException {
+			if (mEndColors == null) {
+				if (isInterrupted) {
+					if (isPowerChange) {
+						try {
+							TileChainColors colors = Objects.requireNonNull(getLight().getColors())
+									.withRelativeBrightness(TypeUtil.toDouble(getLight().getPower().getLevel()));
+							getLight().setColors(colors, 200, false); // MAGIC_NUMBER
+							getLight().setPower(true, 200, false); // MAGIC_NUMBER
 						}
-						else {
-							// stop the previous color transition by sending setWaveform command with no change.
-							getLight().setBrightness(null);
+						catch (NullPointerException e) {
+							// ignore
 						}
 					}
+					else {
+						// stop the previous color transition by sending setWaveform command with no change.
+						getLight().setBrightness(null);
+					}
 				}
-				else if (mEndColors == TileChainColors.OFF) {
-					getLight().setPower(false, mEndTransitionTime, true);
-				}
-				else {
-					getLight().setColors(mEndColors, mEndTransitionTime, true);
-				}
-				if (getAnimationCallback() != null) {
-					getAnimationCallback().onAnimationEnd(isInterrupted);
+			}
+			else if (mEndColors == TileChainColors.OFF) {
+				getLight().setPower(false, mEndTransitionTime, false);
+			}
+			else {
+				getLight().setColors(mEndColors, mEndTransitionTime, false);
+			}
+			return mEndColors == null ? 0 : mEndTransitionTime;
+		}
+	}
+
+	/**
+	 * Tile chain colors rendered in advance for all tiles of a tile chain, so that sending does not call back into the definition.
+	 */
+	private static final class RenderedColors extends TileChainColors {
+		/**
+		 * The default serializable version id.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The tile chain.
+		 */
+		private final TileChain mTileChain;
+		/**
+		 * The rendered colors of the tiles.
+		 */
+		private final TileColors[] mTileColors;
+
+		/**
+		 * Render the colors for all tiles of a tile chain.
+		 *
+		 * @param tileChain the tile chain
+		 * @param colors    The colors to be rendered.
+		 */
+		private RenderedColors(final TileChain tileChain, final TileChainColors colors) {
+			mTileChain = tileChain;
+			mTileColors = new TileColors[tileChain.getTileCount()];
+			for (int tileIndex = 0; tileIndex < mTileColors.length; tileIndex++) {
+				TileInfo tileInfo = tileChain.getTileInfo().get(tileIndex);
+				mTileColors[tileIndex] = new TileColors.Exact(colors.getTileColors(tileInfo.getWidth(), tileInfo.getHeight(), tileInfo.getMinX(),
+						tileInfo.getMinY(), tileInfo.getRotation(), tileChain.getTotalWidth(), tileChain.getTotalHeight())
+						.asList(tileInfo.getWidth(), tileInfo.getHeight()), tileInfo.getWidth(), tileInfo.getHeight());
+			}
+		}
+
+		/**
+		 * Create rendered colors from already rendered tile colors.
+		 *
+		 * @param tileChain  the tile chain
+		 * @param tileColors The rendered colors of the tiles.
+		 */
+		private RenderedColors(final TileChain tileChain, final TileColors[] tileColors) {
+			mTileChain = tileChain;
+			mTileColors = tileColors;
+		}
+
+		@Override
+		public Color getColor(final int x, final int y, final int width, final int height) {
+			for (int tileIndex = 0; tileIndex < mTileColors.length; tileIndex++) {
+				TileInfo tileInfo = mTileChain.getTileInfo().get(tileIndex);
+				if (x >= tileInfo.getMinX() && x < tileInfo.getMinX() + tileInfo.getWidth()
+						&& y >= tileInfo.getMinY() && y < tileInfo.getMinY() + tileInfo.getHeight()) {
+					return mTileColors[tileIndex].getColor(x - tileInfo.getMinX(), y - tileInfo.getMinY());
 				}
 			}
-			catch (IOException e) {
-				Logger.connectionError(getLight(), "Animation", e);
-				if (getAnimationCallback() != null) {
-					getAnimationCallback().onException(e);
+			return Color.OFF;
+		}
+
+		@Override
+		public TileColors getTileColors(final int width, final int height, final int minX, final int minY, final Rotation rotation,
+				final int totalWidth, final int totalHeight) {
+			for (int tileIndex = 0; tileIndex < mTileColors.length; tileIndex++) {
+				TileInfo tileInfo = mTileChain.getTileInfo().get(tileIndex);
+				if (tileInfo.getMinX() == minX && tileInfo.getMinY() == minY) {
+					return mTileColors[tileIndex];
 				}
 			}
-			cleanAnimationThread(this);
+			return super.getTileColors(width, height, minX, minY, rotation, totalWidth, totalHeight);
+		}
+
+		@Override
+		public TileChainColors withRelativeBrightness(final double brightnessFactor) {
+			TileColors[] tileColors = new TileColors[mTileColors.length];
+			for (int tileIndex = 0; tileIndex < mTileColors.length; tileIndex++) {
+				tileColors[tileIndex] = mTileColors[tileIndex].withRelativeBrightness(brightnessFactor);
+			}
+			return new RenderedColors(mTileChain, tileColors);
 		}
 	}
 
@@ -0,0 +1,228 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.Date;
+
+import de.jeisfeld.lifx.lan.Light.AnimationDefinition;
+import de.jeisfeld.lifx.lan.type.Color;
+
+/**
+ * Planner offloading upcoming steps of an animation to the device. Steps which alternate between two colors at equal durations are
+ * sent as one triangle waveform, and steps lying on the linear transition from the previous color to a later color are sent as one
+ * long transition. If the upcoming steps do not fit one of these patterns, no plan is made, and the steps are sent by the host.
+ */
+final class WaveformPlanner {
+	/**
+	 * The maximum number of steps covered by one plan. This limits the evaluation ahead and the delay of changes of the brightness.
+	 */
+	private static final int MAX_PLAN_FRAMES = 100;
+	/**
+	 * The definition of the animation.
+	 */
+	private final AnimationDefinition mDefinition;
+	/**
+	 * The clock of the animation.
+	 */
+	private final AnimationClock mClock;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param definition The definition of the animation. Its colors and durations need to depend on the step number only.
+	 * @param clock      The clock of the animation.
+	 */
+	WaveformPlanner(final AnimationDefinition definition, final AnimationClock clock) {
+		mDefinition = definition;
+		mClock = clock;
+	}
+
+	/**
+	 * Plan the steps starting from a certain step.
+	 *
+	 * @param n         counter starting with 0
+	 * @param startTime The start time of the step on the timeline of the clock.
+	 * @return The plan. Null if the steps cannot be offloaded.
+	 */
+	Plan plan(final int n, final long startTime) {
+		if (n == 0) {
+			return null;
+		}
+		Color previous = mDefinition.getColor(n - 1);
+		Color target = mDefinition.getColor(n);
+		if (previous == null || target == null || previous.isOff() || target.isOff() || mDefinition.getDuration(n) <= 0) {
+			return null;
+		}
+		Plan plan = planWaveform(n, startTime, previous, target);
+		return plan == null ? planTransition(n, startTime, previous) : plan;
+	}
+
+	/**
+	 * Plan a triangle waveform, if the steps alternate between the previous color and the target color at equal durations.
+	 *
+	 * @param n         counter starting with 0
+	 * @param startTime The start time of the step.
+	 * @param previous  The color of the previous step.
+	 * @param target    The color of the step.
+	 * @return The plan. Null if the steps do not alternate.
+	 */
+	private Plan planWaveform(final int n, final long startTime, final Color previous, final Color target) {
+		int duration = mDefinition.getDuration(n);
+		int frameCount = 1;
+		boolean isMatching = true;
+		while (isMatching && frameCount < MAX_PLAN_FRAMES) {
+			int m = n + frameCount;
+			Color color = mDefinition.getColor(m);
+			isMatching = color != null && color.equals(frameCount % 2 == 0 ? target : previous) && mDefinition.getDuration(m) == duration
+					&& isContinuous(m, startTime + (long) frameCount * duration);
+			if (isMatching) {
+				frameCount++;
+			}
+		}
+		int cycles = frameCount / 2;
+		return cycles == 0 || previous.equals(target) ? null : new Plan(target, 2 * cycles, 2 * cycles * duration, cycles);
+	}
+
+	/**
+	 * Plan a long transition, if the following steps lie on the linear transition from the previous color to a later color.
+	 *
+	 * @param n         counter starting with 0
+	 * @param startTime The start time of the step.
+	 * @param previous  The color of the previous step.
+	 * @return The plan. Null if less than two steps can be merged.
+	 */
+	private Plan planTransition(final int n, final long startTime, final Color previous) {
+		Color[] colors = new Color[MAX_PLAN_FRAMES];
+		// The time from the start until each step is reached.
+		long[] endTimes = new long[MAX_PLAN_FRAMES];
+		colors[0] = mDefinition.getColor(n);
+		endTimes[0] = mDefinition.getDuration(n);
+		int frameCount = 1;
+		boolean isMatching = true;
+		while (isMatching && frameCount < MAX_PLAN_FRAMES) {
+			int m = n + frameCount;
+			Color color = mDefinition.getColor(m);
+			int duration = mDefinition.getDuration(m);
+			isMatching = color != null && !color.isOff() && duration > 0 && isContinuous(m, startTime + endTimes[frameCount - 1]);
+			if (isMatching) {
+				colors[frameCount] = color;
+				endTimes[frameCount] = endTimes[frameCount - 1] + duration;
+				isMatching = isOnTransition(previous, colors, endTimes, frameCount);
+			}
+			if (isMatching) {
+				frameCount++;
+			}
+		}
+		return frameCount < 2 ? null : new Plan(colors[frameCount - 1], frameCount, (int) endTimes[frameCount - 1], 0);
+	}
+
+	/**
+	 * Check if all colors lie on the linear transition from the previous color to the last color.
+	 *
+	 * @param previous  The color of the previous step.
+	 * @param colors    The colors of the steps.
+	 * @param endTimes  The times from the start until the steps are reached.
+	 * @param lastIndex The index of the last color.
+	 * @return true if all colors lie on the transition.
+	 */
+	private static boolean isOnTransition(final Color previous, final Color[] colors, final long[] endTimes, final int lastIndex) {
+		boolean isOnTransition = true;
+		for (int i = 0; i < lastIndex && isOnTransition; i++) {
+			double quota = (double) endTimes[i] / endTimes[lastIndex];
+			isOnTransition = previous.add(colors[lastIndex], quota).isSimilar(colors[i]);
+		}
+		return isOnTransition;
+	}
+
+	/**
+	 * Check if a step starts directly after the previous step, i.e. if it has no deviating start time.
+	 *
+	 * @param m                 counter starting with 0
+	 * @param expectedStartTime The end time of the previous step.
+	 * @return true if the step continues the previous step.
+	 */
+	private boolean isContinuous(final int m, final long expectedStartTime) {
+		Date givenStartTime = mDefinition.getStartTime(m);
+		return givenStartTime == null || mClock.toClockTime(givenStartTime) == expectedStartTime;
+	}
+
+	/**
+	 * A plan of steps sent to the device as one command.
+	 */
+	static final class Plan {
+		/**
+		 * The target color.
+		 */
+		private final Color mTargetColor;
+		/**
+		 * The number of steps covered by the plan.
+		 */
+		private final int mFrameCount;
+		/**
+		 * The total duration of the steps in millis.
+		 */
+		private final int mDuration;
+		/**
+		 * The number of waveform cycles. 0 for a transition.
+		 */
+		private final int mCycles;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param targetColor The target color.
+		 * @param frameCount  The number of steps covered by the plan.
+		 * @param duration    The total duration of the steps in millis.
+		 * @param cycles      The number of waveform cycles. 0 for a transition.
+		 */
+		private Plan(final Color targetColor, final int frameCount, final int duration, final int cycles) {
+			mTargetColor = targetColor;
+			mFrameCount = frameCount;
+			mDuration = duration;
+			mCycles = cycles;
+		}
+
+		/**
+		 * Get the target color. For a waveform, this is the color at the middle of each cycle.
+		 *
+		 * @return The target color.
+		 */
+		Color getTargetColor() {
+			return mTargetColor;
+		}
+
+		/**
+		 * Get the number of steps covered by the plan.
+		 *
+		 * @return The number of steps.
+		 */
+		int getFrameCount() {
+			return mFrameCount;
+		}
+
+		/**
+		 * Get the total duration of the steps.
+		 *
+		 * @return The duration in millis.
+		 */
+		int getDuration() {
+			return mDuration;
+		}
+
+		/**
+		 * Check if the plan is a waveform.
+		 *
+		 * @return true for a waveform, false for a transition.
+		 */
+		boolean isWaveform() {
+			return mCycles > 0;
+		}
+
+		/**
+		 * Get the number of waveform cycles.
+		 *
+		 * @return The number of cycles.
+		 */
+		int getCycles() {
+			return mCycles;
+		}
+	}
+}
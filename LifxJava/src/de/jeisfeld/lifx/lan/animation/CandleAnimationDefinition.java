@@ -21,6 +21,10 @@ public final class CandleAnimationDefinition implements TileChain.AnimationDefin
 	 * The random number generator.
 	 */
 	private static final Random RANDOM = new Random();
+	/**
+	 * The number of steps rendered ahead. Rendering the flames is expensive, and the definition does not depend on external state.
+	 */
+	private static final int LOOK_AHEAD_FRAMES = 3;
 	/**
 	 * The tile chain light.
 	 */
@@ -212,6 +216,11 @@ public final class CandleAnimationDefinition implements TileChain.AnimationDefin
 		return mCurrentDuration;
 	}
 
+	@Override
+	public int getLookAheadFrames() {
+		return LOOK_AHEAD_FRAMES;
+	}
+
 	@Override
 	public TileChainColors getColors(final int n) {
 		if (mIsFirstStep || n > mCurrentStep) {
@@ -48,4 +48,9 @@ public final class CycleAnimationDefinition implements AnimationDefinition {
 		}
 	}
 
+	@Override
+	public boolean isOffloadable() {
+		return true;
+	}
+
 }
@@ -1,5 +1,7 @@
 package de.jeisfeld.lifx.lan.animation;
 
+import java.util.Arrays;
+
 import de.jeisfeld.lifx.lan.MultiZoneLight;
 import de.jeisfeld.lifx.lan.MultiZoneLight.AnimationDefinition;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
@@ -8,6 +10,14 @@ import de.jeisfeld.lifx.lan.type.MultizoneColors;
  * Animation definition for moving colors on a multizone device.
  */
 public class MultizoneMoveDefinition implements AnimationDefinition {
+	/**
+	 * The maximum length of a cycle which is pre-rendered.
+	 */
+	private static final int MAX_CYCLE_LENGTH = 1000;
+	/**
+	 * The tolerance when checking if the cycle length is integral.
+	 */
+	private static final double EPSILON = 1e-9;
 	/**
 	 * The light.
 	 */
@@ -32,6 +42,14 @@ public class MultizoneMoveDefinition implements AnimationDefinition {
 	 * The selected brightness.
 	 */
 	private double mSelectedBrightness = 1;
+	/**
+	 * The number of steps after which the move repeats. 0 if the cycle is not pre-rendered.
+	 */
+	private final int mCycleLength;
+	/**
+	 * The pre-rendered colors of the cycle, without selected brightness. Rendered on first use and then replayed from memory.
+	 */
+	private final MultizoneColors[] mCycleColors;
 
 	/**
 	 * Constructor.
@@ -48,6 +66,8 @@ public class MultizoneMoveDefinition implements AnimationDefinition {
 		mDuration = duration;
 		mDirection = direction;
 		mColors = colors.stretch(stretch);
+		mCycleLength = getCycleLength(colors, light.getZoneCount(), stretch);
+		mCycleColors = mCycleLength > 0 ? new MultizoneColors[mCycleLength] : null;
 		if (direction == Direction.INWARD || direction == Direction.BACKWARD) {
 			mSgn = -1;
 		}
@@ -102,15 +122,75 @@ public class MultizoneMoveDefinition implements AnimationDefinition {
 
 	@Override
 	public final MultizoneColors getColors(final int n) {
+		MultizoneColors colors;
+		if (mCycleColors == null) {
+			colors = getMovedColors(n);
+		}
+		else {
+			int index = n % mCycleLength;
+			if (mCycleColors[index] == null) {
+				mCycleColors[index] = new MultizoneColors.Exact(Arrays.asList(getMovedColors(index).getColors(mLight.getZoneCount())));
+			}
+			colors = mCycleColors[index];
+		}
+		return colors.withRelativeBrightness(getSelectedBrightness());
+	}
+
+	/**
+	 * Get the moved colors of a step, without selected brightness.
+	 *
+	 * @param n counter starting with 0
+	 * @return The moved colors.
+	 */
+	private MultizoneColors getMovedColors(final int n) {
 		switch (mDirection) {
 		case INWARD:
 		case OUTWARD:
-			return mColors.shift(mSgn * n).mirror().withRelativeBrightness(getSelectedBrightness());
+			return mColors.shift(mSgn * n).mirror();
 		case FORWARD:
 		case BACKWARD:
 		default:
-			return mColors.shift(mSgn * n).withRelativeBrightness(getSelectedBrightness());
+			return mColors.shift(mSgn * n);
+		}
+	}
+
+	/**
+	 * Get the number of steps after which the move repeats. Interpolated colors repeat with the period of their stretched rendering.
+	 * Other colors repeat after a multiple of their period, stretched by the stretch factor, as long as this is integral.
+	 *
+	 * @param colors    the initial colors.
+	 * @param zoneCount the number of zones.
+	 * @param stretch   the stretch factor.
+	 * @return The cycle length. 0 if the cycle cannot be determined or is too long for pre-rendering.
+	 */
+	private static int getCycleLength(final MultizoneColors colors, final int zoneCount, final double stretch) {
+		if (zoneCount <= 0 || stretch <= 0 || colors.isOff()) {
+			return 0;
+		}
+		int period;
+		if (colors instanceof MultizoneColors.Fixed) {
+			return 1;
+		}
+		else if (colors instanceof MultizoneColors.Interpolated) {
+			int cycleLength = ((MultizoneColors.Interpolated) colors).getStretchedPeriod(stretch, zoneCount);
+			return cycleLength <= MAX_CYCLE_LENGTH ? cycleLength : 0;
+		}
+		else if (colors instanceof MultizoneColors.Exact) {
+			period = ((MultizoneColors.Exact) colors).getColors().size();
+		}
+		else {
+			return 0;
+		}
+		if (period <= 0) {
+			return 0;
+		}
+		for (int factor = 1; factor * period * stretch <= MAX_CYCLE_LENGTH; factor++) {
+			double cycleLength = factor * period * stretch;
+			if (Math.abs(cycleLength - Math.round(cycleLength)) < EPSILON && Math.round(cycleLength) > 0) {
+				return (int) Math.round(cycleLength);
+			}
 		}
+		return 0;
 	}
 
 	/**
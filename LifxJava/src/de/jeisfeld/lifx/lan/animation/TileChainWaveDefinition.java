@@ -15,6 +15,10 @@ public class TileChainWaveDefinition implements AnimationDefinition {
 	 * The min difference between two calls. Set to 250 ms, meaning that there are at most 20 calls per second in case of 5 tiles.
 	 */
 	private static final int MIN_DURATION = 250;
+	/**
+	 * The number of steps rendered ahead. Kept small, as changes of the selected brightness are visible only after these steps.
+	 */
+	private static final int LOOK_AHEAD_FRAMES = 2;
 	/**
 	 * Factor for the center.
 	 */
@@ -123,6 +127,11 @@ public class TileChainWaveDefinition implements AnimationDefinition {
 		mSelectedBrightness = selectedBrightness;
 	}
 
+	@Override
+	public final int getLookAheadFrames() {
+		return LOOK_AHEAD_FRAMES;
+	}
+
 	@Override
 	public final TileChainColors getColors(final int n) {
 		return new TileChainWaveColors(mXCenter, mYCenter, mRadius, mRadiusFactor * n, mColors, mForm, getSelectedBrightness());
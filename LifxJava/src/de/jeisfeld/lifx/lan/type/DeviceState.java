@@ -0,0 +1,118 @@
+package de.jeisfeld.lifx.lan.type;
+
+/**
+ * Snapshot of the volatile state of a device, as retrieved at one point in time.
+ */
+public class DeviceState {
+	/**
+	 * The power. Null if not retrieved.
+	 */
+	private final Power mPower;
+	/**
+	 * The color. Null if not retrieved.
+	 */
+	private final Color mColor;
+	/**
+	 * The multizone colors. Null if not retrieved.
+	 */
+	private final MultizoneColors mMultizoneColors;
+	/**
+	 * The tile chain colors. Null if not retrieved.
+	 */
+	private final TileChainColors mTileChainColors;
+	/**
+	 * Flag indicating if the device answered at all.
+	 */
+	private final boolean mIsReachable;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param power           The power.
+	 * @param color           The color.
+	 * @param multizoneColors The multizone colors.
+	 * @param tileChainColors The tile chain colors.
+	 * @param isReachable     Flag indicating if the device answered at all.
+	 */
+	public DeviceState(final Power power, final Color color, final MultizoneColors multizoneColors, final TileChainColors tileChainColors,
+					   final boolean isReachable) {
+		mPower = power;
+		mColor = color;
+		mMultizoneColors = multizoneColors;
+		mTileChainColors = tileChainColors;
+		mIsReachable = isReachable;
+	}
+
+	@Override
+	public final String toString() {
+		return "[reachable:" + mIsReachable + ", power:" + mPower + ", color:" + mColor + ", zones:" + mMultizoneColors
+				+ ", tiles:" + mTileChainColors + "]";
+	}
+
+	/**
+	 * Get the power.
+	 *
+	 * @return the power. Null if not retrieved.
+	 */
+	public final Power getPower() {
+		return mPower;
+	}
+
+	/**
+	 * Get the color.
+	 *
+	 * @return the color. Null if not retrieved.
+	 */
+	public final Color getColor() {
+		return mColor;
+	}
+
+	/**
+	 * Get the multizone colors.
+	 *
+	 * @return the multizone colors. Null if not retrieved.
+	 */
+	public final MultizoneColors getMultizoneColors() {
+		return mMultizoneColors;
+	}
+
+	/**
+	 * Get the tile chain colors.
+	 *
+	 * @return the tile chain colors. Null if not retrieved.
+	 */
+	public final TileChainColors getTileChainColors() {
+		return mTileChainColors;
+	}
+
+	/**
+	 * Get the information if the device answered at least one request.
+	 *
+	 * @return true if reachable.
+	 */
+	public final boolean isReachable() {
+		return mIsReachable;
+	}
+
+	/**
+	 * The kinds of state which may be retrieved.
+	 */
+	public enum Kind {
+		/**
+		 * The power.
+		 */
+		POWER,
+		/**
+		 * The color (for lights).
+		 */
+		COLOR,
+		/**
+		 * The zone colors (for multizone lights).
+		 */
+		MULTIZONE_COLORS,
+		/**
+		 * The tile colors (for tile chains).
+		 */
+		TILE_CHAIN_COLORS
+	}
+}
@@ -17,6 +17,10 @@ public abstract class MultizoneColors implements Serializable {
 	 * The default serializable version id.
 	 */
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The precision of the approximation of stretch factors by fractions.
+	 */
+	private static final double STRETCH_PRECISION = 0.01;
 
 	/**
 	 * The colors used for switching the multizone device off.
@@ -444,7 +448,7 @@ public abstract class MultizoneColors implements Serializable {
 		public final MultizoneColors stretch(final double stretchFactor) {
 			MultizoneColors base = this;
 
-			int denominator = MultizoneColors.getDenominator(stretchFactor, 0.01); // MAGIC_NUMBER
+			int denominator = MultizoneColors.getDenominator(stretchFactor, STRETCH_PRECISION);
 			int numerator = (int) Math.round(stretchFactor * denominator);
 
 			return new MultizoneColors() {
@@ -460,6 +464,32 @@ public abstract class MultizoneColors implements Serializable {
 			};
 		}
 
+		/**
+		 * Get the number of zones after which the colors stretched by a certain factor repeat. This uses the same approximation of
+		 * the stretch factor by a fraction as the stretching itself.
+		 *
+		 * @param stretchFactor The stretch factor.
+		 * @param zoneCount     The number of zones.
+		 * @return The number of zones after which the stretched colors repeat. 0 if the stretch factor is not positive.
+		 */
+		public final int getStretchedPeriod(final double stretchFactor, final int zoneCount) {
+			if (stretchFactor <= 0 || zoneCount <= 0) {
+				return 0;
+			}
+			int denominator = MultizoneColors.getDenominator(stretchFactor, STRETCH_PRECISION);
+			int numerator = (int) Math.round(stretchFactor * denominator);
+			// Zone z is rendered from zone z * denominator of numerator * zoneCount interpolated zones.
+			int interpolatedZoneCount = numerator * zoneCount;
+			int gcd = denominator;
+			int other = interpolatedZoneCount;
+			while (other != 0) {
+				int remainder = gcd % other;
+				gcd = other;
+				other = remainder;
+			}
+			return interpolatedZoneCount / gcd;
+		}
+
 		/**
 		 * Redetect interpolated multizone colors from the device colors.
 		 *
@@ -434,12 +434,7 @@ public class Alarm {
 	 * @return The parent alarm.
 	 */
 	public Alarm getParent() {
-		for (int parentAlarmId : PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids)) {
-			if (PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_alarm_stop_sequence_id, parentAlarmId, -1) == getId()) {
-				return new Alarm(parentAlarmId);
-			}
-		}
-		return null;
+		return AlarmRegistry.getInstance().getParent(getId());
 	}
 
 	@NonNull
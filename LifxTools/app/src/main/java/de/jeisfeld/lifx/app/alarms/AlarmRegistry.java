@@ -8,8 +8,8 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import de.jeisfeld.lifx.app.R;
-import de.jeisfeld.lifx.app.alarms.Alarm.LightSteps;
 import de.jeisfeld.lifx.app.alarms.Alarm.Step;
+import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
 import de.jeisfeld.lifx.app.storedcolors.StoredColor;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.Device;
@@ -26,17 +26,81 @@ public final class AlarmRegistry {
 	 * The stored colors.
 	 */
 	private final SparseArray<Alarm> mAlarms = new SparseArray<>();
+	/**
+	 * The ids of the primary alarms in display order. This is the authoritative copy of the stored list.
+	 */
+	private final List<Integer> mAlarmIds;
 
 	/**
 	 * Create the color registry and retrieve stored entries.
 	 */
 	private AlarmRegistry() {
-		List<Integer> alarmIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids);
-		for (int alarmId : alarmIds) {
+		mAlarmIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids);
+		for (int alarmId : mAlarmIds) {
 			mAlarms.put(alarmId, new Alarm(alarmId));
 		}
 	}
 
+	/**
+	 * Get the ids of the alarms in display order.
+	 *
+	 * @return The ids of the alarms.
+	 */
+	public List<Integer> getAlarmIds() {
+		synchronized (mAlarmIds) {
+			return new ArrayList<>(mAlarmIds);
+		}
+	}
+
+	/**
+	 * Set the ids of the alarms, e.g. after change of display order. They are stored only if changed.
+	 *
+	 * @param alarmIds The ids of the alarms.
+	 */
+	public void setAlarmIds(final List<Integer> alarmIds) {
+		synchronized (mAlarmIds) {
+			if (!mAlarmIds.equals(alarmIds)) {
+				mAlarmIds.clear();
+				mAlarmIds.addAll(alarmIds);
+				PreferenceUtil.setSharedPreferenceIntList(R.string.key_alarm_ids, mAlarmIds);
+			}
+		}
+	}
+
+	/**
+	 * Get an alarm or stop sequence by its id.
+	 *
+	 * @param alarmId The alarm id.
+	 * @return The alarm. Null if not found.
+	 */
+	public Alarm getAlarm(final int alarmId) {
+		Alarm alarm = mAlarms.get(alarmId);
+		if (alarm == null) {
+			for (Alarm parent : getAlarms()) {
+				if (parent.getStopSequence() != null && parent.getStopSequence().getId() == alarmId) {
+					alarm = parent.getStopSequence();
+				}
+			}
+		}
+		return alarm;
+	}
+
+	/**
+	 * Get the parent alarm of a stop sequence.
+	 *
+	 * @param stopSequenceId The id of the stop sequence.
+	 * @return The parent alarm. Null if not found.
+	 */
+	protected Alarm getParent(final int stopSequenceId) {
+		for (int alarmId : PreferenceUtil.getIndicesWithIndexedSharedPreferenceInt(R.string.key_alarm_stop_sequence_id, stopSequenceId)) {
+			Alarm alarm = mAlarms.get(alarmId);
+			if (alarm != null) {
+				return alarm;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Get the list of alarms.
 	 *
@@ -44,7 +108,7 @@ public final class AlarmRegistry {
 	 */
 	public List<Alarm> getAlarms() {
 		List<Alarm> result = new ArrayList<>();
-		for (int alarmId : PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids)) {
+		for (int alarmId : getAlarmIds()) {
 			Alarm alarm = mAlarms.get(alarmId);
 			if (alarm != null) {
 				result.add(alarm);
@@ -81,15 +145,39 @@ public final class AlarmRegistry {
 	 * @return the stored alarm.
 	 */
 	protected Alarm addOrUpdate(final Alarm alarm) {
+		PreferenceUtil.beginBatch();
+		try {
+			Alarm result = addOrUpdateInBatch(alarm);
+			PreferenceUtil.setBatchSuccessful();
+			return result;
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Add or update an alarm in local store within a running batch.
+	 *
+	 * @param alarm the stored alarm.
+	 * @return the stored alarm.
+	 */
+	private Alarm addOrUpdateInBatch(final Alarm alarm) {
 		Alarm newAlarm = alarm.store();
 		if (newAlarm.getAlarmType().isPrimary()) {
 			mAlarms.put(newAlarm.getId(), newAlarm);
+			synchronized (mAlarmIds) {
+				if (!mAlarmIds.contains(newAlarm.getId())) {
+					// The id has already been appended to the stored list.
+					mAlarmIds.add(newAlarm.getId());
+				}
+			}
 		}
 		else {
 			Alarm parent = alarm.getParent();
 			if (parent != null) {
-				Alarm newParent = new Alarm(parent.getId(), parent.isActive(), parent.getStartTime(), parent.getWeekDays(), parent.getName(),
-						parent.getSteps(), parent.getAlarmType(), newAlarm, parent.isMaximizeVolume());
+				Alarm newParent = new Alarm(parent.getId(), parent.isActive(), parent.getStartTime(), parent.getWeekDays(),
+						parent.getName(), parent.getSteps(), parent.getAlarmType(), newAlarm, parent.isMaximizeVolume());
 				mAlarms.put(newParent.getId(), newParent);
 			}
 		}
@@ -102,21 +190,39 @@ public final class AlarmRegistry {
 	 * @param alarm The alarm to be deleted.
 	 */
 	protected void remove(final Alarm alarm) {
+		PreferenceUtil.beginBatch();
+		try {
+			removeInBatch(alarm);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Remove an alarm from local store within a running batch.
+	 *
+	 * @param alarm The alarm to be deleted.
+	 */
+	private void removeInBatch(final Alarm alarm) {
 		int alarmId = alarm.getId();
 		mAlarms.remove(alarmId);
 
 		if (alarm.getAlarmType().isPrimary()) {
 			// update list of alarms
-			List<Integer> alarmIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids);
-			alarmIds.remove((Integer) alarmId);
-			PreferenceUtil.setSharedPreferenceIntList(R.string.key_alarm_ids, alarmIds);
+			synchronized (mAlarmIds) {
+				mAlarmIds.remove((Integer) alarmId);
+				PreferenceUtil.setSharedPreferenceIntList(R.string.key_alarm_ids, mAlarmIds);
+			}
 		}
 		else {
 			// remove reference from parent
-			for (int parentAlarmId : PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids)) {
-				if (PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_alarm_stop_sequence_id, parentAlarmId, -1) == alarmId) {
-					PreferenceUtil.removeIndexedSharedPreference(R.string.key_alarm_stop_sequence_id, parentAlarmId);
-				}
+			Alarm parent = getParent(alarmId);
+			if (parent != null) {
+				PreferenceUtil.removeIndexedSharedPreference(R.string.key_alarm_stop_sequence_id, parent.getId());
+				mAlarms.put(parent.getId(), new Alarm(parent.getId(), parent.isActive(), parent.getStartTime(), parent.getWeekDays(),
+						parent.getName(), parent.getSteps(), parent.getAlarmType(), null, parent.isMaximizeVolume()));
 			}
 		}
 
@@ -144,6 +250,23 @@ public final class AlarmRegistry {
 	 * @param alarmId The alarmId from which to remove the step.
 	 */
 	protected void remove(final Step step, final int alarmId) {
+		PreferenceUtil.beginBatch();
+		try {
+			removeInBatch(step, alarmId);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Remove an alarm step from local store within a running batch.
+	 *
+	 * @param step    The alarm step to be deleted.
+	 * @param alarmId The alarmId from which to remove the step.
+	 */
+	private void removeInBatch(final Step step, final int alarmId) {
 		int stepId = step.getId();
 
 		List<Integer> stepIds = PreferenceUtil.getIndexedSharedPreferenceIntList(R.string.key_alarm_step_ids, alarmId);
@@ -172,21 +295,17 @@ public final class AlarmRegistry {
 	 * @return True if used by an alarm.
 	 */
 	public boolean isUsed(final StoredColor storedColor) {
-		for (Alarm alarm : getAlarms()) {
-			for (Step step : alarm.getSteps()) {
-				if (step.getStoredColor().equals(storedColor)) {
-					return true;
-				}
-			}
-			if (alarm.getStopSequence() != null) {
-				for (Step step : alarm.getStopSequence().getSteps()) {
-					if (step.getStoredColor().equals(storedColor)) {
-						return true;
-					}
-				}
-			}
-		}
-		return false;
+		return storedColor.getId() >= 0 && isUsedByStep(storedColor.getId());
+	}
+
+	/**
+	 * Check if a stored color id is used by an alarm step.
+	 *
+	 * @param storedColorId a stored color id.
+	 * @return True if used by an alarm step.
+	 */
+	private boolean isUsedByStep(final int storedColorId) {
+		return !PreferenceUtil.getIndicesWithIndexedSharedPreferenceInt(R.string.key_alarm_step_stored_color_id, storedColorId).isEmpty();
 	}
 
 	/**
@@ -196,21 +315,16 @@ public final class AlarmRegistry {
 	 * @return True if used by an alarm.
 	 */
 	public boolean isUsed(final Device device) {
-		for (Alarm alarm : getAlarms()) {
-			for (LightSteps lightSteps : alarm.getLightSteps()) {
-				if (lightSteps.getLight().equals(device)) {
-					return true;
-				}
-			}
-			if (alarm.getStopSequence() != null) {
-				for (LightSteps lightSteps : alarm.getStopSequence().getLightSteps()) {
-					if (lightSteps.getLight().equals(device)) {
-						return true;
-					}
-				}
-			}
+		Integer deviceId = (Integer) device.getParameter(DeviceRegistry.DEVICE_ID);
+		if (deviceId == null) {
+			return false;
+		}
+		// Steps switching off the device use the id of the off color.
+		boolean isUsed = isUsedByStep(-deviceId);
+		for (int storedColorId : PreferenceUtil.getIndicesWithIndexedSharedPreferenceInt(R.string.key_color_device_id, deviceId)) {
+			isUsed = isUsed || isUsedByStep(storedColorId);
 		}
-		return false;
+		return isUsed;
 	}
 
 	/**
@@ -27,7 +27,6 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.recyclerview.widget.RecyclerView;
 import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.util.DialogUtil;
-import de.jeisfeld.lifx.app.util.PreferenceUtil;
 
 /**
  * Adapter for the RecyclerView that allows to sort alarms.
@@ -59,7 +58,7 @@ public class AlarmsViewAdapter extends RecyclerView.Adapter<AlarmsViewAdapter.My
 	 */
 	public AlarmsViewAdapter(final Fragment fragment, final RecyclerView recyclerView) {
 		mAlarms = AlarmRegistry.getInstance().getAlarms();
-		mAlarmIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_alarm_ids);
+		mAlarmIds = AlarmRegistry.getInstance().getAlarmIds();
 		mFragment = new WeakReference<>(fragment);
 	}
 
@@ -194,7 +193,6 @@ public class AlarmsViewAdapter extends RecyclerView.Adapter<AlarmsViewAdapter.My
 				Collections.swap(mAlarmIds, i, i - 1);
 			}
 		}
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_alarm_ids, mAlarmIds);
 		notifyItemMoved(fromPosition, toPosition);
 	}
 
@@ -207,7 +205,8 @@ public class AlarmsViewAdapter extends RecyclerView.Adapter<AlarmsViewAdapter.My
 	@Override
 	public final void onRowClear(final MyViewHolder myViewHolder) {
 		myViewHolder.mRowView.setBackgroundColor(Color.TRANSPARENT);
-
+		// Store the order once at the end of dragging.
+		AlarmRegistry.getInstance().setAlarmIds(mAlarmIds);
 	}
 
 	/**
@@ -42,6 +42,7 @@ import de.jeisfeld.lifx.app.storedcolors.StoredMultizoneColors;
 import de.jeisfeld.lifx.app.storedcolors.StoredTileColors;
 import de.jeisfeld.lifx.app.util.ImageUtil;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
+import de.jeisfeld.lifx.lan.AnimationClock;
 import de.jeisfeld.lifx.lan.Light;
 import de.jeisfeld.lifx.lan.Light.AnimationCallback;
 import de.jeisfeld.lifx.lan.Light.BaseAnimationThread;
@@ -173,7 +174,10 @@ public class LifxAlarmService extends Service {
 		final String action = intent.getAction();
 		final int alarmId = intent.getIntExtra(AlarmReceiver.EXTRA_ALARM_ID, -1);
 		final Date alarmDate = (Date) intent.getSerializableExtra(AlarmReceiver.EXTRA_ALARM_TIME);
-		Alarm alarm = new Alarm(alarmId);
+		Alarm alarm = AlarmRegistry.getInstance().getAlarm(alarmId);
+		if (alarm == null) {
+			alarm = new Alarm(alarmId);
+		}
 		alarm = new Alarm(alarm.getId(), alarm.isActive(), alarmDate, alarm.getWeekDays(), alarm.getName(), alarm.getSteps(),
 				alarm.getAlarmType(), alarm.getStopSequence(), alarm.isMaximizeVolume());
 		Logger.info("LifxAlarmService start " + action + " - " + alarm.getName() + (alarmDate == null ? "" : " for " + alarmDate));
@@ -338,6 +342,11 @@ public class LifxAlarmService extends Service {
 			public boolean waitForPreviousAnimationEnd() {
 				return true;
 			}
+
+			@Override
+			public boolean isOffloadable() {
+				return true;
+			}
 		};
 
 		if (DeviceRegistry.getInstance().getRingtoneDummyLight().equals(light)) {
@@ -629,6 +638,26 @@ public class LifxAlarmService extends Service {
 		 * An exception callback called in case of SocketException.
 		 */
 		private AnimationCallback mAnimationCallback = null;
+		/**
+		 * The clock for the timing of the steps.
+		 */
+		private final AnimationClock mClock = new AnimationClock();
+		/**
+		 * The number of the current step.
+		 */
+		private int mCount = 0;
+		/**
+		 * The start time of the current step on the timeline of the clock. Null if the step did not yet start.
+		 */
+		private Long mStepStartTime = null;
+		/**
+		 * The planned start time of the next step, i.e. the planned end time of the current step.
+		 */
+		private Long mNextStepStartTime = null;
+		/**
+		 * The currently playing ringtone.
+		 */
+		private Ringtone mRingtone = null;
 
 		/**
 		 * Create an animation thread.
@@ -660,49 +689,64 @@ public class LifxAlarmService extends Service {
 			return this;
 		}
 
-		// OVERRIDABLE
 		@Override
-		public void run() {
-			int count = 0;
-			if (mDefinition.waitForPreviousAnimationEnd()) {
-				waitForPreviousAnimationEnd();
-			}
+		protected boolean waitForPreviousAnimation() {
+			return mDefinition.waitForPreviousAnimationEnd();
+		}
 
+		@Override
+		protected void onStart() {
 			if (mDefinition.maximizeVolume()) {
 				AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
 				if (audioManager != null) {
 					audioManager.setStreamVolume(AudioManager.STREAM_ALARM, audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM), 0);
 				}
 			}
+		}
 
-			boolean isInterrupted = false;
-			Ringtone ringtone = null;
-			try {
-				while (!isInterrupted() && mDefinition.getRingtone(count) != null) {
-					ringtone = mDefinition.getRingtone(count);
-					Date givenStartTime = mDefinition.getStartTime(count);
-					final long startTime = givenStartTime == null ? System.currentTimeMillis() : givenStartTime.getTime();
-					if (givenStartTime != null) {
-						long waitTime = givenStartTime.getTime() - System.currentTimeMillis();
-						if (waitTime > 0) {
-							Thread.sleep(waitTime);
-						}
-					}
-
-					ringtone.play();
-					int duration = Math.max(mDefinition.getDuration(count), 0);
-					Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-					ringtone.stop();
-					count++;
-				}
+		@Override
+		protected long animateFrame() {
+			if (mRingtone != null) {
+				mRingtone.stop();
+				mRingtone = null;
+				mCount++;
 			}
-			catch (InterruptedException e) {
-				isInterrupted = true;
-				if (ringtone != null) {
-					ringtone.stop();
+			Ringtone ringtone = mDefinition.getRingtone(mCount);
+			if (ringtone == null) {
+				return -1;
+			}
+			long now = mClock.now();
+			if (mStepStartTime == null) {
+				Date givenStartTime = mDefinition.getStartTime(mCount);
+				if (givenStartTime != null) {
+					mStepStartTime = mClock.toClockTime(givenStartTime);
 				}
+				else {
+					mStepStartTime = mNextStepStartTime == null ? now : mNextStepStartTime;
+				}
+				if (mStepStartTime > now) {
+					return mStepStartTime - now;
+				}
+			}
+			mRingtone = ringtone;
+			mRingtone.play();
+			int duration = Math.max(mDefinition.getDuration(mCount), 0);
+			mNextStepStartTime = mStepStartTime + duration;
+			mStepStartTime = null;
+			return Math.max(0, mNextStepStartTime - mClock.now());
+		}
+
+		@Override
+		protected long onEnd(final boolean isInterrupted) {
+			if (mRingtone != null) {
+				mRingtone.stop();
+				mRingtone = null;
 			}
+			return 0;
+		}
 
+		@Override
+		protected void onCompleted(final boolean isInterrupted) {
 			if (getAnimationCallback() != null) {
 				getAnimationCallback().onAnimationEnd(isInterrupted);
 			}
@@ -2,6 +2,7 @@ package de.jeisfeld.lifx.app.animation;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 
 import java.io.IOException;
@@ -106,6 +107,19 @@ public abstract class AnimationData implements Serializable {
 	 */
 	public abstract Drawable getBaseButtonDrawable(Context context, Light light, double relativeBrightness);
 
+	/**
+	 * Get the basic bitmap displayed as stored animation button, if it is rendered specifically for the button, so that it may be
+	 * cached.
+	 *
+	 * @param light              the light.
+	 * @param relativeBrightness the relative brightness.
+	 * @return A new bitmap. Null if the button is not displayed as rendered bitmap.
+	 */
+	// OVERRIDABLE
+	public Bitmap getBaseButtonBitmap(final Light light, final double relativeBrightness) {
+		return null;
+	}
+
 	/**
 	 * Get information if the animation is native and is already running.
 	 *
@@ -155,6 +169,11 @@ public abstract class AnimationData implements Serializable {
 			public void stopAnimation() {
 				// do nothing
 			}
+
+			@Override
+			public boolean isAnimationRunning() {
+				return false;
+			}
 		};
 	}
 
@@ -366,5 +385,12 @@ public abstract class AnimationData implements Serializable {
 		 * @throws IOException Connectivity issues.
 		 */
 		void stopAnimation() throws IOException;
+
+		/**
+		 * Verify on the device that the animation is still running.
+		 *
+		 * @return false if the device runs no longer this animation. In case of connectivity issues, true is returned.
+		 */
+		boolean isAnimationRunning();
 	}
 }
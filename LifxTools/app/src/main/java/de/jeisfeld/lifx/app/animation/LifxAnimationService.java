@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
@@ -27,10 +28,10 @@ import de.jeisfeld.lifx.app.home.HomeFragment;
 import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.Device;
+import de.jeisfeld.lifx.lan.LifxExecutor;
 import de.jeisfeld.lifx.lan.LifxLan;
 import de.jeisfeld.lifx.lan.Light;
 import de.jeisfeld.lifx.lan.Light.AnimationCallback;
-import de.jeisfeld.lifx.lan.Light.BaseAnimationThread;
 import de.jeisfeld.lifx.os.Logger;
 
 /**
@@ -57,6 +58,10 @@ public class LifxAnimationService extends Service {
 	 * Key for the device Label within the intent.
 	 */
 	public static final String EXTRA_DEVICE_LABEL = "de.jeisfeld.lifx.DEVICE_LABEL";
+	/**
+	 * The duration in millis of the crossfade when switching from one animation to another.
+	 */
+	private static final int CROSSFADE_DURATION = 500;
 	/**
 	 * Map from MACs to Lights for all lights with running animations.
 	 */
@@ -109,7 +114,7 @@ public class LifxAnimationService extends Service {
 
 		startNotification();
 
-		getDeviceAnimationThread(mac, animationData).start();
+		LifxExecutor.execute(getDeviceAnimationStarter(mac, animationData));
 
 		return START_STICKY;
 	}
@@ -125,14 +130,14 @@ public class LifxAnimationService extends Service {
 	}
 
 	/**
-	 * Get a device animation thread.
+	 * Get a task starting a device animation.
 	 *
 	 * @param mac           The device MAC.
 	 * @param animationData The animation data.
-	 * @return The animation thread.
+	 * @return The task starting the animation.
 	 */
-	private Thread getDeviceAnimationThread(final String mac, final AnimationData animationData) {
-		return new Thread() {
+	private Runnable getDeviceAnimationStarter(final String mac, final AnimationData animationData) {
+		return new Runnable() {
 			@Override
 			public void run() {
 				if (!animationData.isValid()) {
@@ -140,6 +145,7 @@ public class LifxAnimationService extends Service {
 					return;
 				}
 				final Light light;
+				final CompletableFuture<Boolean> previousAnimationEnd;
 				synchronized (ANIMATED_LIGHTS) {
 					Light tmpLight = ANIMATED_LIGHTS.get(mac);
 					if (tmpLight == null) {
@@ -157,81 +163,60 @@ public class LifxAnimationService extends Service {
 						// Repeating notification, just in case it has been stopped right now
 						startNotification();
 						ANIMATED_LIGHT_DATA.put(mac, animationDataList);
+						previousAnimationEnd = CompletableFuture.completedFuture(false);
 					}
 					else {
 						List<AnimationData> animationDataList = ANIMATED_LIGHT_DATA.get(mac);
 						animationDataList.add(animationData);
-						tmpLight.endAnimation(false);
-						try {
-							// ideally, wait with new animation until old animation has ended
-							//noinspection SynchronizationOnLocalVariableOrMethodParameter
-							synchronized (animationDataList) {
-								animationDataList.wait(2000); // MAGIC_NUMBER
-							}
+						if (animationData.hasNativeImplementation(tmpLight)) {
+							previousAnimationEnd = tmpLight.getAnimationEnd();
+							tmpLight.endAnimation(false);
 						}
-						catch (InterruptedException e) {
-							// ignore
+						else {
+							// The animation queue of the light ends the running animation and hands over from it.
+							previousAnimationEnd = CompletableFuture.completedFuture(false);
 						}
 					}
 					light = tmpLight;
 				}
-				final WakeLock wakeLock = acquireWakelock(light);
+				// Start the new animation when the old animation has ended, without blocking a thread while waiting.
+				previousAnimationEnd.thenRun(() -> LifxExecutor.execute(() -> startAnimation(mac, light, animationData)));
+			}
+		};
+	}
 
-				if (animationData.hasNativeImplementation(light)) {
-					new BaseAnimationThread(light) {
+	/**
+	 * Start the animation on a device.
+	 *
+	 * @param mac           The device MAC.
+	 * @param light         The light.
+	 * @param animationData The animation data.
+	 */
+	private void startAnimation(final String mac, final Light light, final AnimationData animationData) {
+		if (animationData.hasNativeImplementation(light)) {
+			// The firmware runs the effect, so no wakelock is required.
+			NativeEffectSupervisor.startEffect(light, animationData, () -> {
+				List<AnimationData> animationDataList = ANIMATED_LIGHT_DATA.get(mac);
+				return animationDataList != null && animationDataList.size() >= 2
+						&& animationDataList.get(0).hasNativeImplementation(light)
+						&& animationDataList.get(1).hasNativeImplementation(light);
+			}, () -> updateOnEndAnimation(light.getTargetAddress(), null, animationData));
+		}
+		else {
+			final WakeLock wakeLock = acquireWakelock(light);
+			light.getAnimationQueue().play(light.animation(animationData.getAnimationDefinition(light))
+					.setAnimationCallback(new AnimationCallback() {
 						@Override
-						public void run() {
-							if (!animationData.isRunning()) {
-								try {
-									animationData.getNativeAnimationDefinition(light).startAnimation();
-								}
-								catch (IOException e) {
-									updateOnEndAnimation(light.getTargetAddress(), wakeLock, animationData);
-								}
-							}
-							while (true) {
-								try {
-									//noinspection BusyWait
-									Thread.sleep(60000); // MAGIC_NUMBER
-								}
-								catch (InterruptedException e) {
-									try {
-										List<AnimationData> animationDataList = ANIMATED_LIGHT_DATA.get(mac);
-										if (animationDataList == null || animationDataList.size() < 2
-												|| !animationDataList.get(0).hasNativeImplementation(light)
-												|| !animationDataList.get(1).hasNativeImplementation(light)) {
-											// If there is another native animation in the queue, do not sent OFF
-											// as setEffect will not work shortly after OFF
-											animationData.getNativeAnimationDefinition(light).stopAnimation();
-										}
-									}
-									catch (IOException ex) {
-										// ignore
-									}
-									updateOnEndAnimation(light.getTargetAddress(), wakeLock, animationData);
-									return;
-								}
-							}
+						public void onException(final IOException e) {
+							updateOnEndAnimation(light.getTargetAddress(), wakeLock, animationData);
 						}
-					}.start();
-				}
-				else {
-					light.animation(animationData.getAnimationDefinition(light))
-							.setAnimationCallback(new AnimationCallback() {
-								@Override
-								public void onException(final IOException e) {
-									updateOnEndAnimation(light.getTargetAddress(), wakeLock, animationData);
-								}
 
-								@Override
-								public void onAnimationEnd(final boolean isInterrupted) {
-									updateOnEndAnimation(light.getTargetAddress(), wakeLock, animationData);
-								}
-							})
-							.start();
-				}
-			}
-		};
+						@Override
+						public void onAnimationEnd(final boolean isInterrupted) {
+							updateOnEndAnimation(light.getTargetAddress(), wakeLock, animationData);
+						}
+					}), CROSSFADE_DURATION);
+		}
 	}
 
 	/**
@@ -309,17 +294,8 @@ public class LifxAnimationService extends Service {
 		}
 		final String label = ANIMATED_LIGHT_LABELS.get(mac);
 
-		List<AnimationData> animationDataList = ANIMATED_LIGHT_DATA.get(mac);
-		if (animationDataList != null) {
-			//noinspection SynchronizationOnLocalVariableOrMethodParameter
-			synchronized (animationDataList) {
-				// Notify animation that is waiting for this one to finish
-				animationDataList.notifyAll();
-			}
-		}
-
 		synchronized (ANIMATED_LIGHTS) {
-			animationDataList = ANIMATED_LIGHT_DATA.get(mac);
+			List<AnimationData> animationDataList = ANIMATED_LIGHT_DATA.get(mac);
 			if (animationDataList == null) {
 				animationDataList = new ArrayList<>();
 			}
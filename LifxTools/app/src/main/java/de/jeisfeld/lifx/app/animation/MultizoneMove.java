@@ -18,6 +18,7 @@ import de.jeisfeld.lifx.lan.animation.MultizoneMoveDefinition.Direction;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
 import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
 import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo.Move;
+import de.jeisfeld.lifx.lan.type.MultizoneEffectType;
 
 /**
  * Animation data for moving colors on a multizone device.
@@ -149,6 +150,12 @@ public class MultizoneMove extends AnimationData {
 			public void stopAnimation() throws IOException {
 				multiZoneLight.setEffect(MultizoneEffectInfo.OFF);
 			}
+
+			@Override
+			public boolean isAnimationRunning() {
+				MultizoneEffectInfo effectInfo = multiZoneLight.getEffectInfo();
+				return effectInfo == null || MultizoneEffectType.MOVE == effectInfo.getType();
+			}
 		};
 	}
 
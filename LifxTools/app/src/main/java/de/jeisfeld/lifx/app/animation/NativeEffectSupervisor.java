@@ -0,0 +1,130 @@
+package de.jeisfeld.lifx.app.animation;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
+import de.jeisfeld.lifx.app.animation.AnimationData.NativeAnimationDefinition;
+import de.jeisfeld.lifx.lan.Light;
+import de.jeisfeld.lifx.lan.Light.BaseAnimationThread;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Supervisor of the effects running natively in the firmware of lights. Each running effect is registered as animation of its light
+ * and verified periodically on the shared AnimationScheduler, so that neither a thread nor a wakelock is held while the firmware runs
+ * the effect. Effects which are no longer running on the device (e.g. changed by another app) are ended.
+ */
+final class NativeEffectSupervisor {
+	/**
+	 * The interval in millis for verifying that the effects are still running.
+	 */
+	private static final long VERIFICATION_INTERVAL = 60000;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private NativeEffectSupervisor() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Start a native effect and supervise it.
+	 *
+	 * @param light                    The light.
+	 * @param animationData            The animation data.
+	 * @param isFollowedByNativeEffect Supplier telling if another native effect is queued for the light, so that the effect is not stopped.
+	 * @param onEnd                    Action done after the end of the effect.
+	 */
+	static void startEffect(final Light light, final AnimationData animationData, final BooleanSupplier isFollowedByNativeEffect,
+			final Runnable onEnd) {
+		new NativeEffectThread(light, animationData, isFollowedByNativeEffect, onEnd).start();
+	}
+
+	/**
+	 * The animation registered on the light while the native effect runs. Its frames only verify that the effect is still running.
+	 */
+	private static final class NativeEffectThread extends BaseAnimationThread {
+		/**
+		 * The animation data.
+		 */
+		private final AnimationData mAnimationData;
+		/**
+		 * The native definition of the effect.
+		 */
+		private final NativeAnimationDefinition mNativeDefinition;
+		/**
+		 * Supplier telling if another native effect is queued for the light.
+		 */
+		private final BooleanSupplier mIsFollowedByNativeEffect;
+		/**
+		 * Action done after the end of the effect.
+		 */
+		private final Runnable mOnEnd;
+		/**
+		 * Flag indicating if starting the effect failed.
+		 */
+		private boolean mIsFailed = false;
+		/**
+		 * Flag indicating if the effect is already verified once.
+		 */
+		private boolean mIsStarted = false;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param light                    The light.
+		 * @param animationData            The animation data.
+		 * @param isFollowedByNativeEffect Supplier telling if another native effect is queued for the light.
+		 * @param onEnd                    Action done after the end of the effect.
+		 */
+		private NativeEffectThread(final Light light, final AnimationData animationData, final BooleanSupplier isFollowedByNativeEffect,
+				final Runnable onEnd) {
+			super(light);
+			mAnimationData = animationData;
+			mNativeDefinition = animationData.getNativeAnimationDefinition(light);
+			mIsFollowedByNativeEffect = isFollowedByNativeEffect;
+			mOnEnd = onEnd;
+		}
+
+		@Override
+		protected void onStart() {
+			if (!mAnimationData.isRunning()) {
+				try {
+					mNativeDefinition.startAnimation();
+				}
+				catch (IOException e) {
+					Logger.connectionError(getLight(), "StartEffect", e);
+					mIsFailed = true;
+				}
+			}
+		}
+
+		@Override
+		protected long animateFrame() {
+			if (mIsFailed) {
+				return -1;
+			}
+			if (mIsStarted && !mNativeDefinition.isAnimationRunning()) {
+				Logger.info("Native effect no longer running on " + getLight().getLabel());
+				return -1;
+			}
+			mIsStarted = true;
+			return VERIFICATION_INTERVAL;
+		}
+
+		@Override
+		protected long onEnd(final boolean isInterrupted) {
+			// If the effect ended on the device, or if there is another native effect in the queue, do not send OFF,
+			// as setEffect will not work shortly after OFF.
+			if (isInterrupted && !mIsFollowedByNativeEffect.getAsBoolean()) {
+				try {
+					mNativeDefinition.stopAnimation();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+			mOnEnd.run();
+			return 0;
+		}
+	}
+}
@@ -142,6 +142,12 @@ public class TileChainClouds extends AnimationData {
 					tileChain.setEffect(TileEffectInfo.OFF);
 				}
 			}
+
+			@Override
+			public boolean isAnimationRunning() {
+				TileEffectInfo effectInfo = tileChain.getEffectInfo();
+				return effectInfo == null || TileEffectType.CLOUDS == effectInfo.getType();
+			}
 		};
 	}
 
@@ -122,6 +122,12 @@ public class TileChainFlame extends AnimationData {
 					tileChain.setEffect(TileEffectInfo.OFF);
 				}
 			}
+
+			@Override
+			public boolean isAnimationRunning() {
+				TileEffectInfo effectInfo = tileChain.getEffectInfo();
+				return effectInfo == null || TileEffectType.FLAME == effectInfo.getType();
+			}
 		};
 	}
 
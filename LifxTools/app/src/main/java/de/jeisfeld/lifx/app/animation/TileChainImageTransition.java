@@ -2,12 +2,15 @@ package de.jeisfeld.lifx.app.animation;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
@@ -42,6 +45,10 @@ public class TileChainImageTransition extends AnimationData {
 	 * flag telling if brightness should be adjusted.
 	 */
 	private final boolean mAdjustBrightness;
+	/**
+	 * The compiled regex. It is compiled on first use, as it is not serialized.
+	 */
+	private transient Pattern mColorPattern = null;
 
 	/**
 	 * Constructor.
@@ -89,26 +96,31 @@ public class TileChainImageTransition extends AnimationData {
 	@Override
 	protected final AnimationDefinition getAnimationDefinition(final Light light) {
 		final TileChain tileChain = (TileChain) light;
-		final Integer deviceId = (Integer) light.getParameter(DeviceRegistry.DEVICE_ID);
 		final Random random = new Random();
-		final List<StoredColor> storedColorsList = ColorRegistry.getInstance().getStoredColors(deviceId).stream()
-				.filter(storedColor -> storedColor.getName().matches(mColorRegex)).collect(Collectors.toList());
+		final List<TileChainColors> colorsList = getMatchingColors((Integer) light.getParameter(DeviceRegistry.DEVICE_ID));
+		// The maximum brightness of each image is fixed during the animation.
+		final double[] maxBrightnesses = new double[colorsList.size()];
+		if (mAdjustBrightness) {
+			for (int i = 0; i < colorsList.size(); i++) {
+				maxBrightnesses[i] = TypeUtil.toDouble((short) colorsList.get(i).getMaxBrightness(tileChain));
+			}
+		}
 
 		return new TileChain.AnimationDefinition() {
 			@Override
 			public TileChainColors getColors(final int n) {
-				if (storedColorsList.size() == 0) {
+				if (colorsList.size() == 0) {
 					return null;
 				}
 				else {
-					StoredColor storedColor = storedColorsList.get(random.nextInt(storedColorsList.size()));
-					TileChainColors colors = ((StoredTileColors) storedColor).getColors();
+					int index = random.nextInt(colorsList.size());
+					TileChainColors colors = colorsList.get(index);
 					if (mAdjustBrightness) {
-						double maxBrightness = TypeUtil.toDouble((short) colors.getMaxBrightness(tileChain));
-						if (maxBrightness == 0) {
+						if (maxBrightnesses[index] == 0) {
 							return TileChainColors.OFF;
 						}
-						return colors.withRelativeBrightness(getSelectedBrightness(tileChain) / maxBrightness).withMinBrightness((short) 1);
+						return colors.withRelativeBrightness(getSelectedBrightness(tileChain) / maxBrightnesses[index])
+								.withMinBrightness((short) 1);
 					}
 					else {
 						return colors.withRelativeBrightness(getSelectedBrightness(tileChain)).withMinBrightness((short) 1);
@@ -125,13 +137,38 @@ public class TileChainImageTransition extends AnimationData {
 
 	@Override
 	public final Drawable getBaseButtonDrawable(final Context context, final Light light, final double relativeBrightness) {
-		final List<StoredColor> storedColorsList = ColorRegistry.getInstance().getStoredColors((int) light.getParameter(DeviceRegistry.DEVICE_ID))
-				.stream().filter(storedColor -> storedColor.getName().matches(mColorRegex)).collect(Collectors.toList());
-		if (storedColorsList.size() == 0) {
+		final List<TileChainColors> colorsList = getMatchingColors((Integer) light.getParameter(DeviceRegistry.DEVICE_ID));
+		if (colorsList.size() == 0) {
 			return new GradientDrawable();
 		}
 		else {
-			return StoredTileColors.getTileChainDrawable((TileChain) light, ((StoredTileColors) storedColorsList.get(0)).getColors());
+			return StoredTileColors.getTileChainDrawable((TileChain) light, colorsList.get(0));
+		}
+	}
+
+	@Override
+	public final Bitmap getBaseButtonBitmap(final Light light, final double relativeBrightness) {
+		final List<TileChainColors> colorsList = getMatchingColors((Integer) light.getParameter(DeviceRegistry.DEVICE_ID));
+		return colorsList.size() == 0 ? null : StoredTileColors.getTileChainBitmap((TileChain) light, colorsList.get(0));
+	}
+
+	/**
+	 * Get the colors of the stored tile colors of a device whose name matches the color regex.
+	 *
+	 * @param deviceId The device id.
+	 * @return The matching colors in display order.
+	 */
+	private List<TileChainColors> getMatchingColors(final int deviceId) {
+		if (mColorPattern == null) {
+			mColorPattern = Pattern.compile(mColorRegex);
+		}
+		Matcher matcher = mColorPattern.matcher("");
+		List<TileChainColors> colorsList = new ArrayList<>();
+		for (StoredColor storedColor : ColorRegistry.getInstance().getStoredColors(deviceId)) {
+			if (storedColor instanceof StoredTileColors && matcher.reset(storedColor.getName()).matches()) {
+				colorsList.add(((StoredTileColors) storedColor).getColors());
+			}
 		}
+		return colorsList;
 	}
 }
@@ -132,6 +132,12 @@ public class TileChainMorph extends AnimationData {
 					tileChain.setEffect(TileEffectInfo.OFF);
 				}
 			}
+
+			@Override
+			public boolean isAnimationRunning() {
+				TileEffectInfo effectInfo = tileChain.getEffectInfo();
+				return effectInfo == null || TileEffectType.MORPH == effectInfo.getType();
+			}
 		};
 	}
 
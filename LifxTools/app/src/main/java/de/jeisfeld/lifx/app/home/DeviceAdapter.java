@@ -109,6 +109,10 @@ public class DeviceAdapter extends BaseAdapter {
 	 * A store for the views.
 	 */
 	private final List<View> mViews = new ArrayList<>();
+	/**
+	 * The coordinator of refreshes.
+	 */
+	private final RefreshCoordinator mRefreshCoordinator = new RefreshCoordinator();
 	/**
 	 * The current tile view model - used as temporary storage for callback handling.
 	 */
@@ -198,9 +202,22 @@ public class DeviceAdapter extends BaseAdapter {
 	 * @param isHighPriority flag indicating if this is high priority refresh.
 	 */
 	protected void refresh(final boolean isHighPriority) {
-		for (MainViewModel model : mViewModels) {
-			model.refresh(isHighPriority);
+		refresh(0, mViewModels.size() - 1, isHighPriority);
+	}
+
+	/**
+	 * Refresh view data for the devices in a range of positions, e.g. the visible ones.
+	 *
+	 * @param firstPosition  The first position.
+	 * @param lastPosition   The last position.
+	 * @param isHighPriority flag indicating if this is high priority refresh.
+	 */
+	protected void refresh(final int firstPosition, final int lastPosition, final boolean isHighPriority) {
+		List<MainViewModel> models = new ArrayList<>();
+		for (int position = Math.max(0, firstPosition); position <= lastPosition && position < mViewModels.size(); position++) {
+			models.add(mViewModels.get(position));
 		}
+		mRefreshCoordinator.refresh(models, isHighPriority);
 	}
 
 	/**
@@ -439,7 +456,7 @@ public class DeviceAdapter extends BaseAdapter {
 	 */
 	private void updateColor(final MainViewModel model, final Color color) {
 		if (model instanceof LightViewModel) {
-			((LightViewModel) model).updateColor(color, true);
+			((LightViewModel) model).previewColor(color);
 		}
 		else if (model instanceof GroupViewModel) {
 			((GroupViewModel) model).updateColor(color);
@@ -0,0 +1,231 @@
+package de.jeisfeld.lifx.app.home;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.jeisfeld.lifx.lan.Device;
+
+/**
+ * Serial queue of commands to one device or group. At most one command runs at a time. Of the commands waiting, only the latest one
+ * is kept, and earlier ones are cancelled, so that e.g. dragging a color picker sends at most one color at a time and does not build
+ * up a backlog. The commands of all queues run on a bounded shared executor, and each command is bounded by the retry policy of its
+ * requests. After a failed command, the queue backs off exponentially before starting the next command, so that an unreachable
+ * device does not keep threads of the shared executor busy, and the commands of other queues still run.
+ */
+public final class DeviceCommandQueue {
+	/**
+	 * The number of commands run in parallel.
+	 */
+	private static final int THREAD_COUNT = 4;
+	/**
+	 * The time after which idle threads end.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 10;
+	/**
+	 * The executor for the commands.
+	 */
+	private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+	/**
+	 * The backoff after the first failed command.
+	 */
+	private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+	/**
+	 * The maximum backoff.
+	 */
+	private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(16);
+	/**
+	 * The maximum exponent of the backoff, avoiding overflow.
+	 */
+	private static final int MAX_BACKOFF_EXPONENT = 10;
+	/**
+	 * The handler for posting results to the UI thread.
+	 */
+	private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+	/**
+	 * The queues by device or group key.
+	 */
+	private static final Map<String, DeviceCommandQueue> QUEUES = new HashMap<>();
+
+	/**
+	 * The running command. Null if idle.
+	 */
+	private Command<?> mRunningCommand = null;
+	/**
+	 * The waiting command. Null if none.
+	 */
+	private Command<?> mWaitingCommand = null;
+	/**
+	 * The number of subsequent failed commands.
+	 */
+	private int mFailureCount = 0;
+	/**
+	 * The earliest time for starting the next command, in uptime millis.
+	 */
+	private long mBackoffEndTime = 0;
+	/**
+	 * Flag indicating if the start of the waiting command is posted for the end of the backoff.
+	 */
+	private boolean mIsStartPosted = false;
+
+	/**
+	 * Constructor.
+	 */
+	private DeviceCommandQueue() {
+	}
+
+	/**
+	 * Get the command queue of a device.
+	 *
+	 * @param device The device.
+	 * @return The command queue.
+	 */
+	public static DeviceCommandQueue forDevice(final Device device) {
+		return getQueue("device/" + device.getTargetAddress());
+	}
+
+	/**
+	 * Get the command queue of a group.
+	 *
+	 * @param groupId The group id.
+	 * @return The command queue.
+	 */
+	public static DeviceCommandQueue forGroup(final int groupId) {
+		return getQueue("group/" + groupId);
+	}
+
+	/**
+	 * Get a command queue, creating it if required.
+	 *
+	 * @param key The key of the device or group.
+	 * @return The command queue.
+	 */
+	private static synchronized DeviceCommandQueue getQueue(final String key) {
+		return QUEUES.computeIfAbsent(key, k -> new DeviceCommandQueue());
+	}
+
+	/**
+	 * Create the executor for the commands.
+	 *
+	 * @return The executor.
+	 */
+	private static ThreadPoolExecutor createExecutor() {
+		ThreadPoolExecutor executor =
+				new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Submit a command. It is run as soon as the running command is finished and the backoff after failures is over, unless
+	 * superseded by a later command.
+	 *
+	 * @param command The command.
+	 */
+	public synchronized void submit(final Command<?> command) {
+		// A command still waiting is superseded.
+		mWaitingCommand = command;
+		startWaitingCommand();
+	}
+
+	/**
+	 * Start the waiting command, if no command is running and the backoff is over. Within the backoff, the start is posted for its
+	 * end.
+	 */
+	private synchronized void startWaitingCommand() {
+		if (mRunningCommand != null || mWaitingCommand == null || mIsStartPosted) {
+			return;
+		}
+		long delay = mBackoffEndTime - SystemClock.uptimeMillis();
+		if (delay > 0) {
+			mIsStartPosted = true;
+			HANDLER.postDelayed(() -> {
+				synchronized (this) {
+					mIsStartPosted = false;
+					startWaitingCommand();
+				}
+			}, delay);
+			return;
+		}
+		Command<?> command = mWaitingCommand;
+		mWaitingCommand = null;
+		mRunningCommand = command;
+		EXECUTOR.execute(() -> {
+			try {
+				command.execute();
+			}
+			finally {
+				onFinished(command);
+			}
+		});
+	}
+
+	/**
+	 * Update the backoff after a command has finished, and start the waiting command.
+	 *
+	 * @param finishedCommand The finished command.
+	 */
+	private synchronized void onFinished(final Command<?> finishedCommand) {
+		mRunningCommand = null;
+		if (finishedCommand.mIsFailed) {
+			mFailureCount++;
+			mBackoffEndTime = SystemClock.uptimeMillis()
+					+ Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(mFailureCount - 1, MAX_BACKOFF_EXPONENT));
+		}
+		else {
+			mFailureCount = 0;
+			mBackoffEndTime = 0;
+		}
+		startWaitingCommand();
+	}
+
+	/**
+	 * A command to a device.
+	 *
+	 * @param <T> The type of the result.
+	 */
+	public abstract static class Command<T> {
+		/**
+		 * Flag indicating if the command failed.
+		 */
+		private volatile boolean mIsFailed = false;
+
+		/**
+		 * Send the command to the device. Called in background.
+		 *
+		 * @return The result.
+		 */
+		protected abstract T doInBackground();
+
+		/**
+		 * Handle the result. Called on the UI thread.
+		 *
+		 * @param result The result.
+		 */
+		// OVERRIDABLE
+		protected void onPostExecute(final T result) {
+			// do nothing by default
+		}
+
+		/**
+		 * Mark the command as failed, e.g. as the device did not respond. Called in background.
+		 */
+		protected final void setFailed() {
+			mIsFailed = true;
+		}
+
+		/**
+		 * Run the command and post the result.
+		 */
+		private void execute() {
+			final T result = doInBackground();
+			HANDLER.post(() -> onPostExecute(result));
+		}
+	}
+}
@@ -6,11 +6,15 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import de.jeisfeld.lifx.app.Application;
 import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.Device;
+import de.jeisfeld.lifx.lan.type.DeviceState;
 import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.util.TypeUtil;
 
@@ -53,15 +57,27 @@ public class DeviceViewModel extends MainViewModel {
 	}
 
 	@Override
-	protected final void refresh(final boolean isHighPriority) {
-		if (isRefreshPowerAllowed()) {
-			if (mPower.getValue() == null) {
-				new RefreshAfterCheckReachabilityTask(this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-			}
-			else {
-				refreshRemoteData(true, isHighPriority || isRefreshColorsAllowed());
-			}
+	protected final List<Device> getRefreshDevices(final boolean isHighPriority) {
+		return isRefreshPowerAllowed() ? Collections.singletonList(mDevice) : Collections.emptyList();
+	}
+
+	@Override
+	protected final boolean refresh(final boolean isHighPriority, final Map<String, DeviceState> states) {
+		DeviceState state = states.get(mDevice.getTargetAddress());
+		if (state == null) {
+			return true;
+		}
+		boolean isOffline = mPower.getValue() == null;
+		boolean checkColors = (isHighPriority && !isOffline) || isRefreshColorsAllowed();
+		Power power = state.getPower();
+		updatePowerButton(power);
+		if (power == null) {
+			return false;
+		}
+		if (checkColors) {
+			updateColorsFromState(state);
 		}
+		return true;
 	}
 
 	@Override
@@ -79,6 +95,24 @@ public class DeviceViewModel extends MainViewModel {
 		return true;
 	}
 
+	/**
+	 * Check the colors of the device. This is a blocking call, to be done in background.
+	 */
+	// OVERRIDABLE
+	protected void checkColorNow() {
+		// to be overridden in subclasses
+	}
+
+	/**
+	 * Update the colors after a refresh. This is a blocking call, to be done in background.
+	 *
+	 * @param state The retrieved state of the device.
+	 */
+	// OVERRIDABLE
+	protected void updateColorsFromState(final DeviceState state) {
+		checkColorNow();
+	}
+
 	/**
 	 * Check if refresh of power is allowed.
 	 *
@@ -154,46 +188,6 @@ public class DeviceViewModel extends MainViewModel {
 		}
 	}
 
-	/**
-	 * An async task for first checking reachability and in case device is reachable do refresh.
-	 */
-	private static final class RefreshAfterCheckReachabilityTask extends AsyncTask<String, String, Boolean> {
-		/**
-		 * A weak reference to the underlying model.
-		 */
-		private final WeakReference<DeviceViewModel> mModel;
-
-		/**
-		 * Constructor.
-		 *
-		 * @param model The underlying model.
-		 */
-		@SuppressWarnings("deprecation")
-		private RefreshAfterCheckReachabilityTask(final DeviceViewModel model) {
-			mModel = new WeakReference<>(model);
-		}
-
-		@Override
-		protected Boolean doInBackground(final String... strings) {
-			DeviceViewModel model = mModel.get();
-			if (model == null) {
-				return false;
-			}
-			return model.mDevice.isReachable();
-		}
-
-		@Override
-		protected void onPostExecute(final Boolean isReachable) {
-			DeviceViewModel model = mModel.get();
-			if (model == null) {
-				return;
-			}
-			if (isReachable) {
-				model.refreshRemoteData(true, model.isRefreshColorsAllowed());
-			}
-		}
-	}
-
 	/**
 	 * An async task for toggling the power.
 	 */
@@ -7,8 +7,7 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -21,8 +20,10 @@ import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.Device;
 import de.jeisfeld.lifx.lan.Group;
+import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
 import de.jeisfeld.lifx.lan.Light;
 import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.DeviceState;
 import de.jeisfeld.lifx.lan.type.Power;
 
 /**
@@ -41,10 +42,6 @@ public class GroupViewModel extends MainViewModel {
 	 * The stored Color of the group.
 	 */
 	private final MutableLiveData<Color> mColor;
-	/**
-	 * A storage to keep track on running setColor tasks.
-	 */
-	protected final Map<Device, List<AsyncExecutable>> mRunningSetColorTasks = new HashMap<>(); // SUPPRESS_CHECKSTYLE
 	/**
 	 * The device adapter referring this model.
 	 */
@@ -100,10 +97,49 @@ public class GroupViewModel extends MainViewModel {
 	}
 
 	@Override
-	protected final void refresh(final boolean isHighPriority) {
+	protected final List<Device> getRefreshDevices(final boolean isHighPriority) {
+		return isHighPriority ? DeviceRegistry.getInstance().getDevices(mGroupId, false) : Collections.emptyList();
+	}
+
+	@Override
+	protected final boolean refresh(final boolean isHighPriority, final Map<String, DeviceState> states) {
 		if (isHighPriority) {
-			checkPower();
+			Power result = Power.UNDEFINED;
+			for (Device device : DeviceRegistry.getInstance().getDevices(mGroupId, false)) {
+				DeviceState state = states.get(device.getTargetAddress());
+				Power devicePower = state == null ? null : state.getPower();
+				if (devicePower != null && devicePower.isOn()) {
+					result = Power.ON;
+				}
+				else if (devicePower != null && devicePower.isOff() && result != Power.ON) {
+					result = Power.OFF;
+				}
+			}
+			updatePowerButton(result);
 		}
+		return true;
+	}
+
+	/**
+	 * Check the power of the devices of the group. This is a blocking call, to be done in background.
+	 *
+	 * @return ON if some device is on, OFF if some device is off and none is on, UNDEFINED otherwise.
+	 */
+	private Power checkPowerNow() {
+		Power result = Power.UNDEFINED;
+		for (Device device : DeviceRegistry.getInstance().getDevices(mGroupId, false)) {
+			Power devicePower = device.getPower();
+			if (devicePower != null) {
+				if (devicePower.isOn()) {
+					return Power.ON;
+				}
+				else if (devicePower.isOff()) {
+					result = Power.OFF;
+					updatePowerButton(Power.OFF);
+				}
+			}
+		}
+		return result;
 	}
 
 	@Override
@@ -120,21 +156,7 @@ public class GroupViewModel extends MainViewModel {
 
 	@Override
 	protected final void updateBrightness(final double brightness) {
-		synchronized (mRunningSetColorTasks) {
-			for (Device device : DeviceRegistry.getInstance().getDevices(mGroupId, false)) {
-				if (device instanceof Light) {
-					List<AsyncExecutable> tasksForDevice = mRunningSetColorTasks.computeIfAbsent(device, k -> new ArrayList<>());
-					tasksForDevice.add(new SetColorTask(this, brightness, (Light) device));
-
-					if (tasksForDevice.size() > 2) {
-						tasksForDevice.remove(1);
-					}
-					if (tasksForDevice.size() == 1) {
-						tasksForDevice.get(0).execute();
-					}
-				}
-			}
-		}
+		queueSetColorTask(new SetColorTask(this, brightness, DeviceRegistry.getInstance().getDevices(mGroupId, false)));
 	}
 
 	/**
@@ -144,21 +166,17 @@ public class GroupViewModel extends MainViewModel {
 	 */
 	public void updateColor(final Color color) {
 		mColor.postValue(color);
-		synchronized (mRunningSetColorTasks) {
-			for (Device device : DeviceRegistry.getInstance().getDevices(mGroupId, false)) {
-				if (device instanceof Light) {
-					List<AsyncExecutable> tasksForDevice = mRunningSetColorTasks.computeIfAbsent(device, k -> new ArrayList<>());
-					tasksForDevice.add(new SetColorTask(this, color, (Light) device));
+		queueSetColorTask(new SetColorTask(this, color, DeviceRegistry.getInstance().getDevices(mGroupId, false),
+				Group.INTERACTIVE_RETRY_POLICY));
+	}
 
-					if (tasksForDevice.size() > 2) {
-						tasksForDevice.remove(1);
-					}
-					if (tasksForDevice.size() == 1) {
-						tasksForDevice.get(0).execute();
-					}
-				}
-			}
-		}
+	/**
+	 * Queue a setColor task for the group. Only the running task and the latest waiting task are kept.
+	 *
+	 * @param task The task.
+	 */
+	private void queueSetColorTask(final SetColorTask task) {
+		DeviceCommandQueue.forGroup(mGroupId).submit(task);
 	}
 
 	/**
@@ -185,20 +203,7 @@ public class GroupViewModel extends MainViewModel {
 			if (model == null) {
 				return null;
 			}
-			Power result = Power.UNDEFINED;
-			for (Device device : DeviceRegistry.getInstance().getDevices(model.mGroupId, false)) {
-				Power devicePower = device.getPower();
-				if (devicePower != null) {
-					if (devicePower.isOn()) {
-						return Power.ON;
-					}
-					else if (devicePower.isOff()) {
-						result = Power.OFF;
-						model.updatePowerButton(Power.OFF);
-					}
-				}
-			}
-			return result;
+			return model.checkPowerNow();
 		}
 
 		@Override
@@ -243,23 +248,15 @@ public class GroupViewModel extends MainViewModel {
 
 			int powerDuration = PreferenceUtil.getSharedPreferenceIntString(
 					R.string.key_pref_power_duration, R.string.pref_default_power_duration);
-			for (Device device : DeviceRegistry.getInstance().getDevices(model.mGroupId, false)) {
-				new Thread() {
-					@Override
-					public void run() {
-						try {
-							if (device instanceof Light) {
-								((Light) device).setPower(!power.isOn(), powerDuration, false);
-							}
-							else {
-								device.setPower(!power.isOn());
-							}
-						}
-						catch (IOException e) {
-							Log.w(Application.TAG, e);
-						}
-					}
-				}.start();
+			try {
+				Group.CommandResult result =
+						Group.setPower(DeviceRegistry.getInstance().getDevices(model.mGroupId, false), !power.isOn(), powerDuration);
+				if (!result.isSuccess()) {
+					Log.w(Application.TAG, "Failed to set power on " + result.getFailedDevices());
+				}
+			}
+			catch (IOException e) {
+				Log.w(Application.TAG, e);
 			}
 			return power.isOn() ? Power.OFF : Power.ON;
 		}
@@ -333,9 +330,9 @@ public class GroupViewModel extends MainViewModel {
 	}
 
 	/**
-	 * An async task for setting the color on one device.
+	 * An async task for setting the color on all devices of a group in one burst.
 	 */
-	public static final class SetColorTask extends AsyncTask<Color, String, Color> implements AsyncExecutable {
+	public static final class SetColorTask extends DeviceCommandQueue.Command<Color> {
 		/**
 		 * A weak reference to the underlying model.
 		 */
@@ -345,26 +342,43 @@ public class GroupViewModel extends MainViewModel {
 		 */
 		private final Color mColor;
 		/**
-		 * The light.
+		 * The devices of the group.
 		 */
-		private final Light mLight;
+		private final List<Device> mDevices;
 		/**
 		 * The brightness.
 		 */
 		private final double mBrightness;
+		/**
+		 * The retry policy.
+		 */
+		private final RetryPolicy mRetryPolicy;
 
 		/**
 		 * Constructor.
 		 *
-		 * @param model The underlying model.
-		 * @param color The color.
-		 * @param light The light.
+		 * @param model   The underlying model.
+		 * @param color   The color.
+		 * @param devices The devices of the group.
+		 */
+		public SetColorTask(final GroupViewModel model, final Color color, final List<Device> devices) {
+			this(model, color, devices, Group.RELIABLE_RETRY_POLICY);
+		}
+
+		/**
+		 * Constructor.
+		 *
+		 * @param model       The underlying model.
+		 * @param color       The color.
+		 * @param devices     The devices of the group.
+		 * @param retryPolicy The retry policy.
 		 */
-		public SetColorTask(final GroupViewModel model, final Color color, final Light light) {
+		private SetColorTask(final GroupViewModel model, final Color color, final List<Device> devices, final RetryPolicy retryPolicy) {
 			mModel = new WeakReference<>(model);
 			mColor = color;
-			mLight = light;
+			mDevices = devices;
 			mBrightness = 0;
+			mRetryPolicy = retryPolicy;
 		}
 
 		/**
@@ -372,31 +386,40 @@ public class GroupViewModel extends MainViewModel {
 		 *
 		 * @param model      The underlying model.
 		 * @param brightness The brightness.
-		 * @param light      The light.
+		 * @param devices    The devices of the group.
 		 */
-		public SetColorTask(final GroupViewModel model, final double brightness, final Light light) {
+		public SetColorTask(final GroupViewModel model, final double brightness, final List<Device> devices) {
 			mModel = new WeakReference<>(model);
 			mColor = null;
-			mLight = light;
+			mDevices = devices;
 			mBrightness = brightness;
+			mRetryPolicy = Group.INTERACTIVE_RETRY_POLICY;
 		}
 
 		@Override
-		protected Color doInBackground(final Color... colors) {
+		protected Color doInBackground() {
 			try {
+				Group.CommandResult result;
 				if (mColor == null) {
-					mLight.setBrightness(mBrightness);
+					result = Group.setBrightness(mDevices, mBrightness, mRetryPolicy);
 				}
 				else {
-					mLight.setColor(mColor, 0, false);
+					result = Group.setColor(mDevices, mColor, 0, mRetryPolicy);
 				}
 				if (isAutoOn()) {
-					mLight.setPower(true, 0, false);
+					Group.setPower(mDevices, true, 0, mRetryPolicy);
+				}
+				if (!result.isSuccess()) {
+					Log.w(Application.TAG, "Failed to set color on " + result.getFailedDevices());
+					if (result.getFailedDevices().size() == mDevices.size()) {
+						setFailed();
+					}
 				}
 				return mColor;
 			}
 			catch (IOException e) {
 				Log.w(Application.TAG, e);
+				setFailed();
 				return null;
 			}
 		}
@@ -407,15 +430,6 @@ public class GroupViewModel extends MainViewModel {
 			if (model == null) {
 				return;
 			}
-			synchronized (model.mRunningSetColorTasks) {
-				List<AsyncExecutable> tasksForDevice = model.mRunningSetColorTasks.get(mLight);
-				if (tasksForDevice != null) {
-					tasksForDevice.remove(this);
-					if (tasksForDevice.size() > 0) {
-						tasksForDevice.get(0).execute();
-					}
-				}
-			}
 			if (color != null) {
 				model.mColor.postValue(color);
 			}
@@ -428,10 +442,5 @@ public class GroupViewModel extends MainViewModel {
 				}
 			}
 		}
-
-		@Override
-		public void execute() {
-			executeOnExecutor(THREAD_POOL_EXECUTOR);
-		}
 	}
 }
@@ -11,6 +11,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import com.skydoves.colorpickerview.ColorPickerView;
@@ -122,7 +123,10 @@ public class HomeFragment extends ListFragment {
 			mAdapter.refresh(true);
 		}
 		if (refreshDelay > 0) {
-			mExecutor.scheduleAtFixedRate(() -> mAdapter.refresh(false), refreshDelay, refreshDelay, TimeUnit.MILLISECONDS);
+			final ListView listView = getListView();
+			// Periodically refresh only the visible devices. Visibility is determined on the UI thread.
+			mExecutor.scheduleAtFixedRate(() -> listView.post(() -> mAdapter.refresh(listView.getFirstVisiblePosition(),
+					listView.getLastVisiblePosition(), false)), refreshDelay, refreshDelay, TimeUnit.MILLISECONDS);
 		}
 	}
 
@@ -174,7 +178,7 @@ public class HomeFragment extends ListFragment {
 					List<MainViewModel> checkedDevices = mAdapter.getCheckedDevices();
 					for (MainViewModel model : checkedDevices) {
 						if (model instanceof LightViewModel) {
-							((LightViewModel) model).updateColor(newColor, true);
+							((LightViewModel) model).previewColor(newColor);
 						}
 						else if (model instanceof GroupViewModel) {
 							((GroupViewModel) model).updateColor(newColor);
@@ -196,7 +200,7 @@ public class HomeFragment extends ListFragment {
 					List<MainViewModel> checkedDevices = mAdapter.getCheckedDevices();
 					for (MainViewModel model : checkedDevices) {
 						if (model instanceof LightViewModel) {
-							((LightViewModel) model).updateColor(newColor, true);
+							((LightViewModel) model).previewColor(newColor);
 						}
 						else if (model instanceof GroupViewModel) {
 							((GroupViewModel) model).updateColor(newColor);
@@ -6,8 +6,6 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.List;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
@@ -18,8 +16,10 @@ import de.jeisfeld.lifx.app.animation.LifxAnimationService;
 import de.jeisfeld.lifx.app.animation.LifxAnimationService.AnimationStatus;
 import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
+import de.jeisfeld.lifx.lan.LifxLanStreamConnection;
 import de.jeisfeld.lifx.lan.Light;
 import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.DeviceState;
 import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.util.TypeUtil;
 
@@ -36,9 +36,13 @@ public class LightViewModel extends DeviceViewModel {
 	 */
 	private final MutableLiveData<Color> mColor;
 	/**
-	 * A storage to keep track on running setColor tasks.
+	 * The live preview of colors while dragging a color picker.
 	 */
-	protected final List<AsyncExecutable> mRunningSetColorTasks = new ArrayList<>(); // SUPPRESS_CHECKSTYLE
+	private final LivePreview mLivePreview;
+	/**
+	 * The connection for the frames of the running live preview. Null if no preview is running.
+	 */
+	private LifxLanStreamConnection mPreviewConnection = null;
 
 	/**
 	 * Constructor.
@@ -50,6 +54,9 @@ public class LightViewModel extends DeviceViewModel {
 		super(context, light);
 		mAnimationStatus = new MutableLiveData<>();
 		mColor = new MutableLiveData<>();
+		mLivePreview = new LivePreview(
+				color -> DeviceCommandQueue.forDevice(getLight()).submit(new PreviewColorTask(getLight(), color, mPreviewConnection)),
+				this::commitPreview);
 		mAnimationStatus.setValue(LifxAnimationService.getAnimationStatus(light.getTargetAddress()) != AnimationStatus.OFF);
 	}
 
@@ -98,6 +105,18 @@ public class LightViewModel extends DeviceViewModel {
 		new CheckColorTask(this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 	}
 
+	// OVERRIDABLE
+	@Override
+	protected void checkColorNow() {
+		updateStoredColor(getLight().getColor());
+	}
+
+	// OVERRIDABLE
+	@Override
+	protected void updateColorsFromState(final DeviceState state) {
+		updateStoredColor(state.getColor());
+	}
+
 	/**
 	 * Set the hue, saturation, brightness and/or color temperature.
 	 *
@@ -155,15 +174,35 @@ public class LightViewModel extends DeviceViewModel {
 	public void updateColor(final Color color, final boolean isImmediate) {
 		updateStoredColor(color);
 		stopAnimationOrAlarm();
-		synchronized (mRunningSetColorTasks) {
-			mRunningSetColorTasks.add(new SetColorTask(this, color, isImmediate));
-			if (mRunningSetColorTasks.size() > 2) {
-				mRunningSetColorTasks.remove(1);
-			}
-			if (mRunningSetColorTasks.size() == 1) {
-				mRunningSetColorTasks.get(0).execute();
-			}
+		DeviceCommandQueue.forDevice(getLight()).submit(new SetColorTask(this, color, isImmediate));
+	}
+
+	/**
+	 * Set the color as live preview, e.g. while dragging a color picker. Frames are sent without acknowledgement at a capped rate, and
+	 * the color is set regularly once it stops changing. To be called on the UI thread.
+	 *
+	 * @param color the color to be set.
+	 */
+	public void previewColor(final Color color) {
+		if (!mLivePreview.isRunning()) {
+			stopAnimationOrAlarm();
+			mPreviewConnection = new LifxLanStreamConnection(getLight());
 		}
+		updateStoredColor(color);
+		mLivePreview.update(color);
+	}
+
+	/**
+	 * Set the final color of a live preview, closing the connection used for the frames.
+	 *
+	 * @param color the color to be set.
+	 */
+	private void commitPreview(final Color color) {
+		if (mPreviewConnection != null) {
+			mPreviewConnection.close();
+			mPreviewConnection = null;
+		}
+		updateColor(color, true);
 	}
 
 	/**
@@ -235,23 +274,15 @@ public class LightViewModel extends DeviceViewModel {
 			if (model == null) {
 				return null;
 			}
-			return model.getLight().getColor();
-		}
-
-		@Override
-		protected void onPostExecute(final Color color) {
-			LightViewModel model = mModel.get();
-			if (model == null) {
-				return;
-			}
-			model.updateStoredColor(color);
+			model.checkColorNow();
+			return null;
 		}
 	}
 
 	/**
 	 * An async task for setting the color.
 	 */
-	private static final class SetColorTask extends AsyncTask<Color, String, Color> implements AsyncExecutable {
+	private static final class SetColorTask extends DeviceCommandQueue.Command<Color> {
 		/**
 		 * A weak reference to the underlying model.
 		 */
@@ -272,7 +303,6 @@ public class LightViewModel extends DeviceViewModel {
 		 * @param color       The color.
 		 * @param isImmediate Flag indicating if the change should be immediate.
 		 */
-		@SuppressWarnings("deprecation")
 		private SetColorTask(final LightViewModel model, final Color color, final boolean isImmediate) {
 			mModel = new WeakReference<>(model);
 			mColor = color;
@@ -280,7 +310,7 @@ public class LightViewModel extends DeviceViewModel {
 		}
 
 		@Override
-		protected Color doInBackground(final Color... colors) {
+		protected Color doInBackground() {
 			LightViewModel model = mModel.get();
 			if (model == null) {
 				return null;
@@ -301,6 +331,7 @@ public class LightViewModel extends DeviceViewModel {
 			}
 			catch (IOException e) {
 				Log.w(Application.TAG, e);
+				setFailed();
 				return null;
 			}
 		}
@@ -311,21 +342,53 @@ public class LightViewModel extends DeviceViewModel {
 			if (model == null) {
 				return;
 			}
-			synchronized (model.mRunningSetColorTasks) {
-				model.mRunningSetColorTasks.remove(this);
-				if (!model.mRunningSetColorTasks.isEmpty()) {
-					model.mRunningSetColorTasks.get(0).execute();
-				}
-			}
 			model.updateStoredColor(color);
 			if (isAutoOn()) {
 				model.updatePowerButton(Power.ON);
 			}
 		}
+	}
+
+	/**
+	 * A command for sending a live preview frame.
+	 */
+	private static final class PreviewColorTask extends DeviceCommandQueue.Command<Void> {
+		/**
+		 * The light.
+		 */
+		private final Light mLight;
+		/**
+		 * The color to be set.
+		 */
+		private final Color mColor;
+		/**
+		 * The connection of the live preview.
+		 */
+		private final LifxLanStreamConnection mConnection;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param light      The light.
+		 * @param color      The color.
+		 * @param connection The connection of the live preview.
+		 */
+		private PreviewColorTask(final Light light, final Color color, final LifxLanStreamConnection connection) {
+			mLight = light;
+			mColor = color;
+			mConnection = connection;
+		}
 
 		@Override
-		public void execute() {
-			executeOnExecutor(THREAD_POOL_EXECUTOR);
+		protected Void doInBackground() {
+			try {
+				mLight.setColorWithoutResponse(mColor, 0, mConnection);
+			}
+			catch (IOException e) {
+				Log.w(Application.TAG, e);
+				setFailed();
+			}
+			return null;
 		}
 	}
 }
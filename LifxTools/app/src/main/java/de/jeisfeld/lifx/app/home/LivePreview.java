@@ -0,0 +1,118 @@
+package de.jeisfeld.lifx.app.home;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.function.Consumer;
+
+import de.jeisfeld.lifx.lan.type.Color;
+
+/**
+ * Live preview of colors while dragging a color picker. Colors are sent as frames at a capped rate, and when no change has happened
+ * for a short time, the gesture is considered ended and the last color is committed once. All methods are to be called on the UI
+ * thread.
+ */
+final class LivePreview {
+	/**
+	 * The minimum time between two frames in millis, capping the frame rate to 30 Hz.
+	 */
+	private static final long FRAME_INTERVAL = 1000 / 30; // MAGIC_NUMBER
+	/**
+	 * The time without change after which the color is committed.
+	 */
+	private static final long COMMIT_DELAY = 300;
+	/**
+	 * The handler for scheduling frames and commit.
+	 */
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	/**
+	 * The sender of frames.
+	 */
+	private final Consumer<Color> mFrameSender;
+	/**
+	 * The sender of the final color.
+	 */
+	private final Consumer<Color> mCommitSender;
+	/**
+	 * The runnable sending a frame.
+	 */
+	private final Runnable mFrameRunnable = this::sendFrame;
+	/**
+	 * The runnable committing the color.
+	 */
+	private final Runnable mCommitRunnable = this::commit;
+	/**
+	 * The latest color. Null if no preview is running.
+	 */
+	private Color mColor = null;
+	/**
+	 * Flag indicating if the latest color is already sent as frame.
+	 */
+	private boolean mIsFrameSent = true;
+	/**
+	 * The time of the last frame, in elapsed realtime.
+	 */
+	private long mLastFrameTime = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param frameSender  The sender of frames. It should not wait for acknowledgement.
+	 * @param commitSender The sender of the final color.
+	 */
+	LivePreview(final Consumer<Color> frameSender, final Consumer<Color> commitSender) {
+		mFrameSender = frameSender;
+		mCommitSender = commitSender;
+	}
+
+	/**
+	 * Check if a preview is running.
+	 *
+	 * @return true if a preview is running.
+	 */
+	boolean isRunning() {
+		return mColor != null;
+	}
+
+	/**
+	 * Update the color.
+	 *
+	 * @param color The color.
+	 */
+	void update(final Color color) {
+		boolean isFrameScheduled = !mIsFrameSent;
+		mColor = color;
+		mIsFrameSent = false;
+		if (!isFrameScheduled) {
+			long delay = mLastFrameTime + FRAME_INTERVAL - SystemClock.elapsedRealtime();
+			mHandler.postDelayed(mFrameRunnable, Math.max(0, delay));
+		}
+		mHandler.removeCallbacks(mCommitRunnable);
+		mHandler.postDelayed(mCommitRunnable, COMMIT_DELAY);
+	}
+
+	/**
+	 * Send the latest color as frame.
+	 */
+	private void sendFrame() {
+		if (mColor != null && !mIsFrameSent) {
+			mIsFrameSent = true;
+			mLastFrameTime = SystemClock.elapsedRealtime();
+			mFrameSender.accept(mColor);
+		}
+	}
+
+	/**
+	 * Commit the latest color, ending the preview.
+	 */
+	private void commit() {
+		mHandler.removeCallbacks(mFrameRunnable);
+		Color color = mColor;
+		mColor = null;
+		mIsFrameSent = true;
+		if (color != null) {
+			mCommitSender.accept(color);
+		}
+	}
+}
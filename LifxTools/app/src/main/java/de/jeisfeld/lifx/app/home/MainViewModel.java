@@ -3,13 +3,18 @@ package de.jeisfeld.lifx.app.home;
 import android.content.Context;
 
 import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
+import de.jeisfeld.lifx.lan.Device;
 import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.DeviceState;
 import de.jeisfeld.lifx.lan.type.Power;
 
 /**
@@ -69,12 +74,26 @@ public abstract class MainViewModel extends ViewModel {
 	}
 
 	/**
-	 * Refresh the device. If offline, first check if online again.
+	 * Get the devices whose state is needed for a refresh. The states of all refreshed devices are retrieved together.
 	 *
 	 * @param isHighPriority flag indicating if this is high priority refresh.
+	 * @return The devices.
 	 */
 	// OVERRIDABLE
-	protected void refresh(final boolean isHighPriority) {
+	protected List<Device> getRefreshDevices(final boolean isHighPriority) {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Refresh the device from the retrieved device states. This is a blocking call, to be done in background.
+	 *
+	 * @param isHighPriority flag indicating if this is high priority refresh.
+	 * @param states         The retrieved device states by MAC, containing the states of the refresh devices.
+	 * @return false if the device was found unreachable.
+	 */
+	// OVERRIDABLE
+	protected boolean refresh(final boolean isHighPriority, final Map<String, DeviceState> states) {
+		return true;
 	}
 
 	/**
@@ -120,14 +139,4 @@ public abstract class MainViewModel extends ViewModel {
 	public LiveData<Color> getColor() {
 		return null; // to be overridden in subclasses
 	}
-
-	/**
-	 * Interface for an async task.
-	 */
-	protected interface AsyncExecutable {
-		/**
-		 * Execute the task.
-		 */
-		void execute();
-	}
 }
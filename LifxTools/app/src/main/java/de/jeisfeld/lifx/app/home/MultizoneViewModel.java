@@ -21,6 +21,7 @@ import de.jeisfeld.lifx.app.view.MultiColorPickerDialogFragment;
 import de.jeisfeld.lifx.lan.MultiZoneLight;
 import de.jeisfeld.lifx.lan.animation.MultizoneMoveDefinition.Direction;
 import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.DeviceState;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
 import de.jeisfeld.lifx.lan.type.MultizoneColors.Fixed;
 import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
@@ -152,15 +153,8 @@ public class MultizoneViewModel extends LightViewModel {
 		if (stopAnimation) {
 			stopAnimationOrAlarm();
 		}
-		synchronized (mRunningSetColorTasks) {
-			mRunningSetColorTasks.add(new SetMultizoneColorsTask(this, colors.withRelativeBrightness(brightnessFactor), isImmediate));
-			if (mRunningSetColorTasks.size() > 2) {
-				mRunningSetColorTasks.remove(1);
-			}
-			if (mRunningSetColorTasks.size() == 1) {
-				mRunningSetColorTasks.get(0).execute();
-			}
-		}
+		DeviceCommandQueue.forDevice(getLight()).submit(
+				new SetMultizoneColorsTask(this, colors.withRelativeBrightness(brightnessFactor), isImmediate));
 	}
 
 	@Override
@@ -176,6 +170,38 @@ public class MultizoneViewModel extends LightViewModel {
 		new CheckMultizoneColorsTask(this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 	}
 
+	@Override
+	protected final void checkColorNow() {
+		// Ensure that firmware build time is available.
+		getLight().getFirmwareBuildTime();
+		List<Color> colors = getLight().getColors();
+		if (colors == null) {
+			return;
+		}
+
+		updateStoredMainColor(getLight().getColor());
+		updateStoredColors(fromColors(colors), 1);
+
+		// Check animation status
+		if (LifxAnimationService.getAnimationStatus(getLight().getTargetAddress()) == AnimationStatus.OFF) {
+			MultizoneEffectInfo effectInfo = getLight().getEffectInfo();
+			if (effectInfo != null) {
+				if (effectInfo.getType() == MultizoneEffectType.MOVE) {
+					AnimationData animationData = new MultizoneMove(effectInfo.getSpeed(), 1,
+							effectInfo.getParameters()[0] > 0 ? Direction.FORWARD : Direction.BACKWARD,
+							getColors().getValue(), true);
+					startAnimation(animationData);
+				}
+			}
+		}
+	}
+
+	@Override
+	protected final void updateColorsFromState(final DeviceState state) {
+		// The state does not contain the zone colors, so these are checked separately.
+		checkColorNow();
+	}
+
 	@Override
 	protected final boolean isRefreshColorsAllowed() {
 		// Due to tendency for connectivity issues, check Multizone light only if disconnected or if colors have not yet been initialized.
@@ -271,29 +297,7 @@ public class MultizoneViewModel extends LightViewModel {
 			if (model == null) {
 				return null;
 			}
-			// Ensure that firmware build time is available.
-			model.getLight().getFirmwareBuildTime();
-			List<Color> colors = model.getLight().getColors();
-			if (colors == null) {
-				return null;
-			}
-
-			model.updateStoredMainColor(model.getLight().getColor());
-			model.updateStoredColors(fromColors(colors), 1);
-
-			// Check animation status
-			if (LifxAnimationService.getAnimationStatus(model.getLight().getTargetAddress()) == AnimationStatus.OFF) {
-				MultizoneEffectInfo effectInfo = model.getLight().getEffectInfo();
-				if (effectInfo != null) {
-					if (effectInfo.getType() == MultizoneEffectType.MOVE) {
-						AnimationData animationData = new MultizoneMove(effectInfo.getSpeed(), 1,
-								effectInfo.getParameters()[0] > 0 ? Direction.FORWARD : Direction.BACKWARD,
-								model.getColors().getValue(), true);
-						model.startAnimation(animationData);
-					}
-				}
-			}
-
+			model.checkColorNow();
 			return null;
 		}
 	}
@@ -301,7 +305,7 @@ public class MultizoneViewModel extends LightViewModel {
 	/**
 	 * An async task for setting the multizone colors.
 	 */
-	private static final class SetMultizoneColorsTask extends AsyncTask<MultizoneColors, String, MultizoneColors> implements AsyncExecutable {
+	private static final class SetMultizoneColorsTask extends DeviceCommandQueue.Command<MultizoneColors> {
 		/**
 		 * A weak reference to the underlying model.
 		 */
@@ -322,7 +326,6 @@ public class MultizoneViewModel extends LightViewModel {
 		 * @param colors      The colors.
 		 * @param isImmediate Flag indicating if the change should be immediate.
 		 */
-		@SuppressWarnings("deprecation")
 		private SetMultizoneColorsTask(final MultizoneViewModel model, final MultizoneColors colors, final boolean isImmediate) {
 			mModel = new WeakReference<>(model);
 			mColors = colors;
@@ -330,7 +333,7 @@ public class MultizoneViewModel extends LightViewModel {
 		}
 
 		@Override
-		protected MultizoneColors doInBackground(final MultizoneColors... colors) {
+		protected MultizoneColors doInBackground() {
 			MultizoneViewModel model = mModel.get();
 			if (model == null) {
 				return null;
@@ -351,6 +354,7 @@ public class MultizoneViewModel extends LightViewModel {
 			}
 			catch (IOException e) {
 				Log.w(Application.TAG, e);
+				setFailed();
 				return null;
 			}
 		}
@@ -361,21 +365,10 @@ public class MultizoneViewModel extends LightViewModel {
 			if (model == null) {
 				return;
 			}
-			synchronized (model.mRunningSetColorTasks) {
-				model.mRunningSetColorTasks.remove(this);
-				if (model.mRunningSetColorTasks.size() > 0) {
-					model.mRunningSetColorTasks.get(0).execute();
-				}
-			}
 			if (isAutoOn()) {
 				model.updatePowerButton(Power.ON);
 			}
 		}
-
-		@Override
-		public void execute() {
-			executeOnExecutor(THREAD_POOL_EXECUTOR);
-		}
 	}
 
 	/**
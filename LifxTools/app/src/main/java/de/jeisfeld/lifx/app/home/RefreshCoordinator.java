@@ -0,0 +1,144 @@
+package de.jeisfeld.lifx.app.home;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import de.jeisfeld.lifx.app.Application;
+import de.jeisfeld.lifx.lan.Device;
+import de.jeisfeld.lifx.lan.LifxExecutor;
+import de.jeisfeld.lifx.lan.LifxLan;
+import de.jeisfeld.lifx.lan.type.DeviceState;
+
+/**
+ * Coordinator of the refresh of the home screen. Each refresh retrieves the state of the devices of all due models in one snapshot
+ * on the LifxExecutor, and then dispatches the states to the models. Models whose previous refresh is still running are skipped,
+ * and models found unreachable are backed off exponentially, except for high priority refreshes.
+ */
+final class RefreshCoordinator {
+	/**
+	 * The backoff after the first failed refresh.
+	 */
+	private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(2);
+	/**
+	 * The maximum backoff.
+	 */
+	private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+	/**
+	 * The maximum exponent of the backoff, avoiding overflow.
+	 */
+	private static final int MAX_BACKOFF_EXPONENT = 10;
+	/**
+	 * The kinds of state retrieved in a refresh.
+	 */
+	private static final Set<DeviceState.Kind> SNAPSHOT_KINDS = EnumSet.of(DeviceState.Kind.POWER, DeviceState.Kind.COLOR);
+
+	/**
+	 * The models whose refresh is running.
+	 */
+	private final Set<MainViewModel> mRunningRefreshes = new HashSet<>();
+	/**
+	 * The number of subsequent failed refreshes per model.
+	 */
+	private final Map<MainViewModel, Integer> mFailureCounts = new HashMap<>();
+	/**
+	 * The earliest time of the next refresh per backed off model, in elapsed realtime.
+	 */
+	private final Map<MainViewModel, Long> mNextRefreshTimes = new HashMap<>();
+
+	/**
+	 * Refresh devices.
+	 *
+	 * @param models         The models of the devices.
+	 * @param isHighPriority flag indicating if this is high priority refresh.
+	 */
+	void refresh(final List<MainViewModel> models, final boolean isHighPriority) {
+		long now = SystemClock.elapsedRealtime();
+		List<MainViewModel> dueModels = new ArrayList<>();
+		Map<String, Device> devices = new LinkedHashMap<>();
+		for (MainViewModel model : models) {
+			if (startRefresh(model, now, isHighPriority)) {
+				dueModels.add(model);
+				for (Device device : model.getRefreshDevices(isHighPriority)) {
+					devices.putIfAbsent(device.getTargetAddress(), device);
+				}
+			}
+		}
+		if (dueModels.isEmpty()) {
+			return;
+		}
+		LifxExecutor.execute(() -> {
+			Map<String, DeviceState> states = Collections.emptyMap();
+			try {
+				if (!devices.isEmpty()) {
+					states = LifxLan.getInstance().getStateSnapshot(devices.values(), SNAPSHOT_KINDS);
+				}
+			}
+			catch (RuntimeException e) {
+				Log.e(Application.TAG, "Failed to retrieve device states", e);
+			}
+			for (MainViewModel model : dueModels) {
+				boolean isReachable = false;
+				try {
+					isReachable = model.refresh(isHighPriority, states);
+				}
+				catch (RuntimeException e) {
+					Log.e(Application.TAG, "Failed to refresh device", e);
+				}
+				finally {
+					endRefresh(model, isReachable);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Register the start of a refresh, if the refresh is due.
+	 *
+	 * @param model          The model.
+	 * @param now            The current elapsed realtime.
+	 * @param isHighPriority flag indicating if this is high priority refresh.
+	 * @return true if the refresh is due.
+	 */
+	private synchronized boolean startRefresh(final MainViewModel model, final long now, final boolean isHighPriority) {
+		if (mRunningRefreshes.contains(model)) {
+			return false;
+		}
+		Long nextRefreshTime = mNextRefreshTimes.get(model);
+		if (!isHighPriority && nextRefreshTime != null && now < nextRefreshTime) {
+			return false;
+		}
+		mRunningRefreshes.add(model);
+		return true;
+	}
+
+	/**
+	 * Register the end of a refresh, updating the backoff.
+	 *
+	 * @param model       The model.
+	 * @param isReachable flag indicating if the device was reachable.
+	 */
+	private synchronized void endRefresh(final MainViewModel model, final boolean isReachable) {
+		mRunningRefreshes.remove(model);
+		if (isReachable) {
+			mFailureCounts.remove(model);
+			mNextRefreshTimes.remove(model);
+		}
+		else {
+			int failureCount = mFailureCounts.getOrDefault(model, 0) + 1;
+			mFailureCounts.put(model, failureCount);
+			long backoff = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failureCount - 1, MAX_BACKOFF_EXPONENT));
+			mNextRefreshTimes.put(model, SystemClock.elapsedRealtime() + backoff);
+		}
+	}
+}
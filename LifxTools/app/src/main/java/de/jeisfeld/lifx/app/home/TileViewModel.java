@@ -20,6 +20,7 @@ import de.jeisfeld.lifx.app.animation.TileChainMorph;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.TileChain;
 import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.DeviceState;
 import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.type.TileChainColors;
 import de.jeisfeld.lifx.lan.type.TileChainColors.Fixed;
@@ -136,21 +137,14 @@ public class TileViewModel extends LightViewModel {
 		if (stopAnimation) {
 			stopAnimationOrAlarm();
 		}
-		synchronized (mRunningSetColorTasks) {
-			if (colors == null) {
-				mRelativeBrightness.postValue(brightnessFactor);
-				mRunningSetColorTasks.add(new SetTileChainColorsTask(this, brightnessFactor, isImmediate));
-			}
-			else {
-				updateStoredColors(colors, brightnessFactor);
-				mRunningSetColorTasks.add(new SetTileChainColorsTask(this, colors.withRelativeBrightness(brightnessFactor), isImmediate));
-			}
-			if (mRunningSetColorTasks.size() > 2) {
-				mRunningSetColorTasks.remove(1);
-			}
-			if (mRunningSetColorTasks.size() == 1) {
-				mRunningSetColorTasks.get(0).execute();
-			}
+		if (colors == null) {
+			mRelativeBrightness.postValue(brightnessFactor);
+			DeviceCommandQueue.forDevice(getLight()).submit(new SetTileChainColorsTask(this, brightnessFactor, isImmediate));
+		}
+		else {
+			updateStoredColors(colors, brightnessFactor);
+			DeviceCommandQueue.forDevice(getLight()).submit(
+					new SetTileChainColorsTask(this, colors.withRelativeBrightness(brightnessFactor), isImmediate));
 		}
 	}
 
@@ -172,6 +166,67 @@ public class TileViewModel extends LightViewModel {
 		new CheckTileChainColorsTask(this).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 	}
 
+	@Override
+	protected final void checkColorNow() {
+		if (getLight().getTileInfo() == null || getLight().getTileInfo().isEmpty()
+				|| getLight().getTileInfo().get(0).getAccelerationX() == 0) {
+			getLight().refreshTileInfo();
+			if (getLight().getTileInfo() == null) {
+				return;
+			}
+		}
+		TileChainColors colors = getLight().getColors();
+		if (colors == null) {
+			return;
+		}
+
+		updateStoredMainColor(getLight().getColor());
+		updateStoredColors(colors, 1);
+
+		// Check animation status
+		AnimationStatus animationStatus = LifxAnimationService.getAnimationStatus(getLight().getTargetAddress());
+		if (animationStatus != AnimationStatus.CUSTOM) {
+			TileEffectInfo effectInfo = getLight().getEffectInfo();
+			if (effectInfo != null) {
+				AnimationData animationData;
+				switch (effectInfo.getType()) {
+				case FLAME:
+					if (animationStatus == AnimationStatus.OFF) {
+						animationData = new TileChainFlame(effectInfo.getSpeed(), true);
+						startAnimation(animationData);
+					}
+					break;
+				case MORPH:
+					if (animationStatus == AnimationStatus.OFF) {
+						animationData = new TileChainMorph(effectInfo.getSpeed(), effectInfo.getPaletteColors(), true);
+						startAnimation(animationData);
+					}
+					break;
+				case CLOUDS:
+					if (animationStatus == AnimationStatus.OFF) {
+						animationData = new TileChainClouds(effectInfo.getSpeed(), effectInfo.getParameters()[4], // MAGIC_NUMBER
+								effectInfo.getPaletteColors(), true);
+						startAnimation(animationData);
+					}
+					break;
+				case OFF:
+					if (animationStatus == AnimationStatus.NATIVE) {
+						stopAnimation();
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	protected final void updateColorsFromState(final DeviceState state) {
+		// The state does not contain the zone colors, so these are checked separately.
+		checkColorNow();
+	}
+
 	@Override
 	protected final boolean isRefreshColorsAllowed() {
 		// Due to tendency for connectivity issues, check Multizone light only if disconnected or if colors have not yet been initialized.
@@ -226,59 +281,7 @@ public class TileViewModel extends LightViewModel {
 			if (model == null) {
 				return null;
 			}
-			if (model.getLight().getTileInfo() == null || model.getLight().getTileInfo().isEmpty()
-					|| model.getLight().getTileInfo().get(0).getAccelerationX() == 0) {
-				model.getLight().refreshTileInfo();
-				if (model.getLight().getTileInfo() == null) {
-					return null;
-				}
-			}
-			TileChainColors colors = model.getLight().getColors();
-			if (colors == null) {
-				return null;
-			}
-
-			model.updateStoredMainColor(model.getLight().getColor());
-			model.updateStoredColors(colors, 1);
-
-			// Check animation status
-			AnimationStatus animationStatus = LifxAnimationService.getAnimationStatus(model.getLight().getTargetAddress());
-			if (animationStatus != AnimationStatus.CUSTOM) {
-				TileEffectInfo effectInfo = model.getLight().getEffectInfo();
-				if (effectInfo != null) {
-					AnimationData animationData;
-					switch (effectInfo.getType()) {
-					case FLAME:
-						if (animationStatus == AnimationStatus.OFF) {
-							animationData = new TileChainFlame(effectInfo.getSpeed(), true);
-							model.startAnimation(animationData);
-						}
-						break;
-					case MORPH:
-						if (animationStatus == AnimationStatus.OFF) {
-							animationData = new TileChainMorph(effectInfo.getSpeed(), effectInfo.getPaletteColors(), true);
-							model.startAnimation(animationData);
-						}
-						break;
-                                        case CLOUDS:
-                                                if (animationStatus == AnimationStatus.OFF) {
-													animationData = new TileChainClouds(effectInfo.getSpeed(),
-															effectInfo.getParameters()[4],
-															effectInfo.getPaletteColors(), true);
-                                                        model.startAnimation(animationData);
-                                                }
-                                                break;
-					case OFF:
-						if (animationStatus == AnimationStatus.NATIVE) {
-							model.stopAnimation();
-						}
-						break;
-					default:
-						break;
-					}
-				}
-			}
-
+			model.checkColorNow();
 			return null;
 		}
 	}
@@ -286,7 +289,7 @@ public class TileViewModel extends LightViewModel {
 	/**
 	 * An async task for setting the tile chain colors.
 	 */
-	private static final class SetTileChainColorsTask extends AsyncTask<TileChainColors, String, TileChainColors> implements AsyncExecutable {
+	private static final class SetTileChainColorsTask extends DeviceCommandQueue.Command<TileChainColors> {
 		/**
 		 * A weak reference to the underlying model.
 		 */
@@ -311,7 +314,6 @@ public class TileViewModel extends LightViewModel {
 		 * @param colors      The colors.
 		 * @param isImmediate Flag indicating if the change should be immediate.
 		 */
-		@SuppressWarnings("deprecation")
 		private SetTileChainColorsTask(final TileViewModel model, final TileChainColors colors, final boolean isImmediate) {
 			mModel = new WeakReference<>(model);
 			mColors = colors;
@@ -319,7 +321,6 @@ public class TileViewModel extends LightViewModel {
 			mIsImmediate = isImmediate;
 		}
 
-		@SuppressWarnings("deprecation")
 		private SetTileChainColorsTask(final TileViewModel model, final double brightness, final boolean isImmediate) {
 			mModel = new WeakReference<>(model);
 			mColors = null;
@@ -328,7 +329,7 @@ public class TileViewModel extends LightViewModel {
 		}
 
 		@Override
-		protected TileChainColors doInBackground(final TileChainColors... colors) {
+		protected TileChainColors doInBackground() {
 			TileViewModel model = mModel.get();
 			if (model == null) {
 				return null;
@@ -354,6 +355,7 @@ public class TileViewModel extends LightViewModel {
 			}
 			catch (IOException e) {
 				Log.w(Application.TAG, e);
+				setFailed();
 				return null;
 			}
 		}
@@ -364,21 +366,10 @@ public class TileViewModel extends LightViewModel {
 			if (model == null) {
 				return;
 			}
-			synchronized (model.mRunningSetColorTasks) {
-				model.mRunningSetColorTasks.remove(this);
-				if (!model.mRunningSetColorTasks.isEmpty()) {
-					model.mRunningSetColorTasks.get(0).execute();
-				}
-			}
 			if (isAutoOn()) {
 				model.updatePowerButton(Power.ON);
 			}
 		}
-
-		@Override
-		public void execute() {
-			executeOnExecutor(THREAD_POOL_EXECUTOR);
-		}
 	}
 
 }
@@ -23,6 +23,7 @@ import de.jeisfeld.lifx.app.storedcolors.StoredColor;
 import de.jeisfeld.lifx.app.storedcolors.StoredColorsViewAdapter.MultizoneOrientation;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.Device;
+import de.jeisfeld.lifx.lan.DeviceAddressCache;
 import de.jeisfeld.lifx.lan.Group;
 import de.jeisfeld.lifx.lan.LifxLan;
 import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
@@ -71,6 +72,10 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 * The devices and groups.
 	 */
 	private final SparseArray<DeviceHolder> mDevices = new SparseArray<>();
+	/**
+	 * The ids of devices and groups in display order. This is the authoritative copy of the stored list.
+	 */
+	private final List<Integer> mDeviceIds;
 	/**
 	 * A map from MAC address to device id.
 	 */
@@ -121,9 +126,9 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 */
 	private DeviceRegistry() {
 		mSourceId = OsTools.getPid();
-		List<Integer> deviceIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
+		mDeviceIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
 
-		for (int deviceId : deviceIds) {
+		for (int deviceId : mDeviceIds) {
 			DeviceType type = DeviceType.fromOrdinal(PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_type, deviceId, 0));
 
 			if (type == DeviceType.GROUP) {
@@ -133,6 +138,29 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 				addDevice(type, deviceId);
 			}
 		}
+		DeviceAddressCache.getInstance().setAddressChangeListener(this::storeAddress);
+	}
+
+	/**
+	 * Store a changed address of a known device, so that it is used for unicast after restart.
+	 *
+	 * @param mac         The MAC of the device.
+	 * @param inetAddress The new internet address.
+	 * @param port        The new port.
+	 */
+	private void storeAddress(final String mac, final InetAddress inetAddress, final int port) {
+		Integer deviceId = mMacToIdMap.get(mac);
+		if (deviceId == null) {
+			return;
+		}
+		String storedAddress = PreferenceUtil.getIndexedSharedPreferenceString(R.string.key_device_address, deviceId);
+		String newAddress = new String(inetAddress.getAddress(), StandardCharsets.ISO_8859_1);
+		if (!newAddress.equals(storedAddress)) {
+			PreferenceUtil.setIndexedSharedPreferenceString(R.string.key_device_address, deviceId, newAddress);
+		}
+		if (port != PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_port, deviceId, DeviceRegistry.DEFAULT_PORT)) {
+			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_port, deviceId, port);
+		}
 	}
 
 	/**
@@ -245,7 +273,7 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 */
 	public List<DeviceHolder> getDevices(final boolean onlyFlagged) {
 		List<DeviceHolder> result = new ArrayList<>();
-		for (int deviceId : PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids)) {
+		for (int deviceId : getDeviceIds()) {
 			DeviceHolder device = mDevices.get(deviceId);
 			if (device != null && !(onlyFlagged && !device.isShow())) {
 				result.add(device);
@@ -270,7 +298,7 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	@Override
 	public List<Device> getDevices() {
 		List<Device> result = new ArrayList<>();
-		for (int deviceId : PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids)) {
+		for (int deviceId : getDeviceIds()) {
 			DeviceHolder device = mDevices.get(deviceId);
 			if (device != null && !device.isGroup()) {
 				result.add(device.getDevice());
@@ -286,7 +314,7 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 */
 	public List<Group> getGroups() {
 		List<Group> result = new ArrayList<>();
-		for (int deviceId : PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids)) {
+		for (int deviceId : getDeviceIds()) {
 			DeviceHolder device = mDevices.get(deviceId);
 			if (device != null && device.isGroup()) {
 				result.add(device.getGroup());
@@ -295,6 +323,56 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 		return result;
 	}
 
+	/**
+	 * Get the ids of devices and groups in display order.
+	 *
+	 * @return The ids of devices and groups.
+	 */
+	public List<Integer> getDeviceIds() {
+		synchronized (mDeviceIds) {
+			return new ArrayList<>(mDeviceIds);
+		}
+	}
+
+	/**
+	 * Set the ids of devices and groups, e.g. after change of display order. They are stored only if changed.
+	 *
+	 * @param deviceIds The ids of devices and groups.
+	 */
+	public void setDeviceIds(final List<Integer> deviceIds) {
+		synchronized (mDeviceIds) {
+			if (!mDeviceIds.equals(deviceIds)) {
+				mDeviceIds.clear();
+				mDeviceIds.addAll(deviceIds);
+				PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, mDeviceIds);
+			}
+		}
+	}
+
+	/**
+	 * Add an id to the ids of devices and groups.
+	 *
+	 * @param deviceId The id to be added.
+	 */
+	private void addDeviceId(final int deviceId) {
+		synchronized (mDeviceIds) {
+			mDeviceIds.add(deviceId);
+			PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, mDeviceIds);
+		}
+	}
+
+	/**
+	 * Remove an id from the ids of devices and groups.
+	 *
+	 * @param deviceId The id to be removed.
+	 */
+	private void removeDeviceId(final Integer deviceId) {
+		synchronized (mDeviceIds) {
+			mDeviceIds.remove(deviceId);
+			PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, mDeviceIds);
+		}
+	}
+
 	@Override
 	public Device getDeviceByMac(final String mac) {
 		Integer deviceId = mMacToIdMap.get(mac);
@@ -328,14 +406,28 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 * @param device the device
 	 */
 	public void addOrUpdate(final Device device) {
+		PreferenceUtil.beginBatch();
+		try {
+			addOrUpdateInBatch(device);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Add or update a device in local store within a running batch.
+	 *
+	 * @param device the device
+	 */
+	private void addOrUpdateInBatch(final Device device) {
 		if (!mMacToIdMap.containsKey(device.getTargetAddress())) {
 			// new device
 			int newId = PreferenceUtil.getSharedPreferenceInt(R.string.key_device_max_id, 0) + 1;
 			PreferenceUtil.setSharedPreferenceInt(R.string.key_device_max_id, newId);
 
-			List<Integer> deviceIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
-			deviceIds.add(newId);
-			PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, deviceIds);
+			addDeviceId(newId);
 			mMacToIdMap.put(device.getTargetAddress(), newId);
 		}
 		Integer deviceId = mMacToIdMap.get(device.getTargetAddress());
@@ -375,20 +467,26 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 		PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_product, deviceId, device.getProduct().getId());
 		PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_version, deviceId, device.getVersion());
 		if (device instanceof MultiZoneLight) {
-			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_zone_count, deviceId, ((MultiZoneLight) device).getZoneCount());
-			PreferenceUtil.setIndexedSharedPreferenceLong(R.string.key_device_build_timestamp, deviceId, device.getFirmwareBuildTime().getTime());
-			MultizoneOrientation multizoneOrientation = (MultizoneOrientation) device.getParameter(DEVICE_PARAMETER_MULTIZONE_ORIENTATION);
+			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_zone_count, deviceId,
+					((MultiZoneLight) device).getZoneCount());
+			PreferenceUtil.setIndexedSharedPreferenceLong(R.string.key_device_build_timestamp, deviceId,
+					device.getFirmwareBuildTime().getTime());
+			MultizoneOrientation multizoneOrientation =
+					(MultizoneOrientation) device.getParameter(DEVICE_PARAMETER_MULTIZONE_ORIENTATION);
 			if (multizoneOrientation == null) {
 				multizoneOrientation = MultizoneOrientation.fromOrdinal(
 						PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_multizone_orientation, deviceId, 0));
 				device.setParameter(DEVICE_PARAMETER_MULTIZONE_ORIENTATION, multizoneOrientation);
 			}
-			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_multizone_orientation, deviceId, multizoneOrientation.ordinal());
+			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_multizone_orientation, deviceId,
+					multizoneOrientation.ordinal());
 		}
 		if (device instanceof TileChain) {
 			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_tile_count, deviceId, ((TileChain) device).getTileCount());
-			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_tile_totalwidth, deviceId, ((TileChain) device).getTotalWidth());
-			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_tile_totalheight, deviceId, ((TileChain) device).getTotalHeight());
+			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_tile_totalwidth, deviceId,
+					((TileChain) device).getTotalWidth());
+			PreferenceUtil.setIndexedSharedPreferenceInt(R.string.key_device_tile_totalheight, deviceId,
+					((TileChain) device).getTotalHeight());
 			List<TileInfo> tileInfos = ((TileChain) device).getTileInfo();
 			if (tileInfos != null && tileInfos.size() == ((TileChain) device).getTileCount()) {
 				List<Integer> tileParameters = new ArrayList<>();
@@ -399,7 +497,8 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 					tileParameters.add(tileInfo.getMinY());
 					tileParameters.add(tileInfo.getRotation().ordinal());
 				}
-				PreferenceUtil.setIndexedSharedPreferenceIntList(R.string.key_device_tile_tileinfo_parameters, deviceId, tileParameters);
+				PreferenceUtil.setIndexedSharedPreferenceIntList(R.string.key_device_tile_tileinfo_parameters, deviceId,
+						tileParameters);
 			}
 		}
 
@@ -416,16 +515,29 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 * @param device The device to be deleted.
 	 */
 	public void remove(final Device device) {
+		PreferenceUtil.beginBatch();
+		try {
+			removeInBatch(device);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Remove a device from local store within a running batch.
+	 *
+	 * @param device The device to be deleted.
+	 */
+	private void removeInBatch(final Device device) {
 		Integer deviceId = mMacToIdMap.get(device.getTargetAddress());
 		if (deviceId == null) {
 			return;
 		}
 		mMacToIdMap.remove(device.getTargetAddress());
 		mDevices.remove(deviceId);
-
-		List<Integer> deviceIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
-		deviceIds.remove(deviceId);
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, deviceIds);
+		removeDeviceId(deviceId);
 
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_device_mac, deviceId);
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_device_address, deviceId);
@@ -444,10 +556,8 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_device_build_timestamp, deviceId);
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_device_show, deviceId);
 
-		for (StoredColor storedColor : ColorRegistry.getInstance().getStoredColors()) {
-			if (storedColor.getDeviceId() == deviceId) {
-				ColorRegistry.getInstance().remove(storedColor);
-			}
+		for (StoredColor storedColor : ColorRegistry.getInstance().getStoredColors(deviceId)) {
+			ColorRegistry.getInstance().remove(storedColor);
 		}
 	}
 
@@ -458,6 +568,24 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 * @return the groupId
 	 */
 	public Integer addOrUpdate(final Group group) {
+		PreferenceUtil.beginBatch();
+		try {
+			Integer result = addOrUpdateInBatch(group);
+			PreferenceUtil.setBatchSuccessful();
+			return result;
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Add or update a group in local store within a running batch.
+	 *
+	 * @param group the  group
+	 * @return the groupId
+	 */
+	private Integer addOrUpdateInBatch(final Group group) {
 		if (group == null) {
 			return null;
 		}
@@ -466,9 +594,7 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 			int newId = PreferenceUtil.getSharedPreferenceInt(R.string.key_device_max_id, 0) + 1;
 			PreferenceUtil.setSharedPreferenceInt(R.string.key_device_max_id, newId);
 
-			List<Integer> groupIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
-			groupIds.add(newId);
-			PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, groupIds);
+			addDeviceId(newId);
 			mByteIdToGroupIdMap.put(Base64.encodeToString(group.getGroupId(), Base64.DEFAULT), newId);
 		}
 		Integer groupId = mByteIdToGroupIdMap.get(Base64.encodeToString(group.getGroupId(), Base64.DEFAULT));
@@ -501,16 +627,29 @@ public final class DeviceRegistry implements DeviceRegistryInterface {
 	 * @param group The group to be deleted.
 	 */
 	public void remove(final Group group) {
+		PreferenceUtil.beginBatch();
+		try {
+			removeInBatch(group);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Remove a group from local store within a running batch.
+	 *
+	 * @param group The group to be deleted.
+	 */
+	private void removeInBatch(final Group group) {
 		Integer groupId = mByteIdToGroupIdMap.get(Base64.encodeToString(group.getGroupId(), Base64.DEFAULT));
 		if (groupId == null) {
 			return;
 		}
 		mByteIdToGroupIdMap.remove(Base64.encodeToString(group.getGroupId(), Base64.DEFAULT));
 		mDevices.remove(groupId);
-
-		List<Integer> groupIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
-		groupIds.remove(groupId);
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, groupIds);
+		removeDeviceId(groupId);
 
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_group_byte_id, groupId);
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_device_label, groupId);
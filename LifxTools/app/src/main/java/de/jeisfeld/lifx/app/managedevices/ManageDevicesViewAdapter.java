@@ -36,7 +36,6 @@ import de.jeisfeld.lifx.app.storedcolors.StoredColorsFragment;
 import de.jeisfeld.lifx.app.storedcolors.StoredColorsViewAdapter.MultizoneOrientation;
 import de.jeisfeld.lifx.app.util.DialogUtil;
 import de.jeisfeld.lifx.app.util.DialogUtil.RequestInputDialogFragment.RequestInputDialogListener;
-import de.jeisfeld.lifx.app.util.PreferenceUtil;
 import de.jeisfeld.lifx.lan.Device;
 import de.jeisfeld.lifx.lan.Group;
 import de.jeisfeld.lifx.lan.MultiZoneLight;
@@ -71,7 +70,7 @@ public class ManageDevicesViewAdapter extends RecyclerView.Adapter<ManageDevices
 	 */
 	public ManageDevicesViewAdapter(final Fragment fragment, final RecyclerView recyclerView) {
 		mDevices = DeviceRegistry.getInstance().getDevices(false);
-		mDeviceIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
+		mDeviceIds = DeviceRegistry.getInstance().getDeviceIds();
 		mFragment = new WeakReference<>(fragment);
 	}
 
@@ -318,7 +317,6 @@ public class ManageDevicesViewAdapter extends RecyclerView.Adapter<ManageDevices
 				Collections.swap(mDeviceIds, i, i - 1);
 			}
 		}
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_device_ids, mDeviceIds);
 		notifyItemMoved(fromPosition, toPosition);
 	}
 
@@ -331,7 +329,8 @@ public class ManageDevicesViewAdapter extends RecyclerView.Adapter<ManageDevices
 	@Override
 	public final void onRowClear(final MyViewHolder myViewHolder) {
 		myViewHolder.mRowView.setBackgroundColor(Color.TRANSPARENT);
-
+		// Store the order once at the end of dragging.
+		DeviceRegistry.getInstance().setDeviceIds(mDeviceIds);
 	}
 
 	/**
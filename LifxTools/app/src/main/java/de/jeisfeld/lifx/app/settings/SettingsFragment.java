@@ -25,7 +25,7 @@ import androidx.preference.PreferenceFragmentCompat;
 import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.util.DialogUtil;
 import de.jeisfeld.lifx.app.util.DialogUtil.ConfirmDialogFragment.ConfirmDialogListener;
-import de.jeisfeld.lifx.app.util.PreferenceUtil;
+import de.jeisfeld.lifx.app.util.PreferenceBackup;
 import de.jeisfeld.lifx.os.Logger;
 
 /**
@@ -180,15 +180,9 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 			@Override
 			public void onDialogPositiveClick(final DialogFragment dialog) {
 				try {
-					FileInputStream fileInputStream = new FileInputStream(preferencesFile);
-					byte[] bytes = new byte[(int) preferencesFile.length()];
-					int count = fileInputStream.read(bytes);
-					if (count != preferencesFile.length()) {
-						fileInputStream.close();
-						throw new RuntimeException("Error when reading preferences file");
+					try (FileInputStream fileInputStream = new FileInputStream(preferencesFile)) {
+						PreferenceBackup.read(fileInputStream);
 					}
-					fileInputStream.close();
-					PreferenceUtil.importFromByteArray(bytes);
 					DialogUtil.displayToast(getContext(), R.string.toast_settings_imported);
 				}
 				catch (Exception e) {
@@ -211,9 +205,9 @@ public class SettingsFragment extends PreferenceFragmentCompat {
 	 */
 	private void doExportPreferences(final File preferencesFile) {
 		try {
-			FileOutputStream fileOutputStream = new FileOutputStream(preferencesFile);
-			fileOutputStream.write(PreferenceUtil.getPreferencesExportByteArray());
-			fileOutputStream.close();
+			try (FileOutputStream fileOutputStream = new FileOutputStream(preferencesFile)) {
+				PreferenceBackup.write(fileOutputStream);
+			}
 			DialogUtil.displayToast(getContext(), R.string.toast_settings_exported, preferencesFile.getAbsolutePath());
 		}
 		catch (IOException e) {
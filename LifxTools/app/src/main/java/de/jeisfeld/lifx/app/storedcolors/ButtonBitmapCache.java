@@ -0,0 +1,112 @@
+package de.jeisfeld.lifx.app.storedcolors;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+
+import java.util.function.Supplier;
+
+import de.jeisfeld.lifx.app.Application;
+import de.jeisfeld.lifx.lan.Light;
+import de.jeisfeld.lifx.lan.TileChain;
+
+/**
+ * LRU cache of the bitmaps displayed on stored color buttons, keyed by stored color id, tile chain geometry and relative brightness.
+ * Only bitmaps rendered specifically for the button are cached, as drawables carry state of their own (such as color filters) and
+ * resource bitmaps are shared. Each call gets a new drawable around the cached bitmap. Entries are invalidated when the stored color
+ * is stored or removed.
+ */
+final class ButtonBitmapCache {
+	/**
+	 * The fraction of the maximum memory used for the cache.
+	 */
+	private static final int MEMORY_FRACTION = 16;
+	/**
+	 * The cached bitmaps.
+	 */
+	private static final LruCache<String, Bitmap> CACHE =
+			new LruCache<String, Bitmap>((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / MEMORY_FRACTION)) {
+				@Override
+				protected int sizeOf(final String key, final Bitmap value) {
+					return value.getByteCount();
+				}
+			};
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ButtonBitmapCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the button drawable of a stored color, using the cached bitmap if available.
+	 *
+	 * @param storedColorId      The stored color id. Colors without valid id are not cached.
+	 * @param light              The light.
+	 * @param relativeBrightness The relative brightness.
+	 * @param bitmapCreator      The creator of the bitmap if not cached. It has to create a new bitmap for the button, or return null.
+	 * @return The drawable. Null if there is no bitmap.
+	 */
+	static Drawable getDrawable(final int storedColorId, final Light light, final double relativeBrightness,
+								final Supplier<Bitmap> bitmapCreator) {
+		String key = storedColorId < 0 ? null : getKey(storedColorId, light, relativeBrightness);
+		Bitmap bitmap = key == null ? null : CACHE.get(key);
+		if (bitmap == null) {
+			bitmap = bitmapCreator.get();
+			if (bitmap == null) {
+				return null;
+			}
+			if (key != null) {
+				CACHE.put(key, bitmap);
+			}
+		}
+		return new BitmapDrawable(Application.getAppContext().getResources(), bitmap);
+	}
+
+	/**
+	 * Invalidate the cached bitmaps of a stored color.
+	 *
+	 * @param storedColorId The stored color id.
+	 */
+	static void invalidate(final int storedColorId) {
+		String prefix = getKeyPrefix(storedColorId);
+		for (String key : CACHE.snapshot().keySet()) {
+			if (key.startsWith(prefix)) {
+				CACHE.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Invalidate all cached bitmaps.
+	 */
+	static void clear() {
+		CACHE.evictAll();
+	}
+
+	/**
+	 * Get the cache key.
+	 *
+	 * @param storedColorId      The stored color id.
+	 * @param light              The light.
+	 * @param relativeBrightness The relative brightness.
+	 * @return The cache key.
+	 */
+	private static String getKey(final int storedColorId, final Light light, final double relativeBrightness) {
+		String geometry = light instanceof TileChain
+				? ((TileChain) light).getTotalWidth() + "x" + ((TileChain) light).getTotalHeight() : "";
+		return getKeyPrefix(storedColorId) + geometry + "/" + relativeBrightness;
+	}
+
+	/**
+	 * Get the prefix of the cache keys of a stored color.
+	 *
+	 * @param storedColorId The stored color id.
+	 * @return The prefix.
+	 */
+	private static String getKeyPrefix(final int storedColorId) {
+		return storedColorId + "/";
+	}
+}
@@ -26,25 +26,55 @@ public final class ColorRegistry {
 	 * The stored colors.
 	 */
 	private final SparseArray<StoredColor> mStoredColors = new SparseArray<>();
+	/**
+	 * The ids of the stored colors in display order. This is the authoritative copy of the stored list.
+	 */
+	private final List<Integer> mColorIds;
 
 	/**
 	 * Create the color registry and retrieve stored entries.
 	 */
 	private ColorRegistry() {
-		List<Integer> colorIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_color_ids);
-		for (int colorId : colorIds) {
+		mColorIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_color_ids);
+		for (int colorId : mColorIds) {
 			mStoredColors.put(colorId, StoredColor.fromId(colorId));
 		}
 	}
 
+	/**
+	 * Get the ids of the stored colors in display order.
+	 *
+	 * @return The ids of the stored colors.
+	 */
+	public List<Integer> getColorIds() {
+		synchronized (mColorIds) {
+			return new ArrayList<>(mColorIds);
+		}
+	}
+
+	/**
+	 * Set the ids of the stored colors, e.g. after change of display order. They are stored only if changed.
+	 *
+	 * @param colorIds The ids of the stored colors.
+	 */
+	public void setColorIds(final List<Integer> colorIds) {
+		synchronized (mColorIds) {
+			if (!mColorIds.equals(colorIds)) {
+				mColorIds.clear();
+				mColorIds.addAll(colorIds);
+				PreferenceUtil.setSharedPreferenceIntList(R.string.key_color_ids, mColorIds);
+			}
+		}
+	}
+
 	/**
 	 * Get the list of stored colors.
 	 *
 	 * @return The list of stored colors.
 	 */
 	public List<StoredColor> getStoredColors() {
-		List<Integer> colorIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_color_ids);
-		List<Integer> deviceIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_device_ids);
+		List<Integer> colorIds = getColorIds();
+		List<Integer> deviceIds = DeviceRegistry.getInstance().getDeviceIds();
 		List<StoredColor> allStoredColors = new ArrayList<>();
 		for (int colorId : colorIds) {
 			allStoredColors.add(mStoredColors.get(colorId));
@@ -65,7 +95,7 @@ public final class ColorRegistry {
 			result.add(colorWithoutDeviceId);
 			newColorIds.add(colorWithoutDeviceId.getId());
 		}
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_color_ids, newColorIds);
+		setColorIds(newColorIds);
 
 		return result;
 	}
@@ -92,7 +122,7 @@ public final class ColorRegistry {
 	 * @return The stored colors of this device.
 	 */
 	public List<StoredColor> getStoredColors(final int deviceId) {
-		List<Integer> colorIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_color_ids);
+		List<Integer> colorIds = getColorIds();
 		List<StoredColor> colorsOfDevice = new ArrayList<>();
 		List<Integer> colorIdsOfDevice = new ArrayList<>();
 		List<Integer> colorIdsOfOtherDevices = new ArrayList<>();
@@ -108,7 +138,7 @@ public final class ColorRegistry {
 		}
 		List<Integer> newColorIds = new ArrayList<>(colorIdsOfDevice);
 		newColorIds.addAll(colorIdsOfOtherDevices);
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_color_ids, newColorIds);
+		setColorIds(newColorIds);
 
 		return colorsOfDevice;
 	}
@@ -138,8 +168,31 @@ public final class ColorRegistry {
 	 * @param storedColor the stored color
 	 */
 	public void addOrUpdate(final StoredColor storedColor) {
+		PreferenceUtil.beginBatch();
+		try {
+			addOrUpdateInBatch(storedColor);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Add or update a stored color in local store within a running batch.
+	 *
+	 * @param storedColor the stored color
+	 */
+	private void addOrUpdateInBatch(final StoredColor storedColor) {
 		StoredColor newStoredColor = storedColor.store();
 		mStoredColors.put(newStoredColor.getId(), newStoredColor);
+		invalidateButtonBitmaps(newStoredColor);
+		synchronized (mColorIds) {
+			if (!mColorIds.contains(newStoredColor.getId())) {
+				// The id has already been appended to the stored list.
+				mColorIds.add(newStoredColor.getId());
+			}
+		}
 	}
 
 	/**
@@ -148,12 +201,30 @@ public final class ColorRegistry {
 	 * @param storedColor The stored color to be deleted.
 	 */
 	public void remove(final StoredColor storedColor) {
+		PreferenceUtil.beginBatch();
+		try {
+			removeInBatch(storedColor);
+			PreferenceUtil.setBatchSuccessful();
+		}
+		finally {
+			PreferenceUtil.endBatch();
+		}
+	}
+
+	/**
+	 * Remove a stored color from local store within a running batch.
+	 *
+	 * @param storedColor The stored color to be deleted.
+	 */
+	private void removeInBatch(final StoredColor storedColor) {
 		int colorId = storedColor.getId();
 		mStoredColors.remove(colorId);
+		invalidateButtonBitmaps(storedColor);
 
-		List<Integer> colorIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_color_ids);
-		colorIds.remove((Integer) colorId);
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_color_ids, colorIds);
+		synchronized (mColorIds) {
+			mColorIds.remove((Integer) colorId);
+			PreferenceUtil.setSharedPreferenceIntList(R.string.key_color_ids, mColorIds);
+		}
 
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_color_name, colorId);
 		PreferenceUtil.removeIndexedSharedPreference(R.string.key_color_device_id, colorId);
@@ -178,6 +249,24 @@ public final class ColorRegistry {
 		}
 	}
 
+	/**
+	 * Invalidate the cached button bitmaps affected by a change of a stored color. As image transitions display stored tile colors
+	 * of their device, the animations of the device are invalidated as well.
+	 *
+	 * @param storedColor The changed stored color.
+	 */
+	private void invalidateButtonBitmaps(final StoredColor storedColor) {
+		ButtonBitmapCache.invalidate(storedColor.getId());
+		if (storedColor instanceof StoredTileColors) {
+			for (int i = 0; i < mStoredColors.size(); i++) {
+				StoredColor otherStoredColor = mStoredColors.valueAt(i);
+				if (otherStoredColor instanceof StoredAnimation && otherStoredColor.getDeviceId() == storedColor.getDeviceId()) {
+					ButtonBitmapCache.invalidate(otherStoredColor.getId());
+				}
+			}
+		}
+	}
+
 	/**
 	 * Get the ColorRegistry as singleton.
 	 *
@@ -195,6 +284,7 @@ public final class ColorRegistry {
 	 */
 	public static synchronized void cleanUp() {
 		ColorRegistry.mInstance = null;
+		ButtonBitmapCache.clear();
 	}
 
 }
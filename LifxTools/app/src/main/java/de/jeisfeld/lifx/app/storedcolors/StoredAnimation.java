@@ -127,8 +127,12 @@ public class StoredAnimation extends StoredColor {
 	@Override
 	public final Drawable getButtonDrawable(final Context context) {
 		Drawable animationDrawable = ResourcesCompat.getDrawable(context.getResources(), R.drawable.ic_toggle_animation_play, context.getTheme());
-		return new LayerDrawable(
-				new Drawable[]{getAnimationData().getBaseButtonDrawable(context, getLight(), getRelativeBrightness()), animationDrawable});
+		Drawable baseDrawable = ButtonBitmapCache.getDrawable(getId(), getLight(), getRelativeBrightness(),
+				() -> getAnimationData().getBaseButtonBitmap(getLight(), getRelativeBrightness()));
+		if (baseDrawable == null) {
+			baseDrawable = getAnimationData().getBaseButtonDrawable(context, getLight(), getRelativeBrightness());
+		}
+		return new LayerDrawable(new Drawable[]{baseDrawable, animationDrawable});
 	}
 
 	@Override
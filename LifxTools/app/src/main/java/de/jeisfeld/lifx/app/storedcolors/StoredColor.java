@@ -13,6 +13,7 @@ import java.util.List;
 import androidx.annotation.NonNull;
 import de.jeisfeld.lifx.app.Application;
 import de.jeisfeld.lifx.app.R;
+import de.jeisfeld.lifx.app.home.DeviceCommandQueue;
 import de.jeisfeld.lifx.app.home.GroupViewModel;
 import de.jeisfeld.lifx.app.home.LightViewModel;
 import de.jeisfeld.lifx.app.home.MainViewModel;
@@ -20,7 +21,6 @@ import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
 import de.jeisfeld.lifx.app.util.ColorUtil;
 import de.jeisfeld.lifx.app.util.DialogUtil;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
-import de.jeisfeld.lifx.lan.Device;
 import de.jeisfeld.lifx.lan.Group;
 import de.jeisfeld.lifx.lan.Light;
 import de.jeisfeld.lifx.lan.type.Color;
@@ -257,12 +257,9 @@ public class StoredColor {
 			}
 		}
 		else if (getGroup() != null) {
-			for (Device device : DeviceRegistry.getInstance().getDevices(getDeviceId(), false)) {
-				GroupViewModel groupModel = model instanceof GroupViewModel ? (GroupViewModel) model : null;
-				if (device instanceof Light) {
-					new GroupViewModel.SetColorTask(groupModel, getColor(), (Light) device).execute();
-				}
-			}
+			GroupViewModel groupModel = model instanceof GroupViewModel ? (GroupViewModel) model : null;
+			DeviceCommandQueue.forGroup(getDeviceId()).submit(
+					new GroupViewModel.SetColorTask(groupModel, getColor(), DeviceRegistry.getInstance().getDevices(getDeviceId(), false)));
 		}
 	}
 
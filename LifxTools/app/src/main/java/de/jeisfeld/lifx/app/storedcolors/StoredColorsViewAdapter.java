@@ -23,7 +23,6 @@ import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.alarms.AlarmRegistry;
 import de.jeisfeld.lifx.app.util.DialogUtil;
 import de.jeisfeld.lifx.app.util.DialogUtil.RequestInputDialogFragment.RequestInputDialogListener;
-import de.jeisfeld.lifx.app.util.PreferenceUtil;
 
 /**
  * Adapter for the RecyclerView that allows to sort devices.
@@ -61,7 +60,7 @@ public class StoredColorsViewAdapter extends RecyclerView.Adapter<StoredColorsVi
 		else {
 			mStoredColors = ColorRegistry.getInstance().getStoredColors(deviceId);
 		}
-		mColorIds = PreferenceUtil.getSharedPreferenceIntList(R.string.key_color_ids);
+		mColorIds = ColorRegistry.getInstance().getColorIds();
 		mFragment = new WeakReference<>(fragment);
 	}
 
@@ -195,7 +194,6 @@ public class StoredColorsViewAdapter extends RecyclerView.Adapter<StoredColorsVi
 				Collections.swap(mColorIds, i, i - 1);
 			}
 		}
-		PreferenceUtil.setSharedPreferenceIntList(R.string.key_color_ids, mColorIds);
 		notifyItemMoved(fromPosition, toPosition);
 	}
 
@@ -208,7 +206,8 @@ public class StoredColorsViewAdapter extends RecyclerView.Adapter<StoredColorsVi
 	@Override
 	public final void onRowClear(final MyViewHolder myViewHolder) {
 		myViewHolder.mRowView.setBackgroundColor(android.graphics.Color.TRANSPARENT);
-
+		// Store the order once at the end of dragging.
+		ColorRegistry.getInstance().setColorIds(mColorIds);
 	}
 
 	/**
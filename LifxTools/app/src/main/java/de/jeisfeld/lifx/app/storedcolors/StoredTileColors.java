@@ -196,7 +196,7 @@ public class StoredTileColors extends StoredColor {
 				drawable.setColor(android.graphics.Color.GRAY);
 			}
 			else {
-				return getTileChainDrawable(tileChain, colors);
+				return ButtonBitmapCache.getDrawable(getId(), tileChain, 1, () -> getTileChainBitmap(tileChain, colors));
 			}
 		}
 		return drawable;
@@ -210,6 +210,17 @@ public class StoredTileColors extends StoredColor {
 	 * @return The drawable.
 	 */
 	public static Drawable getTileChainDrawable(final TileChain tileChain, final TileChainColors tileChainColors) {
+		return new BitmapDrawable(Application.getAppContext().getResources(), getTileChainBitmap(tileChain, tileChainColors));
+	}
+
+	/**
+	 * Get a new bitmap showing tile chain colors.
+	 *
+	 * @param tileChain       The tile chain.
+	 * @param tileChainColors The tile chain colors.
+	 * @return The bitmap.
+	 */
+	public static Bitmap getTileChainBitmap(final TileChain tileChain, final TileChainColors tileChainColors) {
 		Bitmap bitmap = Bitmap.createBitmap(tileChain.getTotalWidth(), tileChain.getTotalHeight(), Config.ARGB_8888);
 		for (int y = 0; y < tileChain.getTotalHeight(); y++) {
 			for (int x = 0; x < tileChain.getTotalWidth(); x++) {
@@ -217,7 +228,7 @@ public class StoredTileColors extends StoredColor {
 						ColorUtil.toAndroidDisplayColor(tileChainColors.getColor(x, y, tileChain.getTotalWidth(), tileChain.getTotalHeight())));
 			}
 		}
-		return new BitmapDrawable(Application.getAppContext().getResources(), bitmap);
+		return bitmap;
 	}
 
 	@Override
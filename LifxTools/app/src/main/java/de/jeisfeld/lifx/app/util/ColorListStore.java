@@ -0,0 +1,309 @@
+package de.jeisfeld.lifx.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.AtomicFile;
+import de.jeisfeld.lifx.app.Application;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Binary format for color lists, e.g. the pixel colors of stored tile chain colors. The colors are stored as packed little-endian HSBK
+ * shorts, or as run-length encoded deltas between subsequent colors, whichever is smaller. Color lists stored in separate files by
+ * former versions are read for migration to the database.
+ */
+final class ColorListStore {
+	/**
+	 * The directory of the color lists within the files directory of the app.
+	 */
+	private static final String DIRECTORY = "colorlists";
+	/**
+	 * The file suffix of color lists.
+	 */
+	private static final String SUFFIX = ".bin";
+	/**
+	 * The magic number at the start of each file.
+	 */
+	private static final short MAGIC = 0x4C43;
+	/**
+	 * The version of the file format.
+	 */
+	private static final byte VERSION = 1;
+	/**
+	 * The size of the header: magic, version, encoding and number of colors.
+	 */
+	private static final int HEADER_SIZE = 8;
+	/**
+	 * The size of one color in raw encoding.
+	 */
+	private static final int COLOR_SIZE = 8;
+	/**
+	 * Encoding as packed HSBK shorts.
+	 */
+	private static final byte ENCODING_RAW = 0;
+	/**
+	 * Encoding as runs of equal colors, each given by its length and the zigzag varint deltas of HSBK to the previous run.
+	 */
+	private static final byte ENCODING_DELTA_RUN_LENGTH = 1;
+	/**
+	 * The number of components of a color.
+	 */
+	private static final int COMPONENTS = 4;
+	/**
+	 * The bits of a varint byte carrying data.
+	 */
+	private static final int VARINT_DATA = 0x7F;
+	/**
+	 * The bit of a varint byte indicating that more bytes follow.
+	 */
+	private static final int VARINT_MORE = 0x80;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ColorListStore() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Load a color list.
+	 *
+	 * @param key The key of the color list.
+	 * @return The colors.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private static ArrayList<Color> load(final String key) throws IOException {
+		byte[] bytes = new AtomicFile(getFile(key)).readFully();
+		try {
+			return parse(bytes);
+		}
+		catch (BufferUnderflowException e) {
+			throw new IOException("Truncated color list " + key, e);
+		}
+	}
+
+	/**
+	 * Get all color lists stored in files, e.g. for migration to the database. Files which cannot be read are skipped.
+	 *
+	 * @return The color lists by key.
+	 */
+	static Map<String, List<Color>> getAll() {
+		Map<String, List<Color>> result = new HashMap<>();
+		File[] files = getDirectory().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(SUFFIX)) {
+					String key = name.substring(0, name.length() - SUFFIX.length());
+					try {
+						result.put(key, load(key));
+					}
+					catch (IOException e) {
+						Logger.error(e);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove a color list stored in a file.
+	 *
+	 * @param key The key of the color list.
+	 */
+	static void remove(final String key) {
+		File file = getFile(key);
+		if (!file.delete()) {
+			Logger.error(new IOException("Failed to delete file " + file));
+		}
+	}
+
+	/**
+	 * Get the directory of the color lists.
+	 *
+	 * @return The directory.
+	 */
+	private static File getDirectory() {
+		return new File(Application.getAppContext().getFilesDir(), DIRECTORY);
+	}
+
+	/**
+	 * Get the file of a color list.
+	 *
+	 * @param key The key of the color list.
+	 * @return The file.
+	 */
+	private static File getFile(final String key) {
+		return new File(getDirectory(), key + SUFFIX);
+	}
+
+	/**
+	 * Encode a color list in the smaller of the available encodings.
+	 *
+	 * @param colorList The colors.
+	 * @return The encoded colors including header.
+	 */
+	static byte[] encode(final List<Color> colorList) {
+		ByteArrayOutputStream runs = new ByteArrayOutputStream();
+		int[] previous = new int[COMPONENTS];
+		int i = 0;
+		while (i < colorList.size()) {
+			int[] components = getComponents(colorList.get(i));
+			int runLength = 1;
+			while (i + runLength < colorList.size() && colorList.get(i + runLength).equals(colorList.get(i))) {
+				runLength++;
+			}
+			writeVarint(runs, runLength);
+			for (int c = 0; c < COMPONENTS; c++) {
+				// Deltas are computed modulo 2^16 and mapped to the shortest signed value.
+				writeVarint(runs, zigzag((short) (components[c] - previous[c])));
+			}
+			previous = components;
+			i += runLength;
+		}
+
+		boolean isRaw = COLOR_SIZE * colorList.size() <= runs.size();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (isRaw ? COLOR_SIZE * colorList.size() : runs.size()))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putShort(MAGIC).put(VERSION).put(isRaw ? ENCODING_RAW : ENCODING_DELTA_RUN_LENGTH).putInt(colorList.size());
+		if (isRaw) {
+			for (Color color : colorList) {
+				buffer.putShort(color.getHue()).putShort(color.getSaturation()).putShort(color.getBrightness())
+						.putShort(color.getColorTemperature());
+			}
+		}
+		else {
+			buffer.put(runs.toByteArray());
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Decode a color list.
+	 *
+	 * @param bytes The encoded colors including header.
+	 * @return The colors. Null if not readable.
+	 */
+	static ArrayList<Color> decode(final byte[] bytes) {
+		try {
+			return parse(bytes);
+		}
+		catch (IOException | BufferUnderflowException e) {
+			Logger.error(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Parse an encoded color list.
+	 *
+	 * @param bytes The encoded colors including header.
+	 * @return The colors.
+	 * @throws IOException if the format is not supported.
+	 */
+	private static ArrayList<Color> parse(final byte[] bytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.getShort() != MAGIC || buffer.get() != VERSION) {
+			throw new IOException("Unsupported color list format");
+		}
+		byte encoding = buffer.get();
+		int count = buffer.getInt();
+		ArrayList<Color> colorList = new ArrayList<>(count);
+		if (encoding == ENCODING_RAW) {
+			for (int i = 0; i < count; i++) {
+				colorList.add(new Color(buffer.getShort(), buffer.getShort(), buffer.getShort(), buffer.getShort()));
+			}
+		}
+		else if (encoding == ENCODING_DELTA_RUN_LENGTH) {
+			int[] components = new int[COMPONENTS];
+			while (colorList.size() < count) {
+				int runLength = readVarint(buffer);
+				for (int c = 0; c < COMPONENTS; c++) {
+					components[c] = (short) (components[c] + unzigzag(readVarint(buffer)));
+				}
+				Color color = new Color(components[0], components[1], components[2], components[3]); // MAGIC_NUMBER
+				for (int i = 0; i < runLength && colorList.size() < count; i++) {
+					colorList.add(color);
+				}
+			}
+		}
+		else {
+			throw new IOException("Unsupported color list encoding " + encoding);
+		}
+		return colorList;
+	}
+
+	/**
+	 * Get the HSBK components of a color as shorts.
+	 *
+	 * @param color The color.
+	 * @return The components.
+	 */
+	private static int[] getComponents(final Color color) {
+		return new int[] {color.getHue(), color.getSaturation(), color.getBrightness(), color.getColorTemperature()};
+	}
+
+	/**
+	 * Map a signed value to an unsigned value, so that small absolute values give small results.
+	 *
+	 * @param value The signed value.
+	 * @return The unsigned value.
+	 */
+	private static int zigzag(final int value) {
+		return (value << 1) ^ (value >> 31); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Reverse the zigzag mapping.
+	 *
+	 * @param value The unsigned value.
+	 * @return The signed value.
+	 */
+	private static int unzigzag(final int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Write a non-negative value as varint.
+	 *
+	 * @param outputStream The output stream.
+	 * @param value        The value.
+	 */
+	private static void writeVarint(final ByteArrayOutputStream outputStream, final int value) {
+		int remaining = value;
+		while ((remaining & ~VARINT_DATA) != 0) {
+			outputStream.write((remaining & VARINT_DATA) | VARINT_MORE);
+			remaining >>>= 7; // MAGIC_NUMBER
+		}
+		outputStream.write(remaining);
+	}
+
+	/**
+	 * Read a varint.
+	 *
+	 * @param buffer The buffer.
+	 * @return The value.
+	 */
+	private static int readVarint(final ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = buffer.get();
+			value |= (b & VARINT_DATA) << shift;
+			shift += 7; // MAGIC_NUMBER
+		}
+		while ((b & VARINT_MORE) != 0);
+		return value;
+	}
+}
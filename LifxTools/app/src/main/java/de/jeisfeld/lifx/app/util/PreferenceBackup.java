@@ -0,0 +1,601 @@
+package de.jeisfeld.lifx.app.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+import androidx.preference.PreferenceManager;
+import de.jeisfeld.lifx.app.Application;
+import de.jeisfeld.lifx.app.R;
+import de.jeisfeld.lifx.app.alarms.AlarmReceiver;
+import de.jeisfeld.lifx.app.alarms.AlarmRegistry;
+import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
+import de.jeisfeld.lifx.app.storedcolors.ColorRegistry;
+import de.jeisfeld.lifx.app.util.PreferenceDatabase.FieldWriter;
+
+/**
+ * Backup of the preferences and the preference database in a streaming, versioned binary format. The backup consists of a header
+ * (magic number and version) followed by records, each starting with its type byte: preferences with key and typed value, table
+ * markers with table name, and database fields of the current table with entity id, field name and typed value. Strings and blobs
+ * are length-prefixed, and color lists are kept in their binary database format. Import may be restricted to some sections, which
+ * then replace the existing data of these sections together with the sections referring to them, so that no references to removed
+ * ids remain. Backups in the former Java serialization format can still be imported.
+ */
+public final class PreferenceBackup {
+	/**
+	 * The magic number at the start of a backup ("LXBK").
+	 */
+	private static final int MAGIC = 0x4C58424B;
+	/**
+	 * The version of the backup format.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * The magic number at the start of a backup in Java serialization format.
+	 */
+	private static final int LEGACY_MAGIC = 0xACED;
+	/**
+	 * The maximum length of a string or blob, as protection against corrupt files.
+	 */
+	private static final int MAX_LENGTH = 1 << 24;
+	/**
+	 * Record type marking the end of the backup.
+	 */
+	private static final byte RECORD_END = 0;
+	/**
+	 * Record type of a preference.
+	 */
+	private static final byte RECORD_PREFERENCE = 1;
+	/**
+	 * Record type of a table marker.
+	 */
+	private static final byte RECORD_TABLE = 2;
+	/**
+	 * Record type of a database field.
+	 */
+	private static final byte RECORD_FIELD = 3;
+	/**
+	 * Value type null.
+	 */
+	private static final byte VALUE_NULL = 0;
+	/**
+	 * Value type boolean.
+	 */
+	private static final byte VALUE_BOOLEAN = 1;
+	/**
+	 * Value type int.
+	 */
+	private static final byte VALUE_INT = 2;
+	/**
+	 * Value type long.
+	 */
+	private static final byte VALUE_LONG = 3;
+	/**
+	 * Value type float.
+	 */
+	private static final byte VALUE_FLOAT = 4;
+	/**
+	 * Value type double.
+	 */
+	private static final byte VALUE_DOUBLE = 5;
+	/**
+	 * Value type string.
+	 */
+	private static final byte VALUE_STRING = 6;
+	/**
+	 * Value type blob.
+	 */
+	private static final byte VALUE_BLOB = 7;
+	/**
+	 * Value type string set.
+	 */
+	private static final byte VALUE_STRING_SET = 8;
+	/**
+	 * The classes allowed in backups in Java serialization format.
+	 */
+	private static final List<String> LEGACY_CLASSES = Arrays.asList(
+			"java.util.HashMap", "java.util.HashSet", "java.lang.Boolean", "java.lang.Integer", "java.lang.Long", "java.lang.Float",
+			"java.lang.Number");
+
+	/**
+	 * Hide default constructor.
+	 */
+	private PreferenceBackup() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Write a backup of all preferences.
+	 *
+	 * @param outputStream The output stream. It is not closed.
+	 * @throws IOException if writing fails.
+	 */
+	public static void write(final OutputStream outputStream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		for (Entry<String, ?> entry : getSharedPreferences().getAll().entrySet()) {
+			out.writeByte(RECORD_PREFERENCE);
+			writeString(out, entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+		PreferenceDatabase database = PreferenceDatabase.getInstance();
+		for (String table : PreferenceDatabase.getTableNames()) {
+			out.writeByte(RECORD_TABLE);
+			writeString(out, table);
+			database.readTable(table, (id, name, value) -> {
+				out.writeByte(RECORD_FIELD);
+				out.writeInt(id);
+				writeString(out, name);
+				writeValue(out, value);
+			});
+		}
+		out.writeByte(RECORD_END);
+		out.flush();
+	}
+
+	/**
+	 * Import a backup. The selected sections, together with the sections referring to them, are replaced by the content of the
+	 * backup. Other sections remain unchanged. If import fails, nothing is changed.
+	 *
+	 * @param inputStream The input stream. It is not closed.
+	 * @param sections    The sections to be imported.
+	 * @throws IOException if the backup cannot be read, or if imported data refers to ids not existing in the remaining sections.
+	 */
+	public static void read(final InputStream inputStream, final Set<Section> sections) throws IOException {
+		Set<Section> importedSections = Section.withReferringSections(sections);
+		BufferedInputStream in = new BufferedInputStream(inputStream);
+		in.mark(2);
+		int magic = in.read() << 8 | in.read(); // MAGIC_NUMBER
+		in.reset();
+		if (magic == LEGACY_MAGIC) {
+			readLegacy(in, importedSections);
+		}
+		else {
+			readCurrent(new DataInputStream(in), importedSections);
+		}
+
+		DeviceRegistry.cleanUp();
+		ColorRegistry.cleanUp();
+		AlarmRegistry.cleanUp();
+		if (importedSections.contains(Section.ALARMS)) {
+			AlarmReceiver.createAllAlarms();
+		}
+	}
+
+	/**
+	 * Import a backup of all sections.
+	 *
+	 * @param inputStream The input stream. It is not closed.
+	 * @throws IOException if the backup cannot be read.
+	 */
+	public static void read(final InputStream inputStream) throws IOException {
+		read(inputStream, EnumSet.allOf(Section.class));
+	}
+
+	/**
+	 * Import a backup in the current format.
+	 *
+	 * @param in       The input stream.
+	 * @param sections The sections to be imported, including the sections referring to them.
+	 * @throws IOException if the backup cannot be read.
+	 */
+	private static void readCurrent(final DataInputStream in, final Set<Section> sections) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Invalid backup file");
+		}
+		int version = in.readUnsignedShort();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported backup version " + version);
+		}
+		Predicate<String> isSelected = name -> sections.contains(Section.fromName(name));
+		Editor editor = removePreferences(isSelected);
+
+		try (FieldWriter writer = PreferenceDatabase.getInstance().startWriting()) {
+			writer.deleteFields(isSelected);
+			String table = null;
+			byte recordType = in.readByte();
+			while (recordType != RECORD_END) {
+				switch (recordType) {
+				case RECORD_PREFERENCE:
+					String key = readString(in);
+					Object preferenceValue = readValue(in);
+					if (isSelected.test(key)) {
+						putValue(editor, key, preferenceValue);
+					}
+					break;
+				case RECORD_TABLE:
+					table = readString(in);
+					break;
+				case RECORD_FIELD:
+					int id = in.readInt();
+					String name = readString(in);
+					Object fieldValue = readValue(in);
+					if (table == null) {
+						throw new IOException("Field outside of table");
+					}
+					if (isSelected.test(name)) {
+						writer.write(table, id, name, fieldValue);
+					}
+					break;
+				default:
+					throw new IOException("Invalid record type " + recordType);
+				}
+				recordType = in.readByte();
+			}
+			checkReferences(writer, sections);
+			writer.setSuccessful();
+		}
+		editor.apply();
+	}
+
+	/**
+	 * Import a backup in the former Java serialization format, accepting only the classes of preference maps. The indexed
+	 * preferences contained in this format are written to the database in the same transaction as the removal of the old fields.
+	 *
+	 * @param in       The input stream.
+	 * @param sections The sections to be imported, including the sections referring to them.
+	 * @throws IOException if the backup cannot be read.
+	 */
+	private static void readLegacy(final InputStream in, final Set<Section> sections) throws IOException {
+		Object preferences;
+		ObjectInputStream objectInputStream = new ObjectInputStream(in) {
+			@Override
+			protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+				if (!LEGACY_CLASSES.contains(desc.getName())) {
+					throw new InvalidClassException(desc.getName(), "Unexpected class in backup file");
+				}
+				return super.resolveClass(desc);
+			}
+		};
+		try {
+			preferences = objectInputStream.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		if (!(preferences instanceof Map)) {
+			throw new IOException("Invalid backup file");
+		}
+
+		Predicate<String> isSelected = name -> sections.contains(Section.fromName(name));
+		Editor editor = removePreferences(isSelected);
+		try (FieldWriter writer = PreferenceDatabase.getInstance().startWriting()) {
+			writer.deleteFields(isSelected);
+			for (Entry<?, ?> entry : ((Map<?, ?>) preferences).entrySet()) {
+				if (entry.getKey() instanceof String && isSelected.test((String) entry.getKey())
+						&& !writer.writeIndexedPreference((String) entry.getKey(), entry.getValue())) {
+					putValue(editor, (String) entry.getKey(), entry.getValue());
+				}
+			}
+			checkReferences(writer, sections);
+			writer.setSuccessful();
+		}
+		editor.apply();
+	}
+
+	/**
+	 * Check that the imported sections do not refer to ids missing in the sections which are not imported.
+	 *
+	 * @param writer   The writer holding the import transaction.
+	 * @param sections The imported sections.
+	 * @throws IOException if some reference is missing.
+	 */
+	private static void checkReferences(final FieldWriter writer, final Set<Section> sections) throws IOException {
+		Context context = Application.getAppContext();
+		String colorDeviceIdKey = context.getString(R.string.key_color_device_id);
+		if (sections.contains(Section.COLORS) && !sections.contains(Section.DEVICES)
+				&& writer.hasMissingReferences(colorDeviceIdKey, context.getString(R.string.key_device_mac))) {
+			throw new IOException("Imported colors refer to missing devices");
+		}
+		if (sections.contains(Section.ALARMS) && !sections.contains(Section.COLORS)
+				&& writer.hasMissingReferences(context.getString(R.string.key_alarm_step_stored_color_id), colorDeviceIdKey)) {
+			throw new IOException("Imported alarms refer to missing colors");
+		}
+	}
+
+	/**
+	 * Get the default shared preferences.
+	 *
+	 * @return The default shared preferences.
+	 */
+	private static SharedPreferences getSharedPreferences() {
+		return PreferenceManager.getDefaultSharedPreferences(Application.getAppContext());
+	}
+
+	/**
+	 * Get an editor removing some preferences.
+	 *
+	 * @param isRemoved The condition on preference keys for removal.
+	 * @return The editor, not yet applied.
+	 */
+	private static Editor removePreferences(final Predicate<String> isRemoved) {
+		Editor editor = getSharedPreferences().edit();
+		for (String key : getSharedPreferences().getAll().keySet()) {
+			if (isRemoved.test(key)) {
+				editor.remove(key);
+			}
+		}
+		return editor;
+	}
+
+	/**
+	 * Put a preference value into an editor.
+	 *
+	 * @param editor The editor.
+	 * @param key    The preference key.
+	 * @param value  The value. Values of other types than those of shared preferences are ignored.
+	 */
+	private static void putValue(final Editor editor, final String key, final Object value) {
+		if (value instanceof Boolean) {
+			editor.putBoolean(key, (Boolean) value);
+		}
+		else if (value instanceof Integer) {
+			editor.putInt(key, (Integer) value);
+		}
+		else if (value instanceof Long) {
+			editor.putLong(key, (Long) value);
+		}
+		else if (value instanceof Float) {
+			editor.putFloat(key, (Float) value);
+		}
+		else if (value instanceof String) {
+			editor.putString(key, (String) value);
+		}
+		else if (value instanceof Set) {
+			Set<String> values = new HashSet<>();
+			for (Object element : (Set<?>) value) {
+				values.add(String.valueOf(element));
+			}
+			editor.putStringSet(key, values);
+		}
+	}
+
+	/**
+	 * Write a typed value.
+	 *
+	 * @param out   The output stream.
+	 * @param value The value.
+	 * @throws IOException if writing fails or the type is not supported.
+	 */
+	private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(VALUE_NULL);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(VALUE_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(VALUE_INT);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(VALUE_LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(VALUE_FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(VALUE_DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof String) {
+			out.writeByte(VALUE_STRING);
+			writeString(out, (String) value);
+		}
+		else if (value instanceof byte[]) {
+			out.writeByte(VALUE_BLOB);
+			writeBytes(out, (byte[]) value);
+		}
+		else if (value instanceof Set) {
+			out.writeByte(VALUE_STRING_SET);
+			out.writeInt(((Set<?>) value).size());
+			for (Object element : (Set<?>) value) {
+				writeString(out, String.valueOf(element));
+			}
+		}
+		else {
+			throw new IOException("Unsupported value type " + value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Read a typed value.
+	 *
+	 * @param in The input stream.
+	 * @return The value.
+	 * @throws IOException if reading fails or the type is not supported.
+	 */
+	private static Object readValue(final DataInputStream in) throws IOException {
+		byte valueType = in.readByte();
+		switch (valueType) {
+		case VALUE_NULL:
+			return null;
+		case VALUE_BOOLEAN:
+			return in.readBoolean();
+		case VALUE_INT:
+			return in.readInt();
+		case VALUE_LONG:
+			return in.readLong();
+		case VALUE_FLOAT:
+			return in.readFloat();
+		case VALUE_DOUBLE:
+			return in.readDouble();
+		case VALUE_STRING:
+			return readString(in);
+		case VALUE_BLOB:
+			return readBytes(in);
+		case VALUE_STRING_SET:
+			int size = readLength(in);
+			Set<String> values = new HashSet<>();
+			for (int i = 0; i < size; i++) {
+				values.add(readString(in));
+			}
+			return values;
+		default:
+			throw new IOException("Invalid value type " + valueType);
+		}
+	}
+
+	/**
+	 * Write a string as length-prefixed UTF-8.
+	 *
+	 * @param out    The output stream.
+	 * @param string The string.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeString(final DataOutputStream out, final String string) throws IOException {
+		writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Read a length-prefixed UTF-8 string.
+	 *
+	 * @param in The input stream.
+	 * @return The string.
+	 * @throws IOException if reading fails.
+	 */
+	private static String readString(final DataInputStream in) throws IOException {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write length-prefixed bytes.
+	 *
+	 * @param out   The output stream.
+	 * @param bytes The bytes.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read length-prefixed bytes.
+	 *
+	 * @param in The input stream.
+	 * @return The bytes.
+	 * @throws IOException if reading fails.
+	 */
+	private static byte[] readBytes(final DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Read a length, checking it for validity.
+	 *
+	 * @param in The input stream.
+	 * @return The length.
+	 * @throws IOException if reading fails or the length is invalid.
+	 */
+	private static int readLength(final DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new IOException("Invalid length " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * The sections of a backup which may be imported separately.
+	 */
+	public enum Section {
+		/**
+		 * General settings.
+		 */
+		SETTINGS,
+		/**
+		 * Devices and groups.
+		 */
+		DEVICES,
+		/**
+		 * Stored colors and animations.
+		 */
+		COLORS,
+		/**
+		 * Alarms with their steps.
+		 */
+		ALARMS;
+
+		/**
+		 * Get the section of a preference key or field name.
+		 *
+		 * @param name The preference key or field name.
+		 * @return The section.
+		 */
+		private static Section fromName(final String name) {
+			if (name.startsWith("device_") || name.startsWith("group_")) {
+				return DEVICES;
+			}
+			else if (name.startsWith("color_") || name.startsWith("animation_")) {
+				return COLORS;
+			}
+			else if (name.startsWith("alarm_")) {
+				return ALARMS;
+			}
+			else {
+				return SETTINGS;
+			}
+		}
+
+		/**
+		 * Get the section referring to ids of this section, i.e. stored colors referring to devices and alarm steps referring to
+		 * stored colors.
+		 *
+		 * @return The referring section. Null if there is none.
+		 */
+		private Section getReferringSection() {
+			switch (this) {
+			case DEVICES:
+				return COLORS;
+			case COLORS:
+				return ALARMS;
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Extend sections by all sections referring to them, directly or indirectly.
+		 *
+		 * @param sections The sections.
+		 * @return The sections together with the sections referring to them.
+		 */
+		private static Set<Section> withReferringSections(final Set<Section> sections) {
+			Set<Section> result = sections.isEmpty() ? EnumSet.noneOf(Section.class) : EnumSet.copyOf(sections);
+			for (Section section : sections) {
+				Section referringSection = section.getReferringSection();
+				while (referringSection != null) {
+					result.add(referringSection);
+					referringSection = referringSection.getReferringSection();
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package de.jeisfeld.lifx.app.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import android.content.SharedPreferences;
+
+/**
+ * Shared preferences collecting the changes of several editors, so that they are written with a single apply. Reads return the
+ * collected changes on top of the underlying preferences, so that e.g. new ids are counted up correctly within the batch. A batch
+ * is used by one thread only, and may be nested.
+ */
+final class PreferenceBatch implements SharedPreferences {
+	/**
+	 * Marker for a removed value.
+	 */
+	private static final Object REMOVED = new Object();
+	/**
+	 * The underlying preferences.
+	 */
+	private final SharedPreferences mPreferences;
+	/**
+	 * The collected changes by key, in order of change.
+	 */
+	private final Map<String, Object> mChanges = new LinkedHashMap<>();
+	/**
+	 * Flag indicating if the underlying preferences are cleared.
+	 */
+	private boolean mIsCleared = false;
+	/**
+	 * The number of nested batches which are not yet ended.
+	 */
+	private int mNestingLevel = 0;
+	/**
+	 * Flag indicating if the innermost running batch is marked as successful.
+	 */
+	private boolean mIsCurrentSuccessful = false;
+	/**
+	 * Flag indicating if a nested batch ended without being marked as successful.
+	 */
+	private boolean mIsFailed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param preferences The underlying preferences.
+	 */
+	PreferenceBatch(final SharedPreferences preferences) {
+		mPreferences = preferences;
+	}
+
+	/**
+	 * Begin a nested batch.
+	 */
+	void begin() {
+		mNestingLevel++;
+		mIsCurrentSuccessful = false;
+	}
+
+	/**
+	 * Mark the innermost running batch as successful.
+	 */
+	void setSuccessful() {
+		mIsCurrentSuccessful = true;
+	}
+
+	/**
+	 * End the innermost running batch.
+	 *
+	 * @return true if the outermost batch has ended.
+	 */
+	boolean end() {
+		if (!mIsCurrentSuccessful) {
+			mIsFailed = true;
+		}
+		mIsCurrentSuccessful = false;
+		mNestingLevel--;
+		return mNestingLevel == 0;
+	}
+
+	/**
+	 * Check if all batches ended successfully, so that the changes may be written.
+	 *
+	 * @return true if successful.
+	 */
+	boolean isSuccessful() {
+		return !mIsFailed;
+	}
+
+	/**
+	 * Write the collected changes to the underlying preferences.
+	 */
+	@SuppressWarnings("unchecked")
+	void apply() {
+		if (!mIsCleared && mChanges.isEmpty()) {
+			return;
+		}
+		SharedPreferences.Editor editor = mPreferences.edit();
+		if (mIsCleared) {
+			editor.clear();
+		}
+		for (Entry<String, Object> entry : mChanges.entrySet()) {
+			Object value = entry.getValue();
+			if (value == REMOVED) {
+				editor.remove(entry.getKey());
+			}
+			else if (value instanceof String) {
+				editor.putString(entry.getKey(), (String) value);
+			}
+			else if (value instanceof Set) {
+				editor.putStringSet(entry.getKey(), (Set<String>) value);
+			}
+			else if (value instanceof Integer) {
+				editor.putInt(entry.getKey(), (Integer) value);
+			}
+			else if (value instanceof Long) {
+				editor.putLong(entry.getKey(), (Long) value);
+			}
+			else if (value instanceof Float) {
+				editor.putFloat(entry.getKey(), (Float) value);
+			}
+			else if (value instanceof Boolean) {
+				editor.putBoolean(entry.getKey(), (Boolean) value);
+			}
+		}
+		editor.apply();
+	}
+
+	/**
+	 * Check if a value is changed within the batch.
+	 *
+	 * @param key The key.
+	 * @return true if the value is changed, so that it needs to be taken from the changes.
+	 */
+	private boolean isChanged(final String key) {
+		return mIsCleared || mChanges.containsKey(key);
+	}
+
+	/**
+	 * Get a value changed within the batch.
+	 *
+	 * @param key The key.
+	 * @return The value. Null if removed.
+	 */
+	private Object getChangedValue(final String key) {
+		Object value = mChanges.get(key);
+		return value == REMOVED ? null : value;
+	}
+
+	@Override
+	public Map<String, ?> getAll() {
+		Map<String, Object> result = new HashMap<>();
+		if (!mIsCleared) {
+			result.putAll(mPreferences.getAll());
+		}
+		for (Entry<String, Object> entry : mChanges.entrySet()) {
+			if (entry.getValue() == REMOVED) {
+				result.remove(entry.getKey());
+			}
+			else {
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String getString(final String key, final String defValue) {
+		if (isChanged(key)) {
+			Object value = getChangedValue(key);
+			return value == null ? defValue : (String) value;
+		}
+		return mPreferences.getString(key, defValue);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<String> getStringSet(final String key, final Set<String> defValues) {
+		if (isChanged(key)) {
+			Object value = getChangedValue(key);
+			return value == null ? defValues : new HashSet<>((Set<String>) value);
+		}
+		return mPreferences.getStringSet(key, defValues);
+	}
+
+	@Override
+	public int getInt(final String key, final int defValue) {
+		if (isChanged(key)) {
+			Object value = getChangedValue(key);
+			return value == null ? defValue : (Integer) value;
+		}
+		return mPreferences.getInt(key, defValue);
+	}
+
+	@Override
+	public long getLong(final String key, final long defValue) {
+		if (isChanged(key)) {
+			Object value = getChangedValue(key);
+			return value == null ? defValue : (Long) value;
+		}
+		return mPreferences.getLong(key, defValue);
+	}
+
+	@Override
+	public float getFloat(final String key, final float defValue) {
+		if (isChanged(key)) {
+			Object value = getChangedValue(key);
+			return value == null ? defValue : (Float) value;
+		}
+		return mPreferences.getFloat(key, defValue);
+	}
+
+	@Override
+	public boolean getBoolean(final String key, final boolean defValue) {
+		if (isChanged(key)) {
+			Object value = getChangedValue(key);
+			return value == null ? defValue : (Boolean) value;
+		}
+		return mPreferences.getBoolean(key, defValue);
+	}
+
+	@Override
+	public boolean contains(final String key) {
+		return isChanged(key) ? getChangedValue(key) != null : mPreferences.contains(key);
+	}
+
+	@Override
+	public SharedPreferences.Editor edit() {
+		return new Editor();
+	}
+
+	@Override
+	public void registerOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+		mPreferences.registerOnSharedPreferenceChangeListener(listener);
+	}
+
+	@Override
+	public void unregisterOnSharedPreferenceChangeListener(final OnSharedPreferenceChangeListener listener) {
+		mPreferences.unregisterOnSharedPreferenceChangeListener(listener);
+	}
+
+	/**
+	 * Editor adding its changes to the batch on apply or commit.
+	 */
+	private final class Editor implements SharedPreferences.Editor {
+		/**
+		 * The changes of this editor.
+		 */
+		private final Map<String, Object> mEditorChanges = new LinkedHashMap<>();
+		/**
+		 * Flag indicating if clear was called on this editor.
+		 */
+		private boolean mIsEditorCleared = false;
+
+		@Override
+		public SharedPreferences.Editor putString(final String key, final String value) {
+			mEditorChanges.put(key, value == null ? REMOVED : value);
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor putStringSet(final String key, final Set<String> values) {
+			mEditorChanges.put(key, values == null ? REMOVED : new HashSet<>(values));
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor putInt(final String key, final int value) {
+			mEditorChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor putLong(final String key, final long value) {
+			mEditorChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor putFloat(final String key, final float value) {
+			mEditorChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor putBoolean(final String key, final boolean value) {
+			mEditorChanges.put(key, value);
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor remove(final String key) {
+			mEditorChanges.put(key, REMOVED);
+			return this;
+		}
+
+		@Override
+		public SharedPreferences.Editor clear() {
+			mIsEditorCleared = true;
+			return this;
+		}
+
+		@Override
+		public boolean commit() {
+			apply();
+			return true;
+		}
+
+		@Override
+		public void apply() {
+			// As for shared preferences, clear is done before all other changes of the editor.
+			if (mIsEditorCleared) {
+				mIsCleared = true;
+				mChanges.clear();
+			}
+			for (Entry<String, Object> entry : mEditorChanges.entrySet()) {
+				// Remove first, so that the order of changes is kept.
+				mChanges.remove(entry.getKey());
+				mChanges.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+}
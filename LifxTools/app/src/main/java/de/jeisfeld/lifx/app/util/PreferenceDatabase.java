@@ -0,0 +1,597 @@
+package de.jeisfeld.lifx.app.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.Editor;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import androidx.preference.PreferenceManager;
+import de.jeisfeld.lifx.app.Application;
+import de.jeisfeld.lifx.app.R;
+import de.jeisfeld.lifx.lan.type.Color;
+
+/**
+ * Database holding the indexed preferences, i.e. the fields of devices, groups, stored colors, animations, alarms and alarm steps.
+ * There is one table per kind of entity, with one row per field, keyed by entity id and field name. An index on field name and value
+ * allows lookups such as the stored colors of a device. Color lists are stored as blobs. On creation, the indexed preferences are
+ * migrated from the shared preferences. The old values are removed only after the migration is committed.
+ */
+final class PreferenceDatabase extends SQLiteOpenHelper {
+	/**
+	 * The name of the database.
+	 */
+	private static final String DATABASE_NAME = "preferences.db";
+	/**
+	 * The version of the database.
+	 */
+	private static final int DATABASE_VERSION = 1;
+	/**
+	 * The table of devices and groups.
+	 */
+	private static final String TABLE_DEVICES = "devices";
+	/**
+	 * The table of stored colors and animations.
+	 */
+	private static final String TABLE_COLORS = "colors";
+	/**
+	 * The table of alarms and stop sequences.
+	 */
+	private static final String TABLE_ALARMS = "alarms";
+	/**
+	 * The table of alarm steps.
+	 */
+	private static final String TABLE_ALARM_STEPS = "alarm_steps";
+	/**
+	 * All tables.
+	 */
+	private static final String[] TABLES = {TABLE_DEVICES, TABLE_COLORS, TABLE_ALARMS, TABLE_ALARM_STEPS};
+	/**
+	 * The column of the entity id.
+	 */
+	private static final String COLUMN_ID = "id";
+	/**
+	 * The column of the field name.
+	 */
+	private static final String COLUMN_NAME = "name";
+	/**
+	 * The column of the value.
+	 */
+	private static final String COLUMN_VALUE = "value";
+	/**
+	 * The pattern of indexed preference keys in the shared preferences.
+	 */
+	private static final Pattern INDEXED_KEY = Pattern.compile("(.*)\\[(-?\\d+)]");
+	/**
+	 * The instance of the database.
+	 */
+	private static PreferenceDatabase mInstance = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param context The context.
+	 */
+	private PreferenceDatabase(final Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		// Allow reads from other threads during batches.
+		setWriteAheadLoggingEnabled(true);
+	}
+
+	/**
+	 * Get the database as singleton.
+	 *
+	 * @return The database.
+	 */
+	static synchronized PreferenceDatabase getInstance() {
+		if (mInstance == null) {
+			mInstance = new PreferenceDatabase(Application.getAppContext());
+		}
+		return mInstance;
+	}
+
+	@Override
+	public void onCreate(final SQLiteDatabase db) {
+		for (String table : TABLES) {
+			db.execSQL("CREATE TABLE " + table + " (" + COLUMN_ID + " INTEGER NOT NULL, " + COLUMN_NAME + " TEXT NOT NULL, "
+					+ COLUMN_VALUE + ", PRIMARY KEY (" + COLUMN_ID + ", " + COLUMN_NAME + ")) WITHOUT ROWID");
+			db.execSQL("CREATE INDEX " + table + "_by_value ON " + table + " (" + COLUMN_NAME + ", " + COLUMN_VALUE + ")");
+		}
+		migrateFromSharedPreferences(db);
+	}
+
+	@Override
+	public void onOpen(final SQLiteDatabase db) {
+		super.onOpen(db);
+		// Called after the transaction of onCreate is committed.
+		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(Application.getAppContext());
+		String migrationDoneKey = Application.getAppContext().getString(R.string.key_database_migration_done);
+		if (!preferences.getBoolean(migrationDoneKey, false)) {
+			removeMigratedValues(db);
+			preferences.edit().putBoolean(migrationDoneKey, true).apply();
+		}
+	}
+
+	@Override
+	public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+		// no upgrades yet
+	}
+
+	/**
+	 * Get the table holding a field.
+	 *
+	 * @param name The field name.
+	 * @return The table. Null if the field is not stored in the database.
+	 */
+	private static String getTable(final String name) {
+		Context context = Application.getAppContext();
+		if (name.equals(context.getString(R.string.key_alarm_step_ids))) {
+			return TABLE_ALARMS;
+		}
+		else if (name.startsWith("alarm_step_")) {
+			return TABLE_ALARM_STEPS;
+		}
+		else if (name.startsWith("alarm_")) {
+			return TABLE_ALARMS;
+		}
+		else if (name.startsWith("color_") || name.startsWith("animation_")) {
+			return TABLE_COLORS;
+		}
+		else if (name.startsWith("device_") || name.startsWith("group_")) {
+			return TABLE_DEVICES;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the table holding a field, failing for fields not stored in the database.
+	 *
+	 * @param name The field name.
+	 * @return The table.
+	 */
+	private static String getExistingTable(final String name) {
+		String table = getTable(name);
+		if (table == null) {
+			throw new IllegalArgumentException("No table for field " + name);
+		}
+		return table;
+	}
+
+	/**
+	 * Check if a field holds a color list.
+	 *
+	 * @param name The field name.
+	 * @return true if the field holds a color list.
+	 */
+	private static boolean isColorList(final String name) {
+		Context context = Application.getAppContext();
+		return name.equals(context.getString(R.string.key_color_colors))
+				|| name.equals(context.getString(R.string.key_animation_color_list));
+	}
+
+	/**
+	 * Get the value of a field.
+	 *
+	 * @param name The field name.
+	 * @param id   The entity id.
+	 * @return The value as Long, Double, String or byte array. Null if not existing.
+	 */
+	Object getValue(final String name, final int id) {
+		try (Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_VALUE + " FROM " + getExistingTable(name)
+				+ " WHERE " + COLUMN_ID + " = ? AND " + COLUMN_NAME + " = ?", new String[] {Integer.toString(id), name})) {
+			return cursor.moveToFirst() ? getValue(cursor, 0) : null;
+		}
+	}
+
+	/**
+	 * Get a value from a cursor, typed as stored.
+	 *
+	 * @param cursor The cursor.
+	 * @param column The column index.
+	 * @return The value as Long, Double, String or byte array.
+	 */
+	private static Object getValue(final Cursor cursor, final int column) {
+		switch (cursor.getType(column)) {
+		case Cursor.FIELD_TYPE_INTEGER:
+			return cursor.getLong(column);
+		case Cursor.FIELD_TYPE_FLOAT:
+			return cursor.getDouble(column);
+		case Cursor.FIELD_TYPE_STRING:
+			return cursor.getString(column);
+		case Cursor.FIELD_TYPE_BLOB:
+			return cursor.getBlob(column);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Set the value of a field.
+	 *
+	 * @param name  The field name.
+	 * @param id    The entity id.
+	 * @param value The value as Boolean, Integer, Long, String or byte array. Null removes the field.
+	 * @throws SQLException if the value cannot be stored.
+	 */
+	void setValue(final String name, final int id, final Object value) {
+		if (value == null) {
+			remove(name, id);
+		}
+		else if (!insert(getWritableDatabase(), getExistingTable(name), name, id, value)) {
+			throw new SQLException("Failed to store field " + name + " of " + id);
+		}
+	}
+
+	/**
+	 * Remove a field.
+	 *
+	 * @param name The field name.
+	 * @param id   The entity id.
+	 */
+	void remove(final String name, final int id) {
+		getWritableDatabase().delete(getExistingTable(name), COLUMN_ID + " = ? AND " + COLUMN_NAME + " = ?",
+				new String[] {Integer.toString(id), name});
+	}
+
+	/**
+	 * Get the ids of the entities having a certain value in a field.
+	 *
+	 * @param name  The field name.
+	 * @param value The value.
+	 * @return The entity ids.
+	 */
+	List<Integer> getIds(final String name, final long value) {
+		List<Integer> ids = new ArrayList<>();
+		// Numbers are bound as text, so they need to be cast for comparison with the untyped value column.
+		try (Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_ID + " FROM " + getExistingTable(name) + " WHERE "
+				+ COLUMN_NAME + " = ? AND " + COLUMN_VALUE + " = CAST(? AS INTEGER)", new String[] {name, Long.toString(value)})) {
+			while (cursor.moveToNext()) {
+				ids.add(cursor.getInt(0));
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Get the names of all tables.
+	 *
+	 * @return The table names.
+	 */
+	static List<String> getTableNames() {
+		return Arrays.asList(TABLES);
+	}
+
+	/**
+	 * Read all fields of a table, e.g. for backup.
+	 *
+	 * @param table  The table.
+	 * @param reader The reader called for each field.
+	 * @throws IOException if the reader fails.
+	 */
+	void readTable(final String table, final FieldReader reader) throws IOException {
+		try (Cursor cursor = getReadableDatabase().rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_NAME + ", " + COLUMN_VALUE
+				+ " FROM " + getValidTable(table), null)) {
+			while (cursor.moveToNext()) {
+				reader.onField(cursor.getInt(0), cursor.getString(1), getValue(cursor, 2));
+			}
+		}
+	}
+
+	/**
+	 * Start writing fields in bulk, e.g. for restore. The writer holds a transaction until closed.
+	 *
+	 * @return The writer.
+	 */
+	FieldWriter startWriting() {
+		return new FieldWriter(getWritableDatabase());
+	}
+
+	/**
+	 * Check that a table name denotes an existing table, as table names cannot be bound as arguments.
+	 *
+	 * @param table The table name.
+	 * @return The table name.
+	 * @throws IOException if there is no such table.
+	 */
+	private static String getValidTable(final String table) throws IOException {
+		if (!getTableNames().contains(table)) {
+			throw new IOException("Unknown table " + table);
+		}
+		return table;
+	}
+
+	/**
+	 * Copy the indexed preferences from the shared preferences and from legacy color list files into the database. The old values
+	 * are kept, as the database changes may still be rolled back.
+	 *
+	 * @param db The database.
+	 */
+	private static void migrateFromSharedPreferences(final SQLiteDatabase db) {
+		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(Application.getAppContext());
+		for (Entry<String, ?> entry : preferences.getAll().entrySet()) {
+			Matcher matcher = INDEXED_KEY.matcher(entry.getKey());
+			String table = matcher.matches() ? getTable(matcher.group(1)) : null;
+			if (table != null) {
+				String name = matcher.group(1);
+				Object value = entry.getValue();
+				if (isColorList(name) && value instanceof String) {
+					value = ColorListStore.encode(fromColorListString((String) value));
+				}
+				insert(db, table, name, Integer.parseInt(matcher.group(2)), value);
+			}
+		}
+		for (Entry<String, List<Color>> entry : ColorListStore.getAll().entrySet()) {
+			Matcher matcher = INDEXED_KEY.matcher(entry.getKey());
+			String table = matcher.matches() ? getTable(matcher.group(1)) : null;
+			if (table != null) {
+				insert(db, table, matcher.group(1), Integer.parseInt(matcher.group(2)), ColorListStore.encode(entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Remove the old values of indexed preferences from the shared preferences and legacy color list files after migration. Only
+	 * values which are stored in the committed database are removed, so that this may safely be repeated after interruption.
+	 *
+	 * @param db The database.
+	 */
+	private static void removeMigratedValues(final SQLiteDatabase db) {
+		SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(Application.getAppContext());
+		Editor editor = preferences.edit();
+		for (String key : preferences.getAll().keySet()) {
+			if (isMigrated(db, key)) {
+				editor.remove(key);
+			}
+		}
+		editor.apply();
+		for (String key : ColorListStore.getAll().keySet()) {
+			if (isMigrated(db, key)) {
+				ColorListStore.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Check if the value of an indexed preference key is stored in the database.
+	 *
+	 * @param db  The database.
+	 * @param key The indexed preference key.
+	 * @return true if the value is stored in the database.
+	 */
+	private static boolean isMigrated(final SQLiteDatabase db, final String key) {
+		Matcher matcher = INDEXED_KEY.matcher(key);
+		String table = matcher.matches() ? getTable(matcher.group(1)) : null;
+		if (table == null) {
+			return false;
+		}
+		try (Cursor cursor = db.rawQuery("SELECT 1 FROM " + table + " WHERE " + COLUMN_ID + " = ? AND " + COLUMN_NAME + " = ?",
+				new String[] {matcher.group(2), matcher.group(1)})) {
+			return cursor.moveToFirst();
+		}
+	}
+
+	/**
+	 * Insert or replace a field.
+	 *
+	 * @param db    The database.
+	 * @param table The table.
+	 * @param name  The field name.
+	 * @param id    The entity id.
+	 * @param value The value as Boolean, Integer, Long, Float, String or byte array.
+	 * @return true if successful.
+	 */
+	private static boolean insert(final SQLiteDatabase db, final String table, final String name, final int id, final Object value) {
+		ContentValues values = new ContentValues();
+		values.put(COLUMN_ID, id);
+		values.put(COLUMN_NAME, name);
+		if (value instanceof Boolean) {
+			values.put(COLUMN_VALUE, (Boolean) value ? 1 : 0);
+		}
+		else if (value instanceof Integer) {
+			values.put(COLUMN_VALUE, (Integer) value);
+		}
+		else if (value instanceof Long) {
+			values.put(COLUMN_VALUE, (Long) value);
+		}
+		else if (value instanceof Float) {
+			values.put(COLUMN_VALUE, (Float) value);
+		}
+		else if (value instanceof byte[]) {
+			values.put(COLUMN_VALUE, (byte[]) value);
+		}
+		else {
+			values.put(COLUMN_VALUE, String.valueOf(value));
+		}
+		return db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_REPLACE) != -1;
+	}
+
+	/**
+	 * Parse a color list from the text format of the shared preferences.
+	 *
+	 * @param colorListString The colors as lines of long values.
+	 * @return The colors.
+	 */
+	private static List<Color> fromColorListString(final String colorListString) {
+		List<Color> colorList = new ArrayList<>();
+		if (colorListString.length() > 0) {
+			for (String line : colorListString.split("\\r?\\n")) {
+				colorList.add(new Color(Long.parseLong(line)));
+			}
+		}
+		return colorList;
+	}
+
+	/**
+	 * Reader of fields.
+	 */
+	interface FieldReader {
+		/**
+		 * Callback for a field.
+		 *
+		 * @param id    The entity id.
+		 * @param name  The field name.
+		 * @param value The value as Long, Double, String or byte array.
+		 * @throws IOException if the field cannot be processed.
+		 */
+		void onField(int id, String name, Object value) throws IOException;
+	}
+
+	/**
+	 * Writer of fields in bulk, using precompiled statements within one transaction. Changes are discarded unless marked as
+	 * successful before closing.
+	 */
+	static final class FieldWriter implements Closeable {
+		/**
+		 * The database.
+		 */
+		private final SQLiteDatabase mDb;
+		/**
+		 * The insert statements by table.
+		 */
+		private final Map<String, SQLiteStatement> mInsertStatements = new HashMap<>();
+
+		/**
+		 * Constructor.
+		 *
+		 * @param db The database.
+		 */
+		private FieldWriter(final SQLiteDatabase db) {
+			mDb = db;
+			mDb.beginTransactionNonExclusive();
+		}
+
+		/**
+		 * Delete all fields with certain names.
+		 *
+		 * @param isDeleted The condition on field names for deletion.
+		 */
+		void deleteFields(final Predicate<String> isDeleted) {
+			for (String table : TABLES) {
+				List<String> names = new ArrayList<>();
+				try (Cursor cursor = mDb.rawQuery("SELECT DISTINCT " + COLUMN_NAME + " FROM " + table, null)) {
+					while (cursor.moveToNext()) {
+						names.add(cursor.getString(0));
+					}
+				}
+				for (String name : names) {
+					if (isDeleted.test(name)) {
+						mDb.delete(table, COLUMN_NAME + " = ?", new String[] {name});
+					}
+				}
+			}
+		}
+
+		/**
+		 * Insert or replace a field.
+		 *
+		 * @param table The table.
+		 * @param id    The entity id.
+		 * @param name  The field name.
+		 * @param value The value as Boolean, Integer, Long, Float, Double, String or byte array.
+		 * @throws IOException if there is no such table.
+		 */
+		void write(final String table, final int id, final String name, final Object value) throws IOException {
+			SQLiteStatement statement = mInsertStatements.get(table);
+			if (statement == null) {
+				statement = mDb.compileStatement("INSERT OR REPLACE INTO " + getValidTable(table) + " (" + COLUMN_ID + ", " + COLUMN_NAME
+						+ ", " + COLUMN_VALUE + ") VALUES (?, ?, ?)");
+				mInsertStatements.put(table, statement);
+			}
+			statement.clearBindings();
+			statement.bindLong(1, id);
+			statement.bindString(2, name);
+			if (value instanceof Boolean) {
+				statement.bindLong(3, (Boolean) value ? 1 : 0); // MAGIC_NUMBER
+			}
+			else if (value instanceof Integer || value instanceof Long) {
+				statement.bindLong(3, ((Number) value).longValue()); // MAGIC_NUMBER
+			}
+			else if (value instanceof Float || value instanceof Double) {
+				statement.bindDouble(3, ((Number) value).doubleValue()); // MAGIC_NUMBER
+			}
+			else if (value instanceof byte[]) {
+				statement.bindBlob(3, (byte[]) value); // MAGIC_NUMBER
+			}
+			else if (value == null) {
+				statement.bindNull(3); // MAGIC_NUMBER
+			}
+			else {
+				statement.bindString(3, String.valueOf(value)); // MAGIC_NUMBER
+			}
+			statement.executeInsert();
+		}
+
+		/**
+		 * Write the value of an indexed preference in the former shared preferences format, e.g. from a legacy backup.
+		 *
+		 * @param key   The indexed preference key.
+		 * @param value The value as stored in the shared preferences.
+		 * @return true if the preference is stored in the database, false if it remains a shared preference.
+		 * @throws IOException if the value cannot be converted.
+		 */
+		boolean writeIndexedPreference(final String key, final Object value) throws IOException {
+			Matcher matcher = INDEXED_KEY.matcher(key);
+			String table = matcher.matches() ? getTable(matcher.group(1)) : null;
+			if (table == null) {
+				return false;
+			}
+			String name = matcher.group(1);
+			try {
+				write(table, Integer.parseInt(matcher.group(2)), name,
+						isColorList(name) && value instanceof String ? ColorListStore.encode(fromColorListString((String) value)) : value);
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("Invalid value of " + key, e);
+			}
+			return true;
+		}
+
+		/**
+		 * Check if a field refers to entities which do not exist, e.g. stored colors referring to removed devices. Only positive
+		 * values are considered as references.
+		 *
+		 * @param name       The field name holding the references.
+		 * @param targetName The name of any field of the referenced entities, determining their table.
+		 * @return true if some referenced entity does not exist.
+		 */
+		boolean hasMissingReferences(final String name, final String targetName) {
+			try (Cursor cursor = mDb.rawQuery("SELECT 1 FROM " + getExistingTable(name) + " WHERE " + COLUMN_NAME + " = ? AND "
+					+ COLUMN_VALUE + " > 0 AND " + COLUMN_VALUE + " NOT IN (SELECT " + COLUMN_ID + " FROM "
+					+ getExistingTable(targetName) + ") LIMIT 1", new String[] {name})) {
+				return cursor.moveToFirst();
+			}
+		}
+
+		/**
+		 * Mark the changes as successful, so that they are committed on close.
+		 */
+		void setSuccessful() {
+			mDb.setTransactionSuccessful();
+		}
+
+		@Override
+		public void close() {
+			for (SQLiteStatement statement : mInsertStatements.values()) {
+				statement.close();
+			}
+			mDb.endTransaction();
+		}
+	}
+}
@@ -4,29 +4,22 @@ import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.util.Base64;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import androidx.preference.PreferenceManager;
 import de.jeisfeld.lifx.app.Application;
-import de.jeisfeld.lifx.app.alarms.AlarmReceiver;
-import de.jeisfeld.lifx.app.alarms.AlarmRegistry;
-import de.jeisfeld.lifx.app.managedevices.DeviceRegistry;
-import de.jeisfeld.lifx.app.storedcolors.ColorRegistry;
 import de.jeisfeld.lifx.lan.type.Color;
 
 /**
  * Utility class for handling the shared preferences.
  */
 public final class PreferenceUtil {
+	/**
+	 * The batch of the current thread. Null if not running in a batch.
+	 */
+	private static final ThreadLocal<PreferenceBatch> BATCH = new ThreadLocal<>();
 
 	/**
 	 * Hide default constructor.
@@ -36,68 +29,65 @@ public final class PreferenceUtil {
 	}
 
 	/**
-	 * Retrieve the default shared preferences of the application.
+	 * Retrieve the default shared preferences of the application. Within a batch, these are the preferences of the batch.
 	 *
 	 * @return the default shared preferences.
 	 */
 	private static SharedPreferences getSharedPreferences() {
-		return PreferenceManager.getDefaultSharedPreferences(Application.getAppContext());
+		PreferenceBatch batch = BATCH.get();
+		return batch == null ? PreferenceManager.getDefaultSharedPreferences(Application.getAppContext()) : batch;
+	}
+
+	/**
+	 * Begin a batch, so that all preference changes until the end of the batch are written at once, and database changes are done in
+	 * one transaction. Within the batch, reads return the changed values. Batches may be nested and are then written together with
+	 * the outermost batch. Usage is analogous to database transactions:
+	 *
+	 * <pre>
+	 * PreferenceUtil.beginBatch();
+	 * try {
+	 *     ...
+	 *     PreferenceUtil.setBatchSuccessful();
+	 * }
+	 * finally {
+	 *     PreferenceUtil.endBatch();
+	 * }
+	 * </pre>
+	 */
+	public static void beginBatch() {
+		PreferenceBatch batch = BATCH.get();
+		if (batch == null) {
+			batch = new PreferenceBatch(PreferenceManager.getDefaultSharedPreferences(Application.getAppContext()));
+			BATCH.set(batch);
+		}
+		PreferenceDatabase.getInstance().getWritableDatabase().beginTransactionNonExclusive();
+		batch.begin();
 	}
 
 	/**
-	 * Get a String containing representation of all shared preferences.
-	 *
-	 * @return A String containing representation of all shared preferences.
+	 * Mark the current batch as successful. Changes are written only if all nested batches are marked as successful.
 	 */
-	public static byte[] getPreferencesExportByteArray() throws IOException {
-		Map<String, ?> preferenceMap = getSharedPreferences().getAll();
-		ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-		ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteOutputStream);
-		objectOutputStream.writeObject(preferenceMap);
-		objectOutputStream.close();
-		byteOutputStream.close();
-		return byteOutputStream.toByteArray();
+	public static void setBatchSuccessful() {
+		PreferenceDatabase.getInstance().getWritableDatabase().setTransactionSuccessful();
+		BATCH.get().setSuccessful();
 	}
 
 	/**
-	 * Import preferences from a byte array.
-	 *
-	 * @param byteArray The byte array.
+	 * End the current batch. At the end of the outermost batch, the changes are written if successful, and discarded otherwise.
 	 */
-	public static void importFromByteArray(final byte[] byteArray) throws IOException, ClassNotFoundException {
-		ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(byteArray);
-		ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream);
-
-		@SuppressWarnings("unchecked")
-		Map<String, ?> preferences = (Map<String, ?>) objectInputStream.readObject();
-
-		Editor editor = PreferenceUtil.getSharedPreferences().edit();
-		for (String key : getSharedPreferences().getAll().keySet()) {
-			editor.remove(key);
+	public static void endBatch() {
+		PreferenceBatch batch = BATCH.get();
+		try {
+			PreferenceDatabase.getInstance().getWritableDatabase().endTransaction();
 		}
-		for (Entry<String, ?> entry : preferences.entrySet()) {
-			if (entry.getValue() instanceof Boolean) {
-				editor.putBoolean(entry.getKey(), (Boolean) entry.getValue());
-			}
-			else if (entry.getValue() instanceof Integer) {
-				editor.putInt(entry.getKey(), (Integer) entry.getValue());
-			}
-			else if (entry.getValue() instanceof Long) {
-				editor.putLong(entry.getKey(), (Long) entry.getValue());
-			}
-			else if (entry.getValue() instanceof Float) {
-				editor.putFloat(entry.getKey(), (Float) entry.getValue());
-			}
-			else if (entry.getValue() instanceof String) {
-				editor.putString(entry.getKey(), (String) entry.getValue());
+		finally {
+			if (batch.end()) {
+				BATCH.remove();
+				if (batch.isSuccessful()) {
+					batch.apply();
+				}
 			}
 		}
-		editor.apply();
-
-		DeviceRegistry.cleanUp();
-		ColorRegistry.cleanUp();
-		AlarmRegistry.cleanUp();
-		AlarmReceiver.createAllAlarms();
 	}
 
 	/**
@@ -502,14 +492,27 @@ public final class PreferenceUtil {
 	}
 
 	/**
-	 * Get an indexed preference key that allows to store a shared preference with index.
+	 * Get the value of an indexed preference from the database.
+	 *
+	 * @param preferenceId The base preference id
+	 * @param index        The index
+	 * @return The value. Null if not existing.
+	 */
+	private static Object getIndexedValue(final int preferenceId, final Object index) {
+		return PreferenceDatabase.getInstance().getValue(Application.getAppContext().getString(preferenceId),
+				Integer.parseInt(index.toString()));
+	}
+
+	/**
+	 * Set the value of an indexed preference in the database.
 	 *
 	 * @param preferenceId The base preference id
 	 * @param index        The index
-	 * @return The indexed preference key.
+	 * @param value        The value. Null removes the preference.
 	 */
-	private static String getIndexedPreferenceKey(final int preferenceId, final Object index) {
-		return Application.getAppContext().getString(preferenceId) + "[" + index + "]";
+	private static void setIndexedValue(final int preferenceId, final Object index, final Object value) {
+		PreferenceDatabase.getInstance().setValue(Application.getAppContext().getString(preferenceId),
+				Integer.parseInt(index.toString()), value);
 	}
 
 	/**
@@ -520,7 +523,8 @@ public final class PreferenceUtil {
 	 * @return the corresponding preference value.
 	 */
 	public static String getIndexedSharedPreferenceString(final int preferenceId, final Object index) {
-		return PreferenceUtil.getSharedPreferences().getString(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), null);
+		Object value = getIndexedValue(preferenceId, index);
+		return value == null ? null : value.toString();
 	}
 
 	/**
@@ -531,9 +535,7 @@ public final class PreferenceUtil {
 	 * @param s            the target value of the preference.
 	 */
 	public static void setIndexedSharedPreferenceString(final int preferenceId, final Object index, final String s) {
-		Editor editor = PreferenceUtil.getSharedPreferences().edit();
-		editor.putString(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), s);
-		editor.apply();
+		setIndexedValue(preferenceId, index, s);
 	}
 
 	/**
@@ -545,7 +547,8 @@ public final class PreferenceUtil {
 	 * @return the corresponding preference value.
 	 */
 	public static boolean getIndexedSharedPreferenceBoolean(final int preferenceId, final Object index, final boolean defaultValue) {
-		return PreferenceUtil.getSharedPreferences().getBoolean(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), defaultValue);
+		Object value = getIndexedValue(preferenceId, index);
+		return value instanceof Long ? (Long) value != 0 : defaultValue;
 	}
 
 	/**
@@ -556,9 +559,7 @@ public final class PreferenceUtil {
 	 * @param b            the target value of the preference.
 	 */
 	public static void setIndexedSharedPreferenceBoolean(final int preferenceId, final Object index, final boolean b) {
-		Editor editor = PreferenceUtil.getSharedPreferences().edit();
-		editor.putBoolean(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), b);
-		editor.apply();
+		setIndexedValue(preferenceId, index, b);
 	}
 
 	/**
@@ -570,7 +571,8 @@ public final class PreferenceUtil {
 	 * @return the corresponding preference value.
 	 */
 	public static int getIndexedSharedPreferenceInt(final int preferenceId, final Object index, final int defaultValue) {
-		return PreferenceUtil.getSharedPreferences().getInt(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), defaultValue);
+		Object value = getIndexedValue(preferenceId, index);
+		return value instanceof Long ? ((Long) value).intValue() : defaultValue;
 	}
 
 	/**
@@ -581,9 +583,7 @@ public final class PreferenceUtil {
 	 * @param i            the target value of the preference.
 	 */
 	public static void setIndexedSharedPreferenceInt(final int preferenceId, final Object index, final int i) {
-		Editor editor = PreferenceUtil.getSharedPreferences().edit();
-		editor.putInt(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), i);
-		editor.apply();
+		setIndexedValue(preferenceId, index, i);
 	}
 
 	/**
@@ -595,7 +595,8 @@ public final class PreferenceUtil {
 	 * @return the corresponding preference value.
 	 */
 	public static long getIndexedSharedPreferenceLong(final int preferenceId, final Object index, final long defaultValue) {
-		return PreferenceUtil.getSharedPreferences().getLong(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), defaultValue);
+		Object value = getIndexedValue(preferenceId, index);
+		return value instanceof Long ? (Long) value : defaultValue;
 	}
 
 	/**
@@ -606,9 +607,7 @@ public final class PreferenceUtil {
 	 * @param i            the target value of the preference.
 	 */
 	public static void setIndexedSharedPreferenceLong(final int preferenceId, final Object index, final long i) {
-		Editor editor = PreferenceUtil.getSharedPreferences().edit();
-		editor.putLong(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index), i);
-		editor.apply();
+		setIndexedValue(preferenceId, index, i);
 	}
 
 	/**
@@ -790,12 +789,9 @@ public final class PreferenceUtil {
 	 * @return the corresponding preference value.
 	 */
 	public static ArrayList<Color> getIndexedSharedPreferenceColorList(final int preferenceId, final Object index) {
-		List<Long> longList = getIndexedSharedPreferenceLongList(preferenceId, index);
-		ArrayList<Color> colorList = new ArrayList<>();
-		for (Long longValue : longList) {
-			colorList.add(new Color(longValue));
-		}
-		return colorList;
+		Object value = getIndexedValue(preferenceId, index);
+		ArrayList<Color> colorList = value instanceof byte[] ? ColorListStore.decode((byte[]) value) : null;
+		return colorList == null ? new ArrayList<>() : colorList;
 	}
 
 	/**
@@ -806,11 +802,7 @@ public final class PreferenceUtil {
 	 * @param colorList    the target value of the preference.
 	 */
 	public static void setIndexedSharedPreferenceColorList(final int preferenceId, final Object index, final List<Color> colorList) {
-		List<Long> longList = new ArrayList<>();
-		for (Color color : colorList) {
-			longList.add(color.asLong());
-		}
-		PreferenceUtil.setIndexedSharedPreferenceLongList(preferenceId, index, longList);
+		setIndexedValue(preferenceId, index, ColorListStore.encode(colorList));
 	}
 
 	/**
@@ -820,9 +812,19 @@ public final class PreferenceUtil {
 	 * @param index        The index
 	 */
 	public static void removeIndexedSharedPreference(final int preferenceId, final Object index) {
-		Editor editor = PreferenceUtil.getSharedPreferences().edit();
-		editor.remove(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index));
-		editor.apply();
+		setIndexedValue(preferenceId, index, null);
+	}
+
+	/**
+	 * Get the indices of an indexed shared preference having a certain value. This is an indexed lookup, e.g. of the stored colors of
+	 * a device.
+	 *
+	 * @param preferenceId the id of the shared preference.
+	 * @param value        The int value.
+	 * @return The indices having this value.
+	 */
+	public static List<Integer> getIndicesWithIndexedSharedPreferenceInt(final int preferenceId, final int value) {
+		return PreferenceDatabase.getInstance().getIds(Application.getAppContext().getString(preferenceId), value);
 	}
 
 	/**
@@ -833,7 +835,7 @@ public final class PreferenceUtil {
 	 * @return True if the preference exists.
 	 */
 	public static boolean hasIndexedSharedPreference(final int preferenceId, final Object index) {
-		return PreferenceUtil.getSharedPreferences().contains(PreferenceUtil.getIndexedPreferenceKey(preferenceId, index));
+		return getIndexedValue(preferenceId, index) != null;
 	}
 
 }